@@ -0,0 +1,74 @@
+package com.witcraft.ansi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks downsampling a frame of 24-bit pixels to the 256-color and 16-color palettes, and rendering a gradient
+ * progress bar.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorBenchmark {
+    private final int[] pixels = new int[80 * 48];
+    private final int[] converted = new int[pixels.length];
+    private final AnsiGradient gradient = AnsiGradient.of(AnsiColor.rgb(0x0000ff), AnsiColor.rgb(0xffff00), AnsiColor.rgb(0xff0000));
+    private final String bar = "########################################################################";
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        for (int index = 0; index < pixels.length; index++) {
+            pixels[index] = AnsiColor.rgb(random.nextInt(0x1000000));
+        }
+    }
+
+    @Benchmark
+    public int[] toIndexed() {
+        for (int index = 0; index < pixels.length; index++) {
+            converted[index] = AnsiColor.toIndexed(pixels[index]);
+        }
+        return converted;
+    }
+
+    @Benchmark
+    public int[] toBasic() {
+        for (int index = 0; index < pixels.length; index++) {
+            converted[index] = AnsiColor.toBasic(pixels[index]);
+        }
+        return converted;
+    }
+
+    /**
+     * Renders a gradient bar with a new Ansi object per character, as a baseline for {@link #gradientBar()}.
+     */
+    @Benchmark
+    public String gradientBarBaseline() {
+        StringBuilder out = new StringBuilder(bar.length() * 24);
+        for (int index = 0; index < bar.length(); index++) {
+            int color = gradient.colorAt((double)index / (bar.length() - 1));
+            out.append(new Ansi().color(AnsiColor.value(color)).wrap(bar.substring(index, index + 1)));
+        }
+        return out.toString();
+    }
+
+    @Benchmark
+    public String gradientBar() {
+        return gradient.foreground(bar).render();
+    }
+}
@@ -0,0 +1,155 @@
+package com.witcraft.ansi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks many concurrent writers emitting styled lines, through a {@link PrintWriter} (which synchronizes on a
+ * monitor), an {@link AnsiChannelWriter} (which uses a ReentrantLock) and an {@link AnsiOutput} (which hands segments
+ * off to a consumer thread without locks).
+ * <p>
+ * Writers are virtual threads when the JDK running the benchmark supports them, and platform threads otherwise.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentWriterBenchmark {
+    private static final int LINES_PER_WRITER = 10;
+    private static final MethodHandle VIRTUAL_THREAD_FACTORY = virtualThreadFactory();
+
+    @Param({"1000", "10000"})
+    public int writers;
+
+    private final Ansi style = new Ansi().bold().colorIndex(208);
+    private final String text = "GET /api/status 200 12ms";
+    private PrintWriter printWriter;
+    private AnsiChannelWriter channelWriter;
+    private AnsiOutput output;
+
+    @Setup
+    public void setup() {
+        printWriter = new PrintWriter(OutputStream.nullOutputStream());
+        channelWriter = new AnsiChannelWriter(new NullChannel());
+        output = new AnsiOutput(OutputStream.nullOutputStream());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        printWriter.close();
+        channelWriter.close();
+        output.close();
+    }
+
+    @Benchmark
+    public void printWriter() throws InterruptedException {
+        runWriters(() -> {
+            for (int line = 0; line < LINES_PER_WRITER; line++) {
+                printWriter.println(style.wrap(text));
+            }
+        });
+        printWriter.flush();
+    }
+
+    @Benchmark
+    public void channelWriter() throws InterruptedException, IOException {
+        runWriters(() -> {
+            try {
+                for (int line = 0; line < LINES_PER_WRITER; line++) {
+                    channelWriter.writeLine(style, text);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        channelWriter.flush();
+    }
+
+    @Benchmark
+    public void ansiOutput() throws InterruptedException, IOException {
+        runWriters(() -> {
+            for (int line = 0; line < LINES_PER_WRITER; line++) {
+                output.write(style, text);
+                output.write("\n");
+            }
+        });
+        output.flush();
+    }
+
+    private void runWriters(Runnable task) throws InterruptedException {
+        Thread[] threads = new Thread[writers];
+        for (int index = 0; index < threads.length; index++) {
+            threads[index] = newThread(task);
+            threads[index].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static Thread newThread(Runnable task) {
+        if (VIRTUAL_THREAD_FACTORY != null) {
+            try {
+                return (Thread)VIRTUAL_THREAD_FACTORY.invoke(task);
+            } catch (Throwable ex) {
+                throw new IllegalStateException("Failed to create a virtual thread", ex);
+            }
+        }
+        return new Thread(task);
+    }
+
+    /**
+     * Returns a handle to {@code Thread.ofVirtual().unstarted(Runnable)}, or null before JDK 21.
+     */
+    private static MethodHandle virtualThreadFactory() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(Class.forName("java.lang.Thread$Builder$OfVirtual"))).invoke();
+            return lookup.findVirtual(builderClass, "unstarted", MethodType.methodType(Thread.class, Runnable.class)).bindTo(builder);
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+
+    private static final class NullChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int count = src.remaining();
+            src.position(src.limit());
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.witcraft.ansi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks styling with the default profile set to {@link TerminalProfile#NONE}, as when output goes to a file or a
+ * pipe, against {@link TerminalProfile#TRUECOLOR}. With {@code profile=none}, the {@code gc.alloc.rate.norm} reported
+ * by the {@code gc} profiler is expected to be zero for every benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DisabledBenchmark {
+    @Param({"none", "truecolor"})
+    private String profile;
+
+    private TerminalProfile previous;
+    private Ansi ansi;
+    private AnsiStyle style;
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        previous = TerminalProfile.getDefault();
+        TerminalProfile.setDefault("none".equals(profile) ? TerminalProfile.NONE : TerminalProfile.TRUECOLOR);
+        ansi = new Ansi().bold().underline().colorIndex(196);
+        style = ansi.toStyle();
+        text = "benchmark";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TerminalProfile.setDefault(previous);
+    }
+
+    @Benchmark
+    public String wrap() {
+        return ansi.wrap(text);
+    }
+
+    @Benchmark
+    public String getSequence() {
+        return ansi.getSequence();
+    }
+
+    @Benchmark
+    public String ansiToString() {
+        return ansi.toString();
+    }
+
+    @Benchmark
+    public String styleWrap() {
+        return style.wrap(text);
+    }
+
+    @Benchmark
+    public String styleGetSequence() {
+        return style.getSequence();
+    }
+}
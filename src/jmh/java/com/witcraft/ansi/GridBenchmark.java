@@ -0,0 +1,102 @@
+package com.witcraft.ansi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks rendering the 256-color grid printed by {@link Main}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+    private final String[] labels = new String[256];
+    private CountingWriter out;
+
+    @Setup
+    public void setup() {
+        for (int colorIndex = 0; colorIndex < labels.length; colorIndex++) {
+            labels[colorIndex] = String.format("%5d", colorIndex);
+        }
+        out = new CountingWriter();
+    }
+
+    /**
+     * Renders each cell with {@link Ansi#wrap(String)}, resetting after every cell.
+     */
+    @Benchmark
+    public long wrapGrid() throws IOException {
+        Ansi styler = new Ansi(true);
+        out.count = 0;
+        for (int colorIndex = 0; colorIndex < labels.length; colorIndex++) {
+            out.write(styler.reset().colorIndex(colorIndex).wrap(labels[colorIndex]));
+            if ((colorIndex & 0xF) == 0xF) {
+                out.write('\n');
+            }
+        }
+        return out.count;
+    }
+
+    /**
+     * Renders each cell with an {@link AnsiWriter}, which only writes the parameters that change.
+     */
+    @Benchmark
+    public long writerGrid() throws IOException {
+        Ansi styler = new Ansi(true);
+        AnsiWriter ansiOut = new AnsiWriter(out);
+        out.count = 0;
+        for (int colorIndex = 0; colorIndex < labels.length; colorIndex++) {
+            ansiOut.writeStyled(styler.reset().colorIndex(colorIndex), labels[colorIndex]);
+            if ((colorIndex & 0xF) == 0xF) {
+                ansiOut.write('\n');
+            }
+        }
+        ansiOut.reset();
+        return out.count;
+    }
+
+    /**
+     * A Writer that discards its output, counting the characters written.
+     */
+    private static final class CountingWriter extends Writer {
+        private long count;
+
+        @Override
+        public void write(int c) {
+            count++;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.witcraft.ansi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks styled output with {@link AnsiMetrics} disabled, as by default, against counting on every thread. With
+ * {@code metrics=off} the scores are expected to match those of a build without instrumentation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MetricsBenchmark {
+    @State(Scope.Benchmark)
+    public static class Metrics {
+        @Param({"off", "on"})
+        private String metrics;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            if ("on".equals(metrics)) {
+                AnsiMetrics.enable();
+            } else {
+                AnsiMetrics.disable();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            AnsiMetrics.disable();
+        }
+    }
+
+    private AnsiEncoder encoder;
+    private AnsiWriter writer;
+    private AnsiStyle bold;
+    private AnsiStyle red;
+
+    @Setup(Level.Trial)
+    public void setup(Metrics metrics) {
+        encoder = new AnsiEncoder(OutputStream.nullOutputStream());
+        writer = new AnsiWriter(Writer.nullWriter());
+        bold = AnsiStyle.DEFAULT.bold();
+        red = AnsiStyle.DEFAULT.colorIndex(196);
+    }
+
+    @Benchmark
+    public AnsiEncoder encoderWrapped() throws IOException {
+        return encoder.writeWrapped(bold, "benchmark");
+    }
+
+    @Benchmark
+    public AnsiWriter writerStyled() throws IOException {
+        writer.writeStyled(red, "benchmark");
+        return writer.writeStyled(bold, "benchmark");
+    }
+}
@@ -0,0 +1,62 @@
+package com.witcraft.ansi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks wrapping and truncating a styled build log, as a log viewer reflows it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReflowBenchmark {
+    @Param({"40", "120"})
+    private int width;
+
+    private String log;
+    private String line;
+    private StringBuilder buffer;
+
+    @Setup
+    public void setup() {
+        AnsiStyle info = AnsiStyle.DEFAULT.color(0, 170, 255);
+        AnsiStyle error = AnsiStyle.DEFAULT.bold().colorIndex(196);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append(info.wrap("[INFO] ")).append("Compiling module ").append(i)
+                .append(" of the project with the release flag set to 11 and warnings enabled");
+            if (i % 10 == 0) {
+                builder.append(' ').append(error.wrap("error: cannot find symbol in class com.witcraft.ansi.Example" + i));
+            }
+            builder.append('\n');
+        }
+        log = builder.toString();
+        line = log.substring(0, log.indexOf('\n'));
+        buffer = new StringBuilder(log.length() * 2);
+    }
+
+    @Benchmark
+    public int wrap() {
+        buffer.setLength(0);
+        return AnsiText.appendWrapped(buffer, log, width).length();
+    }
+
+    @Benchmark
+    public String truncate() {
+        return AnsiText.truncate(line, width, "\u2026");
+    }
+}
@@ -0,0 +1,103 @@
+package com.witcraft.ansi;
+
+import com.witcraft.ansi.AnsiSequence.Style;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks rendering the Control Sequence of a single set of styles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SequenceBenchmark {
+    private Ansi ansi;
+    private Ansi changing;
+    private Integer[][] rgbColors;
+    private int counter;
+    private AnsiTemplate template;
+
+    @Setup
+    public void setup() {
+        ansi = new Ansi().bold().underline().red().bgBlue();
+        changing = new Ansi();
+        rgbColors = new Integer[256][];
+        for (int i = 0; i < rgbColors.length; i++) {
+            rgbColors[i] = new Integer[] {i, 255 - i, 128};
+        }
+        String sequence = Style.COLOR.getSequence(rgbColors[0]);
+        if (!"38;2;0;255;128".equals(sequence)) {
+            throw new IllegalStateException("RGB argument not accepted: " + sequence);
+        }
+        template = AnsiTemplate.compile("[{red,bold}FAILED{/}] {msg}");
+    }
+
+    @Benchmark
+    public String getSequenceGrouped() {
+        return ansi.getSequence(true);
+    }
+
+    @Benchmark
+    public String getSequenceUngrouped() {
+        return ansi.getSequence(false);
+    }
+
+    /**
+     * Changes the styles before each call, so that the sequence is looked up rather than memoized.
+     */
+    @Benchmark
+    public String getSequenceChanging() {
+        return changing.reset().bold().colorIndex(counter++ & 0xFF).getSequence();
+    }
+
+    @Benchmark
+    public String wrap() {
+        return ansi.wrap("benchmark");
+    }
+
+    @Benchmark
+    public String ansiToString() {
+        return ansi.toString();
+    }
+
+    @Benchmark
+    public String styleSequenceWithoutArgument() {
+        return Style.BOLD.getSequence();
+    }
+
+    @Benchmark
+    public String styleSequenceIndex() {
+        return Style.COLOR_INDEX.getSequence(counter++ & 0xFF);
+    }
+
+    @Benchmark
+    public String styleSequenceColor() {
+        return Style.COLOR.getSequence(rgbColors[counter++ & 0xFF]);
+    }
+
+    /**
+     * Formats a log line by building the styles for each call, as a baseline for {@link #templateRender()}.
+     */
+    @Benchmark
+    public String templateBaseline() {
+        return "[" + new Ansi().red().bold().wrap("FAILED") + "] " + "disk full";
+    }
+
+    @Benchmark
+    public String templateRender() {
+        return template.render("disk full");
+    }
+}
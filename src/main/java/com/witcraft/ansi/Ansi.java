@@ -1,18 +1,18 @@
 package com.witcraft.ansi;
 
-import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  *
  */
 public class Ansi implements AnsiSequence<Ansi> {
 
 
-    private final EnumSet<Style> styles;
-    private final Map<Style, Object> argumentMap;
+    private long styleMask;
+    private int foreground;
+    private int background;
     private boolean isGrouped;
+    private SequenceKey sequenceKey;
+    private TerminalProfile sequenceProfile;
+    private String sequence;
 
     /**
      * Creates a new Ansi object with grouped sequences.
@@ -27,16 +27,25 @@ public class Ansi implements AnsiSequence<Ansi> {
      * @param isGrouped indicates whether the created Ansi instance will group all of its sequences together
      */
     public Ansi(boolean isGrouped) {
-        styles = EnumSet.noneOf(Style.class);
-        argumentMap = new HashMap<>();
         this.isGrouped = isGrouped;
     }
 
     @Override
-    public EnumSet<Style> getStyles() { return styles; }
+    public long getStyleMask() { return styleMask; }
+
+    @Override
+    public int getForeground() { return foreground; }
+
+    @Override
+    public int getBackground() { return background; }
 
     @Override
-    public Map<Style, Object> getArgumentMap() { return argumentMap; }
+    public Ansi setState(long styleMask, int foreground, int background) {
+        this.styleMask = styleMask;
+        this.foreground = Style.foregroundOf(styleMask, foreground);
+        this.background = Style.backgroundOf(styleMask, background);
+        return this;
+    }
 
     @Override
     public boolean isGrouped() { return isGrouped; }
@@ -44,6 +53,37 @@ public class Ansi implements AnsiSequence<Ansi> {
     @Override
     public Ansi setGrouped(boolean group) { isGrouped = group; return this; }
 
+    /**
+     * Returns the Control Sequence for the styles of this Ansi object. The result is remembered until the styles or
+     * their arguments change, so repeated calls on an unchanged instance don't consult the shared cache.
+     *
+     * @param grouped whether to group all styles into a single Control Sequence structure
+     * @return the Control Sequence for the styles of this Ansi object
+     */
+    @Override
+    public String getSequence(boolean grouped) {
+        TerminalProfile profile = TerminalProfile.getDefault();
+        if (!profile.isEnabled()) {
+            return "";
+        }
+        if (sequenceKey != null && sequenceProfile == profile && sequenceKey.matches(styleMask, foreground, background, grouped)) {
+            return sequence;
+        }
+        SequenceKey key = SequenceKey.of(this, grouped);
+        String result = profile.getSequence(key, this);
+        sequenceKey = key;
+        sequenceProfile = profile;
+        sequence = result;
+        return result;
+    }
+
+    /**
+     * Returns the interned, immutable {@link AnsiStyle} for the current styles and arguments of this Ansi object.
+     *
+     * @return the AnsiStyle for this Ansi object
+     */
+    public AnsiStyle toStyle() { return AnsiStyle.of(this); }
+
     @Override
     public String toString() { return getSequence(); }
 }
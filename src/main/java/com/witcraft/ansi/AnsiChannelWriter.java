@@ -0,0 +1,259 @@
+package com.witcraft.ansi;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes styled text to a channel from many threads, without monitors.
+ * <p>
+ * Every write encodes its text directly into the byte buffer of an {@link AnsiEncoder} while holding a
+ * {@link ReentrantLock}, so each write is whole and writes from different threads never interleave. Unlike
+ * {@link java.io.PrintWriter} and {@link java.io.PrintStream}, nothing here synchronizes on a monitor, so virtual
+ * threads waiting for the lock or for I/O unmount from their carrier threads instead of pinning them. The buffer is
+ * written to the channel when it fills up, on {@link #flush()}, and after every write if auto-flush is enabled.
+ * <p>
+ * {@link #open(Path)} writes to a file through an {@link AsynchronousFileChannel}, whose writes complete on the
+ * channel's own threads while the writing thread parks.
+ */
+public final class AnsiChannelWriter implements Flushable, Closeable {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AnsiEncoder encoder;
+    private final boolean autoFlush;
+    private final boolean closeChannel;
+    private boolean closed;
+
+    /**
+     * Creates an AnsiChannelWriter with a buffer of {@link AnsiEncoder#DEFAULT_CAPACITY} bytes, without auto-flush.
+     *
+     * @param channel the channel to write to; closed by {@link #close()}
+     */
+    public AnsiChannelWriter(WritableByteChannel channel) {
+        this(channel, AnsiEncoder.DEFAULT_CAPACITY, false);
+    }
+
+    /**
+     * Creates an AnsiChannelWriter.
+     *
+     * @param channel   the channel to write to; closed by {@link #close()}
+     * @param capacity  the size in bytes of the buffer
+     * @param autoFlush whether to write the buffer to the channel after every write
+     */
+    public AnsiChannelWriter(WritableByteChannel channel, int capacity, boolean autoFlush) {
+        this(channel, capacity, autoFlush, true);
+    }
+
+    private AnsiChannelWriter(WritableByteChannel channel, int capacity, boolean autoFlush, boolean closeChannel) {
+        this.encoder = new AnsiEncoder(channel, capacity);
+        this.autoFlush = autoFlush;
+        this.closeChannel = closeChannel;
+    }
+
+    /**
+     * Returns an AnsiChannelWriter for the standard output of the process, with auto-flush. Closing it flushes it but
+     * leaves the standard output open.
+     *
+     * @return a new AnsiChannelWriter for the standard output
+     */
+    @SuppressWarnings("resource")
+    public static AnsiChannelWriter stdout() {
+        return new AnsiChannelWriter(new FileOutputStream(FileDescriptor.out).getChannel(), AnsiEncoder.DEFAULT_CAPACITY, true, false);
+    }
+
+    /**
+     * Returns an AnsiChannelWriter that appends to a file through an {@link AsynchronousFileChannel}, creating the
+     * file if it doesn't exist.
+     *
+     * @param file the file to append to
+     * @return a new AnsiChannelWriter for the file
+     * @throws IOException if the file can't be opened
+     */
+    public static AnsiChannelWriter open(Path file) throws IOException {
+        AsynchronousFileChannel channel = AsynchronousFileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        return new AnsiChannelWriter(new AsynchronousFileSink(channel), AnsiEncoder.DEFAULT_CAPACITY, false);
+    }
+
+    /**
+     * Sets the profile Control Sequences are rendered for, such as {@link TerminalProfile#NONE} for a log file, or
+     * {@code null} to follow the {@link TerminalProfile#getDefault() default profile}.
+     *
+     * @param profile the profile of this writer, or {@code null}
+     * @return this AnsiChannelWriter for chaining
+     */
+    public AnsiChannelWriter setProfile(TerminalProfile profile) {
+        lock.lock();
+        try {
+            encoder.setProfile(profile);
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Writes text, which may contain escape sequences of its own.
+     *
+     * @param text the text to write
+     * @return this AnsiChannelWriter for chaining
+     * @throws IOException if the channel fails or this writer is closed
+     */
+    public AnsiChannelWriter write(CharSequence text) throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            encoder.writeText(text);
+            flushIfAuto();
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Writes text wrapped in the Control Sequence of {@code sequence} and a reset.
+     *
+     * @param sequence the styles to write the text in
+     * @param text     the text to write
+     * @return this AnsiChannelWriter for chaining
+     * @throws IOException if the channel fails or this writer is closed
+     */
+    public AnsiChannelWriter write(AnsiSequence<?> sequence, CharSequence text) throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            encoder.writeWrapped(sequence, text);
+            flushIfAuto();
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Writes a line of text wrapped in the Control Sequence of {@code sequence} and a reset, followed by the line
+     * separator.
+     *
+     * @param sequence the styles to write the text in
+     * @param text     the text to write
+     * @return this AnsiChannelWriter for chaining
+     * @throws IOException if the channel fails or this writer is closed
+     */
+    public AnsiChannelWriter writeLine(AnsiSequence<?> sequence, CharSequence text) throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            encoder.writeWrapped(sequence, text);
+            encoder.writeText(LINE_SEPARATOR);
+            flushIfAuto();
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("AnsiChannelWriter is closed");
+        }
+    }
+
+    private void flushIfAuto() throws IOException {
+        if (autoFlush) {
+            encoder.flush();
+        }
+    }
+
+    /**
+     * Writes any buffered bytes to the channel.
+     *
+     * @throws IOException if the channel fails
+     */
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            if (!closed) {
+                encoder.flush();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes any buffered bytes and closes the channel, unless this writer is for the standard output.
+     *
+     * @throws IOException if the channel fails
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (!closed) {
+                closed = true;
+                if (closeChannel) {
+                    encoder.close();
+                } else {
+                    encoder.flush();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adapts an {@link AsynchronousFileChannel} to sequential writes at the end of the file.
+     */
+    private static final class AsynchronousFileSink implements WritableByteChannel {
+        private final AsynchronousFileChannel channel;
+        private long position;
+
+        AsynchronousFileSink(AsynchronousFileChannel channel) throws IOException {
+            this.channel = channel;
+            this.position = channel.size();
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int written = 0;
+            while (src.hasRemaining()) {
+                int count;
+                try {
+                    count = channel.write(src, position).get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted writing to file");
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    throw (cause instanceof IOException ? (IOException)cause : new IOException(cause));
+                }
+                position += count;
+                written += count;
+            }
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.witcraft.ansi;
+
+/**
+ * Static helpers for colors packed into a single {@code int}.
+ * <p>
+ * The low 24 bits hold the color value and bits 24-25 hold its mode: {@link #MODE_BASIC} for the 16 standard colors,
+ * {@link #MODE_INDEXED} for the 256-color palette and {@link #MODE_RGB} for 24-bit truecolor. {@link #NONE} (zero)
+ * means no color is set.
+ */
+public final class AnsiColor {
+    /**
+     * No color; the terminal default applies.
+     */
+    public static final int NONE = 0;
+
+    public static final int MODE_NONE = 0;
+    public static final int MODE_BASIC = 1;
+    public static final int MODE_INDEXED = 2;
+    public static final int MODE_RGB = 3;
+
+    private static final int MODE_SHIFT = 24;
+    private static final int VALUE_MASK = 0xFFFFFF;
+
+    private AnsiColor() {
+    }
+
+    /**
+     * Returns one of the 16 standard colors: 0-7 for the normal colors, 8-15 for their bright variants.
+     *
+     * @param index the color index, from 0 to 15
+     * @return the packed color
+     */
+    public static int basic(int index) {
+        if (index < 0 || index > 15) {
+            throw new IllegalArgumentException("basic color index out of range [0-15]: " + index);
+        }
+        return (MODE_BASIC << MODE_SHIFT) | index;
+    }
+
+    /**
+     * Returns a color from the 256-color palette.
+     *
+     * @param index the color index, from 0 to 255
+     * @return the packed color
+     */
+    public static int indexed(int index) {
+        if (index < 0 || index > 255) {
+            throw new IllegalArgumentException("color index out of range [0-255]: " + index);
+        }
+        return (MODE_INDEXED << MODE_SHIFT) | index;
+    }
+
+    /**
+     * Returns a 24-bit color from its components.
+     *
+     * @param red   the red component, from 0 to 255
+     * @param green the green component, from 0 to 255
+     * @param blue  the blue component, from 0 to 255
+     * @return the packed color
+     */
+    public static int rgb(int red, int green, int blue) {
+        if (((red | green | blue) & ~0xFF) != 0) {
+            throw new IllegalArgumentException("color component out of range [0-255]: " + red + ", " + green + ", " + blue);
+        }
+        return rgb(AnsiSequence.rgb2int(red, green, blue));
+    }
+
+    /**
+     * Returns a 24-bit color from an {@code 0xRRGGBB} value. Higher bits are ignored.
+     *
+     * @param rgb the color as {@code 0xRRGGBB}
+     * @return the packed color
+     */
+    public static int rgb(int rgb) {
+        return (MODE_RGB << MODE_SHIFT) | (rgb & VALUE_MASK);
+    }
+
+    /**
+     * Returns the mode of a packed color.
+     *
+     * @param color the packed color
+     * @return one of {@link #MODE_NONE}, {@link #MODE_BASIC}, {@link #MODE_INDEXED} or {@link #MODE_RGB}
+     */
+    public static int mode(int color) {
+        return (color >>> MODE_SHIFT) & 0x3;
+    }
+
+    /**
+     * Returns the value of a packed color: the palette index, or {@code 0xRRGGBB} for 24-bit colors.
+     *
+     * @param color the packed color
+     * @return the value of the color
+     */
+    public static int value(int color) {
+        return (color & VALUE_MASK);
+    }
+
+    /**
+     * Returns the red component of a 24-bit packed color.
+     *
+     * @param color the packed color
+     * @return the red component, from 0 to 255
+     */
+    public static int red(int color) {
+        return (color >> 16) & 0xFF;
+    }
+
+    /**
+     * Returns the green component of a 24-bit packed color.
+     *
+     * @param color the packed color
+     * @return the green component, from 0 to 255
+     */
+    public static int green(int color) {
+        return (color >> 8) & 0xFF;
+    }
+
+    /**
+     * Returns the blue component of a 24-bit packed color.
+     *
+     * @param color the packed color
+     * @return the blue component, from 0 to 255
+     */
+    public static int blue(int color) {
+        return color & 0xFF;
+    }
+
+    /**
+     * Returns the 24-bit equivalent of a packed color, assuming xterm's default values for the 16 standard colors.
+     *
+     * @param color the packed color
+     * @return the packed 24-bit color, or {@link #NONE} if {@code color} is {@link #NONE}
+     */
+    public static int toRgb(int color) {
+        switch (mode(color)) {
+            case MODE_BASIC:
+            case MODE_INDEXED:
+                return rgb(ColorQuantizer.indexedToRgb(value(color)));
+            case MODE_RGB:
+                return color;
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * Returns the entry of the 256-color palette that looks nearest to a packed color. 24-bit colors are matched in
+     * CIELAB against the color cube and gray ramp (16-255) with a single table lookup; colors of the cube and gray
+     * ramp map to their own entries.
+     *
+     * @param color the packed color
+     * @return the packed palette color, or {@code color} itself if it is not a 24-bit color
+     */
+    public static int toIndexed(int color) {
+        return (mode(color) == MODE_RGB ? indexed(ColorQuantizer.rgbToIndexed(value(color))) : color);
+    }
+
+    /**
+     * Returns the standard color that looks nearest to a packed color, matched in CIELAB with a single table lookup.
+     *
+     * @param color the packed color
+     * @return the packed standard color, or {@link #NONE} if {@code color} is {@link #NONE}
+     */
+    public static int toBasic(int color) {
+        switch (mode(color)) {
+            case MODE_INDEXED:
+                return basic(ColorQuantizer.indexedToBasic(value(color)));
+            case MODE_RGB:
+                return basic(ColorQuantizer.rgbToBasic(value(color)));
+            default:
+                return color;
+        }
+    }
+
+    /**
+     * Converts a packed color to the nearest color a terminal supporting only colors up to {@code maxMode} can show.
+     *
+     * @param color   the packed color
+     * @param maxMode the richest mode supported: {@link #MODE_NONE}, {@link #MODE_BASIC}, {@link #MODE_INDEXED} or
+     *                {@link #MODE_RGB}
+     * @return the packed color in at most {@code maxMode}, or {@link #NONE} if {@code maxMode} is {@link #MODE_NONE}
+     */
+    public static int downsample(int color, int maxMode) {
+        if (mode(color) <= maxMode) {
+            return color;
+        }
+        switch (maxMode) {
+            case MODE_INDEXED:
+                return toIndexed(color);
+            case MODE_BASIC:
+                return toBasic(color);
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * Returns a readable description of a packed color, such as {@code rgb(255,128,0)}.
+     *
+     * @param color the packed color
+     * @return a description of the color
+     */
+    public static String toString(int color) {
+        switch (mode(color)) {
+            case MODE_BASIC:
+                return "basic(" + value(color) + ")";
+            case MODE_INDEXED:
+                return "indexed(" + value(color) + ")";
+            case MODE_RGB:
+                return "rgb(" + red(color) + "," + green(color) + "," + blue(color) + ")";
+            default:
+                return "none";
+        }
+    }
+}
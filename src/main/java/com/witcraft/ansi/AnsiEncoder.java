@@ -0,0 +1,552 @@
+package com.witcraft.ansi;
+
+import com.witcraft.ansi.AnsiMetrics.Counter;
+import com.witcraft.ansi.AnsiSequence.Style;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes Control Sequences and UTF-8 text directly as bytes, to a {@link WritableByteChannel} or an
+ * {@link OutputStream}, without building intermediate Strings or char arrays.
+ * <p>
+ * Style codes come from precomputed byte tables and color parameters are written digit by digit. Output is collected
+ * in a buffer that is drained whenever it cannot hold the next write, and on {@link #flush()}. Channels get a direct
+ * buffer so the bytes reach the channel without further copies.
+ * <p>
+ * An AnsiEncoder is not thread-safe.
+ */
+public final class AnsiEncoder implements Flushable, Closeable {
+    /**
+     * The default buffer capacity, in bytes.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * The smallest buffer capacity accepted, enough for any single Control Sequence.
+     */
+    public static final int MIN_CAPACITY = 1024;
+
+    private static final int MAX_STYLE_BYTES = 26;
+
+    private static final byte[] CSI_START_BYTES = {0x1B, '['};
+    private static final byte[] CSI_BREAK_BYTES = {'m', 0x1B, '['};
+    private static final byte CSI_END_BYTE = 'm';
+    private static final byte[] RESET_BYTES = {0x1B, '[', '0', 'm'};
+
+    private final WritableByteChannel channel;
+    private final OutputStream stream;
+    private final ByteBuffer buffer;
+    private final StringBuilder transition = new StringBuilder(32);
+    private char pendingHighSurrogate;
+    private TerminalProfile profile;
+    private long drained;
+
+    /**
+     * Creates an encoder writing to {@code channel} through a direct buffer of {@link #DEFAULT_CAPACITY} bytes.
+     *
+     * @param channel the channel to write to
+     */
+    public AnsiEncoder(WritableByteChannel channel) {
+        this(channel, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an encoder writing to {@code channel} through a direct buffer of {@code capacity} bytes.
+     *
+     * @param channel  the channel to write to
+     * @param capacity the buffer capacity, at least {@link #MIN_CAPACITY}
+     */
+    public AnsiEncoder(WritableByteChannel channel, int capacity) {
+        this.channel = channel;
+        this.stream = null;
+        this.buffer = ByteBuffer.allocateDirect(checkCapacity(capacity));
+    }
+
+    /**
+     * Creates an encoder writing to {@code out} through a buffer of {@link #DEFAULT_CAPACITY} bytes.
+     *
+     * @param out the stream to write to
+     */
+    public AnsiEncoder(OutputStream out) {
+        this(out, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an encoder writing to {@code out} through a buffer of {@code capacity} bytes.
+     *
+     * @param out      the stream to write to
+     * @param capacity the buffer capacity, at least {@link #MIN_CAPACITY}
+     */
+    public AnsiEncoder(OutputStream out, int capacity) {
+        this.channel = null;
+        this.stream = out;
+        this.buffer = ByteBuffer.allocate(checkCapacity(capacity));
+    }
+
+    private static int checkCapacity(int capacity) {
+        if (capacity < MIN_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be at least " + MIN_CAPACITY + ": " + capacity);
+        }
+        return capacity;
+    }
+
+    /**
+     * Returns the profile Control Sequences are rendered for: the one set with {@link #setProfile(TerminalProfile)},
+     * or else the {@link TerminalProfile#getDefault() default profile}.
+     *
+     * @return the profile of this encoder
+     */
+    public TerminalProfile getProfile() {
+        return (profile != null ? profile : TerminalProfile.getDefault());
+    }
+
+    /**
+     * Sets the profile Control Sequences are rendered for, such as {@link TerminalProfile#NONE} for an encoder writing
+     * to a file, or {@code null} to follow the {@link TerminalProfile#getDefault() default profile}.
+     *
+     * @param profile the profile of this encoder, or {@code null}
+     * @return this encoder for chaining
+     */
+    public AnsiEncoder setProfile(TerminalProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    /**
+     * Writes the Control Sequence for {@code sequence}, honoring {@link AnsiSequence#isGrouped()}.
+     *
+     * @param sequence the sequence to write
+     * @return this encoder for chaining
+     * @throws IOException if the underlying channel or stream fails
+     */
+    public AnsiEncoder writeSequence(AnsiSequence<?> sequence) throws IOException {
+        TerminalProfile profile = getProfile();
+        if (!profile.isEnabled()) {
+            return this;
+        }
+        writePendingSurrogate();
+        require(maxSequenceLength(sequence));
+        int start = buffer.position();
+        encodeSequence(sequence, sequence.isGrouped(), buffer, profile);
+        AnsiMetrics.sequenceWritten(buffer.position() - start);
+        return this;
+    }
+
+    /**
+     * Writes a reset Control Sequence, unless the {@link #getProfile() profile} doesn't support styling.
+     *
+     * @return this encoder for chaining
+     * @throws IOException if the underlying channel or stream fails
+     */
+    public AnsiEncoder writeReset() throws IOException {
+        if (!getProfile().isEnabled()) {
+            return this;
+        }
+        writePendingSurrogate();
+        require(RESET_BYTES.length);
+        buffer.put(RESET_BYTES);
+        AnsiMetrics.sequenceWritten(RESET_BYTES.length);
+        return this;
+    }
+
+    /**
+     * Writes {@code text} preceded by the Control Sequence for {@code sequence} and followed by a reset.
+     *
+     * @param sequence the sequence to style the text with
+     * @param text     the text to write
+     * @return this encoder for chaining
+     * @throws IOException if the underlying channel or stream fails
+     */
+    public AnsiEncoder writeWrapped(AnsiSequence<?> sequence, CharSequence text) throws IOException {
+        return writeSequence(sequence).writeText(text).writeReset();
+    }
+
+    /**
+     * Writes {@code text} encoded as UTF-8.
+     *
+     * @param text the text to write
+     * @return this encoder for chaining
+     * @throws IOException if the underlying channel or stream fails
+     */
+    public AnsiEncoder writeText(CharSequence text) throws IOException {
+        return writeText(text, 0, text.length());
+    }
+
+    /**
+     * Writes the characters of {@code text} from {@code start} (inclusive) to {@code end} (exclusive), encoded as UTF-8.
+     * A high surrogate at the end of the range is held until the next write, so surrogate pairs may be split across calls;
+     * if the next write isn't text, the held surrogate is written as {@code '?'} before it.
+     *
+     * @param text  the text to write
+     * @param start the index of the first character to write
+     * @param end   the index after the last character to write
+     * @return this encoder for chaining
+     * @throws IOException if the underlying channel or stream fails
+     */
+    public AnsiEncoder writeText(CharSequence text, int start, int end) throws IOException {
+        if (AnsiMetrics.isEnabled()) {
+            long mark = written();
+            encode(text, start, end);
+            AnsiMetrics.add(Counter.PAYLOAD_BYTES, written() - mark);
+        } else {
+            encode(text, start, end);
+        }
+        return this;
+    }
+
+    /**
+     * Writes an escape sequence that was rendered as text, such as a transition between states, and reports it as one.
+     */
+    AnsiEncoder writeEscape(CharSequence sequence) throws IOException {
+        writePendingSurrogate();
+        encode(sequence, 0, sequence.length());
+        AnsiMetrics.sequenceWritten(sequence.length());
+        return this;
+    }
+
+    /**
+     * Writes the transition between two packed states as an escape sequence, through a buffer kept by this encoder.
+     */
+    AnsiEncoder writeTransition(long from, long to) throws IOException {
+        transition.setLength(0);
+        SgrState.appendTransition(transition, from, to);
+        if (transition.length() > 0) {
+            writeEscape(transition);
+        }
+        return this;
+    }
+
+    private void encode(CharSequence text, int start, int end) throws IOException {
+        int index = start;
+        if (pendingHighSurrogate != 0 && index < end) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            char low = text.charAt(index);
+            require(4);
+            if (Character.isLowSurrogate(low)) {
+                putCodePoint(Character.toCodePoint(high, low), buffer);
+                index++;
+            } else {
+                buffer.put((byte)'?');
+            }
+        }
+        while (index < end) {
+            if (buffer.remaining() < 4) {
+                drain();
+            }
+            index = encodeText(text, index, end, buffer);
+            if (index == end - 1 && Character.isHighSurrogate(text.charAt(index))) {
+                pendingHighSurrogate = text.charAt(index);
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Writes raw bytes, such as text that is already UTF-8 encoded.
+     *
+     * @param bytes the bytes to write; its position is advanced past them
+     * @return this encoder for chaining
+     * @throws IOException if the underlying channel or stream fails
+     */
+    public AnsiEncoder writeBytes(ByteBuffer bytes) throws IOException {
+        writePendingSurrogate();
+        AnsiMetrics.add(Counter.PAYLOAD_BYTES, bytes.remaining());
+        while (bytes.hasRemaining()) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int count = Math.min(bytes.remaining(), buffer.remaining());
+            ByteBuffer slice = bytes.duplicate();
+            slice.limit(slice.position() + count);
+            buffer.put(slice);
+            bytes.position(bytes.position() + count);
+        }
+        return this;
+    }
+
+    /**
+     * Writes {@code length} raw bytes of {@code bytes}, starting at {@code offset}.
+     *
+     * @param bytes  the bytes to write
+     * @param offset the index of the first byte to write
+     * @param length the number of bytes to write
+     * @return this encoder for chaining
+     * @throws IOException if the underlying channel or stream fails
+     */
+    public AnsiEncoder writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || length > bytes.length - offset) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + bytes.length);
+        }
+        writePendingSurrogate();
+        AnsiMetrics.add(Counter.PAYLOAD_BYTES, length);
+        put(bytes, offset, length);
+        return this;
+    }
+
+    /**
+     * Writes a pre-rendered segment of escape sequences and text, and reports {@code escapeLength} of its bytes as
+     * {@code sequences} escape sequences and the rest as payload.
+     */
+    AnsiEncoder writeSegment(byte[] bytes, int escapeLength, int sequences) throws IOException {
+        writePendingSurrogate();
+        put(bytes, 0, bytes.length);
+        AnsiMetrics.Recorder recorder = AnsiMetrics.getRecorder();
+        if (recorder != null) {
+            recorder.add(Counter.SEQUENCES_WRITTEN, sequences);
+            recorder.add(Counter.ESCAPE_BYTES, escapeLength);
+            recorder.add(Counter.PAYLOAD_BYTES, bytes.length - escapeLength);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a high surrogate held by {@link #writeText(CharSequence, int, int)} as {@code '?'}, since the write that
+     * follows can't complete its pair.
+     */
+    private void writePendingSurrogate() throws IOException {
+        if (pendingHighSurrogate != 0) {
+            pendingHighSurrogate = 0;
+            require(1);
+            buffer.put((byte)'?');
+            AnsiMetrics.add(Counter.PAYLOAD_BYTES, 1);
+        }
+    }
+
+    private void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Writes any buffered bytes and flushes the underlying stream.
+     *
+     * @throws IOException if the underlying channel or stream fails
+     */
+    @Override
+    public void flush() throws IOException {
+        long start = AnsiMetrics.flushStarted();
+        int count = buffer.position();
+        writeBuffer();
+        if (stream != null) {
+            stream.flush();
+        }
+        AnsiMetrics.flushed(start, count);
+    }
+
+    /**
+     * Flushes this encoder and closes the underlying channel or stream.
+     *
+     * @throws IOException if the underlying channel or stream fails
+     */
+    @Override
+    public void close() throws IOException {
+        writePendingSurrogate();
+        try {
+            flush();
+        } finally {
+            if (stream != null) {
+                stream.close();
+            } else {
+                channel.close();
+            }
+        }
+    }
+
+    private void require(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        long start = AnsiMetrics.flushStarted();
+        int count = buffer.position();
+        writeBuffer();
+        AnsiMetrics.flushed(start, count);
+    }
+
+    /**
+     * Returns the number of bytes written so far, including those still buffered.
+     */
+    private long written() {
+        return drained + buffer.position();
+    }
+
+    private void writeBuffer() throws IOException {
+        drained += buffer.position();
+        buffer.flip();
+        if (stream != null) {
+            stream.write(buffer.array(), buffer.arrayOffset(), buffer.limit());
+        } else {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns an upper bound of the number of bytes {@link #encodeSequence(AnsiSequence, boolean, ByteBuffer)} writes
+     * for the current state of {@code sequence}.
+     *
+     * @param sequence the sequence to measure
+     * @return the maximum encoded length, in bytes
+     */
+    public static int maxSequenceLength(AnsiSequence<?> sequence) {
+        return (CSI_START_BYTES.length + 1) + Long.bitCount(sequence.getStyleMask()) * MAX_STYLE_BYTES;
+    }
+
+    /**
+     * Writes the Control Sequence for {@code sequence} into {@code out} as US-ASCII bytes, as the
+     * {@link TerminalProfile#getDefault() default profile} supports it.
+     *
+     * @param sequence the sequence to encode
+     * @param grouped  whether to group all styles into a single Control Sequence structure
+     * @param out      the buffer to write to
+     * @return the number of bytes written
+     * @throws java.nio.BufferOverflowException if {@code out} has less than {@link #maxSequenceLength(AnsiSequence)} bytes remaining
+     */
+    public static int encodeSequence(AnsiSequence<?> sequence, boolean grouped, ByteBuffer out) {
+        return encodeSequence(sequence, grouped, out, TerminalProfile.getDefault());
+    }
+
+    static int encodeSequence(AnsiSequence<?> sequence, boolean grouped, ByteBuffer out, TerminalProfile profile) {
+        int start = out.position();
+        if (!profile.isUnrestricted()) {
+            String adapted = profile.getSequence(sequence, grouped);
+            for (int index = 0; index < adapted.length(); index++) {
+                out.put((byte)adapted.charAt(index));
+            }
+            return out.position() - start;
+        }
+        if (sequence instanceof AnsiStyle && sequence.isGrouped() == grouped) {
+            out.put(((AnsiStyle)sequence).sequenceBytes);
+            return out.position() - start;
+        }
+        long styleMask = sequence.getStyleMask();
+        int foreground = sequence.getForeground();
+        int background = sequence.getBackground();
+        boolean first = true;
+        out.put(CSI_START_BYTES);
+        for (Style style : Style.VALUES) {
+            if ((styleMask & style.getMask()) != 0) {
+                if (!first) {
+                    if (grouped) {
+                        out.put((byte)';');
+                    } else {
+                        out.put(CSI_BREAK_BYTES);
+                    }
+                }
+                style.encodeTo(out, style.argumentOf(foreground, background));
+                first = false;
+            }
+        }
+        out.put(CSI_END_BYTE);
+        return out.position() - start;
+    }
+
+    /**
+     * Encodes characters of {@code text} as UTF-8 into {@code out}, starting at {@code start} and stopping at
+     * {@code end}, at a high surrogate that ends the range, or when {@code out} can't hold the next character.
+     * Unpaired surrogates are encoded as {@code '?'}.
+     *
+     * @param text  the text to encode
+     * @param start the index of the first character to encode
+     * @param end   the index after the last character to encode
+     * @param out   the buffer to write to
+     * @return the index of the first character not encoded
+     */
+    public static int encodeText(CharSequence text, int start, int end, ByteBuffer out) {
+        int index = start;
+        if (out.hasArray()) {
+            byte[] array = out.array();
+            int offset = out.arrayOffset();
+            int position = out.position();
+            int limit = Math.min(out.limit(), position + (end - index));
+            while (position < limit) {
+                char c = text.charAt(index);
+                if (c >= 0x80) {
+                    break;
+                }
+                array[offset + position++] = (byte)c;
+                index++;
+            }
+            out.position(position);
+        }
+        while (index < end) {
+            char c = text.charAt(index);
+            if (c < 0x80) {
+                if (!out.hasRemaining()) {
+                    break;
+                }
+                out.put((byte)c);
+            } else if (c < 0x800) {
+                if (out.remaining() < 2) {
+                    break;
+                }
+                out.put((byte)(0xC0 | (c >> 6)));
+                out.put((byte)(0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c)) {
+                if (index + 1 == end) {
+                    break;
+                }
+                char low = text.charAt(index + 1);
+                if (Character.isLowSurrogate(low)) {
+                    if (out.remaining() < 4) {
+                        break;
+                    }
+                    putCodePoint(Character.toCodePoint(c, low), out);
+                    index++;
+                } else {
+                    if (!out.hasRemaining()) {
+                        break;
+                    }
+                    out.put((byte)'?');
+                }
+            } else if (Character.isLowSurrogate(c)) {
+                if (!out.hasRemaining()) {
+                    break;
+                }
+                out.put((byte)'?');
+            } else {
+                if (out.remaining() < 3) {
+                    break;
+                }
+                putCodePoint(c, out);
+            }
+            index++;
+        }
+        return index;
+    }
+
+    private static void putCodePoint(int codePoint, ByteBuffer out) {
+        if (codePoint < 0x80) {
+            out.put((byte)codePoint);
+        } else if (codePoint < 0x800) {
+            out.put((byte)(0xC0 | (codePoint >> 6)));
+            out.put((byte)(0x80 | (codePoint & 0x3F)));
+        } else if (codePoint < 0x10000) {
+            out.put((byte)(0xE0 | (codePoint >> 12)));
+            out.put((byte)(0x80 | ((codePoint >> 6) & 0x3F)));
+            out.put((byte)(0x80 | (codePoint & 0x3F)));
+        } else {
+            out.put((byte)(0xF0 | (codePoint >> 18)));
+            out.put((byte)(0x80 | ((codePoint >> 12) & 0x3F)));
+            out.put((byte)(0x80 | ((codePoint >> 6) & 0x3F)));
+            out.put((byte)(0x80 | (codePoint & 0x3F)));
+        }
+    }
+}
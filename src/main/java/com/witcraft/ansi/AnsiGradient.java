@@ -0,0 +1,272 @@
+package com.witcraft.ansi;
+
+import java.util.Arrays;
+
+/**
+ * A color gradient through two or more stops, applied per character to text as {@link AnsiText}.
+ * <pre>{@code
+ * static final AnsiGradient HEAT = AnsiGradient.of(AnsiColor.rgb(0x0000ff), AnsiColor.rgb(0xffff00), AnsiColor.rgb(0xff0000));
+ * String bar = HEAT.foreground("#".repeat(40)).render();
+ * }</pre>
+ * Colors are interpolated in 24-bit RGB with 16.16 fixed-point integer arithmetic. Each character gets its own
+ * color, but neighbors that round to the same color share a single style run, so they cost a single Control
+ * Sequence. Zero-width code points, such as combining marks, take the color of the character they attach to. When the
+ * text is rendered for a terminal with fewer colors, they are downsampled by the {@link TerminalProfile}, and runs
+ * that become equal are merged again. An AnsiGradient is immutable.
+ */
+public final class AnsiGradient {
+    private static final int ONE = 1 << 16;
+    private static final int HALF = 1 << 15;
+
+    private final int[] positions;
+    private final int[] colors;
+
+    private AnsiGradient(int[] positions, int[] colors) {
+        this.positions = positions;
+        this.colors = colors;
+    }
+
+    /**
+     * Returns a gradient through {@code colors} at evenly spaced positions.
+     *
+     * @param colors the packed colors of the stops, in order; palette colors are converted to 24-bit colors
+     * @return the gradient
+     * @throws IllegalArgumentException if no colors are given or one of them is {@link AnsiColor#NONE}
+     */
+    public static AnsiGradient of(int... colors) {
+        double[] positions = new double[colors.length];
+        for (int index = 1; index < colors.length; index++) {
+            positions[index] = (double)index / (colors.length - 1);
+        }
+        return of(positions, colors);
+    }
+
+    /**
+     * Returns a gradient through {@code colors} at {@code positions}. Positions before the first stop take its color,
+     * and positions after the last stop the color of the last one; two stops at the same position make a hard edge.
+     *
+     * @param positions the positions of the stops, ascending from 0 to 1
+     * @param colors    the packed colors of the stops; palette colors are converted to 24-bit colors
+     * @return the gradient
+     * @throws IllegalArgumentException if the arrays differ in length or are empty, a position is out of order or out
+     *                                  of range, or a color is {@link AnsiColor#NONE}
+     */
+    public static AnsiGradient of(double[] positions, int[] colors) {
+        if (positions.length != colors.length || colors.length == 0) {
+            throw new IllegalArgumentException("Expected the same, non-zero number of positions and colors: " + positions.length + ", " + colors.length);
+        }
+        int[] fixedPositions = new int[positions.length];
+        int[] rgbColors = new int[colors.length];
+        for (int index = 0; index < colors.length; index++) {
+            double position = positions[index];
+            if (!(position >= 0.0 && position <= 1.0) || (index > 0 && position < positions[index - 1])) {
+                throw new IllegalArgumentException("Positions must ascend from 0 to 1: " + Arrays.toString(positions));
+            }
+            if (colors[index] == AnsiColor.NONE) {
+                throw new IllegalArgumentException("Stop " + index + " has no color");
+            }
+            fixedPositions[index] = (int)Math.round(position * ONE);
+            rgbColors[index] = AnsiColor.value(AnsiColor.toRgb(colors[index]));
+        }
+        return new AnsiGradient(fixedPositions, rgbColors);
+    }
+
+    /**
+     * Returns the color at {@code position}.
+     *
+     * @param position the position, from 0 to 1; values outside are clamped
+     * @return the packed 24-bit color
+     */
+    public int colorAt(double position) {
+        return AnsiColor.rgb(interpolate(toFixed(position)));
+    }
+
+    /**
+     * Returns {@code count} colors sampled at evenly spaced positions, from the start to the end of the gradient.
+     *
+     * @param count the number of colors
+     * @return the packed 24-bit colors
+     */
+    public int[] sample(int count) {
+        int[] result = new int[count];
+        sampleRgb(result, count);
+        for (int index = 0; index < count; index++) {
+            result[index] = AnsiColor.rgb(result[index]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@code text} with the gradient as its foreground color, from the first to the last character.
+     *
+     * @param text the text to color, without escape sequences
+     * @return the colored text
+     */
+    public AnsiText foreground(CharSequence text) {
+        return apply(new AnsiText(text.length()), text, false);
+    }
+
+    /**
+     * Returns {@code text} with the gradient as its background color, from the first to the last character.
+     *
+     * @param text the text to color, without escape sequences
+     * @return the colored text
+     */
+    public AnsiText background(CharSequence text) {
+        return apply(new AnsiText(text.length()), text, true);
+    }
+
+    /**
+     * Appends {@code text} to {@code out} with the gradient as its foreground or background color, from the first to
+     * the last character, layered on the current style of {@code out}.
+     *
+     * @param out        the styled text to append to
+     * @param text       the text to color, without escape sequences
+     * @param background whether to color the background rather than the foreground
+     * @return {@code out}
+     */
+    public AnsiText apply(AnsiText out, CharSequence text, boolean background) {
+        int count = countCells(text);
+        int[] rgb = new int[count];
+        sampleRgb(rgb, count);
+        return appendColored(out, text, rgb, background);
+    }
+
+    /**
+     * Returns {@code text} with each character colored by the gradient at the position of its value between
+     * {@code min} and {@code max}, as in a heatmap.
+     *
+     * @param text   the text to color, without escape sequences
+     * @param values the value of each character; characters past the end of the array, and {@code NaN} values, keep
+     *               the default color
+     * @param min    the value at the start of the gradient
+     * @param max    the value at the end of the gradient
+     * @return the colored text
+     */
+    public AnsiText heatmap(CharSequence text, double[] values, double min, double max) {
+        return heatmap(new AnsiText(text.length()), text, values, min, max, false);
+    }
+
+    /**
+     * Appends {@code text} to {@code out} with each character colored by the gradient at the position of its value
+     * between {@code min} and {@code max}, layered on the current style of {@code out}.
+     *
+     * @param out        the styled text to append to
+     * @param text       the text to color, without escape sequences
+     * @param values     the value of each character; characters past the end of the array, and {@code NaN} values,
+     *                   keep the color of {@code out}
+     * @param min        the value at the start of the gradient
+     * @param max        the value at the end of the gradient
+     * @param background whether to color the background rather than the foreground
+     * @return {@code out}
+     */
+    public AnsiText heatmap(AnsiText out, CharSequence text, double[] values, double min, double max, boolean background) {
+        int count = countCells(text);
+        int[] rgb = new int[count];
+        double scale = (max > min ? 1.0 / (max - min) : 0.0);
+        for (int index = 0; index < count; index++) {
+            double value = (index < values.length ? values[index] : Double.NaN);
+            rgb[index] = (Double.isNaN(value) ? -1 : interpolate(toFixed((value - min) * scale)));
+        }
+        return appendColored(out, text, rgb, background);
+    }
+
+    /**
+     * Fills the first {@code count} elements of {@code out} with {@code 0xRRGGBB} colors at evenly spaced positions.
+     */
+    private void sampleRgb(int[] out, int count) {
+        int last = positions.length - 1;
+        int segment = 0;
+        for (int index = 0; index < count; index++) {
+            int t = (count == 1 ? 0 : (int)(((long)index * ONE) / (count - 1)));
+            while (segment < last - 1 && t > positions[segment + 1]) {
+                segment++;
+            }
+            out[index] = interpolate(segment, t);
+        }
+    }
+
+    private int interpolate(int t) {
+        int segment = 0;
+        while (segment < positions.length - 2 && t > positions[segment + 1]) {
+            segment++;
+        }
+        return interpolate(segment, t);
+    }
+
+    private int interpolate(int segment, int t) {
+        if (segment + 1 >= positions.length || t <= positions[segment]) {
+            return colors[segment];
+        }
+        int start = positions[segment];
+        int end = positions[segment + 1];
+        if (t >= end) {
+            return colors[segment + 1];
+        }
+        int fraction = (int)(((long)(t - start) << 16) / (end - start));
+        int from = colors[segment];
+        int to = colors[segment + 1];
+        return (lerp(from >>> 16, to >>> 16, fraction) << 16)
+            | (lerp((from >>> 8) & 0xFF, (to >>> 8) & 0xFF, fraction) << 8)
+            | lerp(from & 0xFF, to & 0xFF, fraction);
+    }
+
+    private static int lerp(int from, int to, int fraction) {
+        return from + (((to - from) * fraction + HALF) >> 16);
+    }
+
+    private static int toFixed(double position) {
+        if (!(position > 0.0)) {
+            return 0;
+        }
+        return (position >= 1.0 ? ONE : (int)(position * ONE + 0.5));
+    }
+
+    /**
+     * Counts the code points of {@code text} that take up space; zero-width ones share the color of the one before.
+     */
+    private static int countCells(CharSequence text) {
+        int count = 0;
+        int length = text.length();
+        for (int index = 0; index < length; ) {
+            int codePoint = Character.codePointAt(text, index);
+            if (count == 0 || CharWidth.of(codePoint) != 0) {
+                count++;
+            }
+            index += Character.charCount(codePoint);
+        }
+        return count;
+    }
+
+    /**
+     * Appends {@code text} to {@code out}, giving each cell the color in {@code rgb}, or the color of {@code out} where
+     * it is negative.
+     */
+    private static AnsiText appendColored(AnsiText out, CharSequence text, int[] rgb, boolean background) {
+        long base = out.getState();
+        int length = text.length();
+        int cell = -1;
+        int start = 0;
+        for (int index = 0; index < length; ) {
+            int codePoint = Character.codePointAt(text, index);
+            if (cell < 0 || CharWidth.of(codePoint) != 0) {
+                if (index > start) {
+                    out.append(text, start, index);
+                }
+                start = index;
+                cell++;
+                int color = rgb[cell];
+                long state = base;
+                if (color >= 0) {
+                    state = (background ? SgrState.withBackground(base, AnsiColor.rgb(color)) : SgrState.withForeground(base, AnsiColor.rgb(color)));
+                }
+                out.setState(state);
+            }
+            index += Character.charCount(codePoint);
+        }
+        if (length > start) {
+            out.append(text, start, length);
+        }
+        return out.setState(base);
+    }
+}
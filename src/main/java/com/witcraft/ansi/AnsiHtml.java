@@ -0,0 +1,353 @@
+package com.witcraft.ansi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts text with ANSI escape sequences to HTML.
+ * <p>
+ * Styled text is wrapped in one {@code <span>} per run of unchanged {@link SgrState}, opened only when text follows a
+ * change, so SGR sequences that are immediately overridden cost nothing. Attributes and palette colors are rendered as
+ * CSS classes from a fixed table, defined by {@link #getStyleSheet()}; only 24-bit colors are written as inline
+ * styles:
+ * <pre>{@code
+ * <span class="ansi-bold ansi-fg-1">FAILED</span> <span style="color:#ff8800">warning</span>
+ * }</pre>
+ * Text is HTML-escaped, and is expected to be placed in a {@code <pre>} element. C0 controls other than tab and line
+ * feed, and escape sequences other than SGR Control Sequences, are dropped.
+ * <p>
+ * The static methods are thread-safe. {@link #convert(Reader, Writer)} and {@link #convert(InputStream, Writer)} use
+ * fixed-size buffers and a bounded cache of opening tags, so logs of any size are converted in constant memory.
+ */
+public final class AnsiHtml {
+    /**
+     * The prefix of every CSS class name written.
+     */
+    public static final String CLASS_PREFIX = "ansi-";
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int TAG_CACHE_SIZE = 64;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static volatile String styleSheet;
+
+    private AnsiHtml() {
+    }
+
+    /**
+     * Returns {@code input} converted to HTML.
+     *
+     * @param input text that may contain ANSI escape sequences
+     * @return the HTML
+     */
+    public static String toHtml(CharSequence input) {
+        StringBuilder out = new StringBuilder(input.length() + (input.length() >> 2) + 16);
+        Converter converter = new Converter(out, null);
+        converter.parser.parse(input);
+        converter.finish();
+        return out.toString();
+    }
+
+    /**
+     * Reads {@code in} to its end and writes it to {@code out} as HTML. Neither is closed, and {@code out} is not
+     * flushed.
+     *
+     * @param in  the text to convert
+     * @param out the Writer to write the HTML to
+     * @throws IOException if reading or writing fails
+     */
+    public static void convert(Reader in, Writer out) throws IOException {
+        Converter converter = new Converter(null, out);
+        char[] buffer = new char[BUFFER_SIZE];
+        CharBuffer view = CharBuffer.wrap(buffer);
+        int count;
+        while ((count = in.read(buffer, 0, buffer.length)) >= 0) {
+            converter.parser.parse(view, 0, count);
+            converter.check();
+        }
+        converter.finish();
+        converter.check();
+    }
+
+    /**
+     * Reads UTF-8 text from {@code in} to its end and writes it to {@code out} as HTML. Neither is closed, and
+     * {@code out} is not flushed.
+     *
+     * @param in  the UTF-8 text to convert
+     * @param out the Writer to write the HTML to
+     * @throws IOException if reading or writing fails
+     */
+    public static void convert(InputStream in, Writer out) throws IOException {
+        convert(new InputStreamReader(in, StandardCharsets.UTF_8), out);
+    }
+
+    /**
+     * Returns the CSS rules for the classes written by the converter, one per line: the attributes, the 256 palette
+     * colors as foreground and background, and the default colors swapped by reverse video, which are taken from the
+     * custom properties {@code --ansi-foreground} and {@code --ansi-background}. Palette colors use xterm's default
+     * values.
+     *
+     * @return the style sheet
+     */
+    public static String getStyleSheet() {
+        String sheet = styleSheet;
+        if (sheet == null) {
+            sheet = buildStyleSheet();
+            styleSheet = sheet;
+        }
+        return sheet;
+    }
+
+    /**
+     * Returns the opening tag for text in {@code state}, or an empty String for the default state.
+     */
+    static String openingTag(long state) {
+        if (state == SgrState.DEFAULT) {
+            return "";
+        }
+        long attributes = SgrState.attributes(state);
+        int foreground = SgrState.foreground(state);
+        int background = SgrState.background(state);
+        StringBuilder classes = new StringBuilder(48);
+        if ((attributes & SgrState.REVERSE) != 0) {
+            int swap = foreground;
+            foreground = background;
+            background = swap;
+            if (foreground == AnsiColor.NONE) {
+                addClass(classes, "fg-reverse");
+            }
+            if (background == AnsiColor.NONE) {
+                addClass(classes, "bg-reverse");
+            }
+        }
+        if ((attributes & SgrState.BOLD) != 0) {
+            addClass(classes, "bold");
+        }
+        if ((attributes & SgrState.FAINT) != 0) {
+            addClass(classes, "faint");
+        }
+        if ((attributes & SgrState.ITALIC) != 0) {
+            addClass(classes, "italic");
+        }
+        String decoration = decorationOf(attributes);
+        if (decoration != null) {
+            addClass(classes, decoration);
+        }
+        if ((attributes & SgrState.RAPID_BLINK) != 0) {
+            addClass(classes, "rapid-blink");
+        } else if ((attributes & SgrState.BLINK) != 0) {
+            addClass(classes, "blink");
+        }
+        if ((attributes & SgrState.HIDDEN) != 0) {
+            addClass(classes, "hidden");
+        }
+        StringBuilder style = new StringBuilder(0);
+        addColor(classes, style, foreground, "fg-", "color:");
+        addColor(classes, style, background, "bg-", "background-color:");
+
+        StringBuilder tag = new StringBuilder(classes.length() + style.length() + 24).append("<span");
+        if (classes.length() > 0) {
+            tag.append(" class=\"").append(classes).append('"');
+        }
+        if (style.length() > 0) {
+            tag.append(" style=\"").append(style).append('"');
+        }
+        return tag.append('>').toString();
+    }
+
+    private static String decorationOf(long attributes) {
+        boolean strike = (attributes & SgrState.STRIKE) != 0;
+        if ((attributes & SgrState.DOUBLE_UNDERLINE) != 0) {
+            return (strike ? "double-underline-strike" : "double-underline");
+        }
+        if ((attributes & SgrState.UNDERLINE) != 0) {
+            return (strike ? "underline-strike" : "underline");
+        }
+        return (strike ? "strike" : null);
+    }
+
+    private static void addClass(StringBuilder classes, String name) {
+        if (classes.length() > 0) {
+            classes.append(' ');
+        }
+        classes.append(CLASS_PREFIX).append(name);
+    }
+
+    private static void addColor(StringBuilder classes, StringBuilder style, int color, String prefix, String property) {
+        switch (AnsiColor.mode(color)) {
+            case AnsiColor.MODE_BASIC:
+            case AnsiColor.MODE_INDEXED:
+                addClass(classes, prefix);
+                classes.append(AnsiColor.value(color));
+                break;
+            case AnsiColor.MODE_RGB:
+                if (style.length() > 0) {
+                    style.append(';');
+                }
+                appendHex(style.append(property), AnsiColor.value(color));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static StringBuilder appendHex(StringBuilder out, int rgb) {
+        out.append('#');
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            out.append(HEX[(rgb >>> shift) & 0xF]);
+        }
+        return out;
+    }
+
+    private static String buildStyleSheet() {
+        StringBuilder sheet = new StringBuilder(16384);
+        String p = "." + CLASS_PREFIX;
+        sheet.append(p).append("bold { font-weight: bold; }\n");
+        sheet.append(p).append("faint { opacity: 0.6; }\n");
+        sheet.append(p).append("italic { font-style: italic; }\n");
+        sheet.append(p).append("underline { text-decoration: underline; }\n");
+        sheet.append(p).append("double-underline { text-decoration: underline double; }\n");
+        sheet.append(p).append("strike { text-decoration: line-through; }\n");
+        sheet.append(p).append("underline-strike { text-decoration: underline line-through; }\n");
+        sheet.append(p).append("double-underline-strike { text-decoration: underline line-through double; }\n");
+        sheet.append(p).append("blink { animation: ").append(CLASS_PREFIX).append("blink 1s step-end infinite; }\n");
+        sheet.append(p).append("rapid-blink { animation: ").append(CLASS_PREFIX).append("blink 0.4s step-end infinite; }\n");
+        sheet.append("@keyframes ").append(CLASS_PREFIX).append("blink { 50% { opacity: 0; } }\n");
+        sheet.append(p).append("hidden { visibility: hidden; }\n");
+        sheet.append(p).append("fg-reverse { color: var(--ansi-background, #000000); }\n");
+        sheet.append(p).append("bg-reverse { background-color: var(--ansi-foreground, #ffffff); }\n");
+        for (int index = 0; index < 256; index++) {
+            int rgb = AnsiColor.value(AnsiColor.toRgb(AnsiColor.indexed(index)));
+            appendHex(sheet.append(p).append("fg-").append(index).append(" { color: "), rgb).append("; }\n");
+            appendHex(sheet.append(p).append("bg-").append(index).append(" { background-color: "), rgb).append("; }\n");
+        }
+        return sheet.toString();
+    }
+
+    /**
+     * Writes the text reported by a parser as HTML, through a fixed-size buffer, opening a span whenever text follows a
+     * change of state.
+     */
+    private static final class Converter implements AnsiParser.Handler {
+        private final AnsiParser parser = new AnsiParser(this);
+        private final StringBuilder builder;
+        private final Writer writer;
+        private final char[] buffer;
+        private final long[] cachedStates = new long[TAG_CACHE_SIZE];
+        private final String[] cachedTags = new String[TAG_CACHE_SIZE];
+        private int count;
+        private long state = SgrState.DEFAULT;
+        private long open = SgrState.DEFAULT;
+        private IOException failure;
+
+        Converter(StringBuilder builder, Writer writer) {
+            this.builder = builder;
+            this.writer = writer;
+            this.buffer = new char[BUFFER_SIZE];
+        }
+
+        @Override
+        public void text(CharSequence input, int start, int end) {
+            if (start == end) {
+                return;
+            }
+            if (state != open) {
+                if (open != SgrState.DEFAULT) {
+                    write("</span>");
+                }
+                if (state != SgrState.DEFAULT) {
+                    write(tagOf(state));
+                }
+                open = state;
+            }
+            for (int index = start; index < end; index++) {
+                char c = input.charAt(index);
+                if (c >= 0x20 && c != '<' && c != '>' && c != '&' && c != 0x7F) {
+                    write(c);
+                } else if (c == '<') {
+                    write("&lt;");
+                } else if (c == '>') {
+                    write("&gt;");
+                } else if (c == '&') {
+                    write("&amp;");
+                } else if (c == '\n' || c == '\t') {
+                    write(c);
+                }
+            }
+        }
+
+        @Override
+        public void controlSequence(AnsiParser parser) {
+            if (parser.isSelectGraphicRendition()) {
+                state = parser.applyTo(state);
+            }
+        }
+
+        private String tagOf(long state) {
+            int slot = (int)(state ^ (state >>> 29) ^ (state >>> 52)) & (TAG_CACHE_SIZE - 1);
+            String tag = cachedTags[slot];
+            if (tag == null || cachedStates[slot] != state) {
+                tag = openingTag(state);
+                cachedTags[slot] = tag;
+                cachedStates[slot] = state;
+            }
+            return tag;
+        }
+
+        private void write(char c) {
+            if (count == buffer.length) {
+                drain();
+            }
+            buffer[count++] = c;
+        }
+
+        /**
+         * Buffers {@code text}, which is a tag or an entity, far shorter than the buffer.
+         */
+        private void write(String text) {
+            int length = text.length();
+            if (count + length > buffer.length) {
+                drain();
+            }
+            text.getChars(0, length, buffer, count);
+            count += length;
+        }
+
+        /**
+         * Moves the buffered HTML to the output. Failures of the Writer are kept, since parser callbacks can't throw
+         * them, and rethrown by {@link #check()}.
+         */
+        private void drain() {
+            if (builder != null) {
+                builder.append(buffer, 0, count);
+            } else if (failure == null) {
+                try {
+                    writer.write(buffer, 0, count);
+                } catch (IOException ex) {
+                    failure = ex;
+                }
+            }
+            count = 0;
+        }
+
+        void check() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        void finish() {
+            parser.finish();
+            if (open != SgrState.DEFAULT) {
+                write("</span>");
+                open = SgrState.DEFAULT;
+            }
+            drain();
+        }
+    }
+}
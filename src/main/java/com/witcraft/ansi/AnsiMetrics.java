@@ -0,0 +1,414 @@
+package com.witcraft.ansi;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional instrumentation of rendering and output.
+ * <p>
+ * The encoders, writers and caches of this library report what they do to the installed {@link Recorder}. None is
+ * installed by default, and then every report is a single read of a volatile field, with no further work. Reporting
+ * starts with {@link #enable()}, which installs a new set of {@link Counters}, or with any other Recorder passed to
+ * {@link #setRecorder(Recorder)}.
+ * <pre>{@code
+ * AnsiMetrics.Counters metrics = AnsiMetrics.enable();
+ * ...
+ * long overhead = metrics.get(AnsiMetrics.Counter.ESCAPE_BYTES);
+ * }</pre>
+ * Counters are striped {@link LongAdder}s, so reporting from many threads doesn't contend. While Counters are installed
+ * they are also exported to Java Flight Recorder: each drain of an encoder or flush of a writer is a
+ * {@code com.witcraft.ansi.Flush} event, and the totals are a periodic {@code com.witcraft.ansi.Counters} event. In
+ * runtimes without the {@code jdk.jfr} module, only the counters are kept.
+ * <p>
+ * Unless {@value #PROPERTY_METRICS} is {@code true}, reporting starts disabled.
+ */
+public final class AnsiMetrics {
+    /**
+     * System property that enables metrics at startup when {@code true}.
+     */
+    public static final String PROPERTY_METRICS = "com.witcraft.ansi.metrics";
+
+    /**
+     * The number of buckets in the flush latency histogram.
+     */
+    public static final int HISTOGRAM_BUCKETS = 40;
+
+    /**
+     * The quantities counted.
+     */
+    public enum Counter {
+        /**
+         * Control Sequences written to an output, including resets and transitions between states.
+         */
+        SEQUENCES_WRITTEN,
+
+        /**
+         * Length of the Control Sequences written: bytes for encoders, chars for writers. Escape sequences are ASCII,
+         * so the two are the same.
+         */
+        ESCAPE_BYTES,
+
+        /**
+         * Length of the text written between escape sequences: UTF-8 bytes for encoders, chars for writers. Raw bytes
+         * written to an encoder count as payload.
+         */
+        PAYLOAD_BYTES,
+
+        /**
+         * Sequences found in a {@link SequenceCache}.
+         */
+        CACHE_HITS,
+
+        /**
+         * Sequences rendered because they weren't found in a {@link SequenceCache}.
+         */
+        CACHE_MISSES,
+
+        /**
+         * Changes of style that needed no output, because the terminal was already in the requested state or a later
+         * change superseded them.
+         */
+        TRANSITIONS_ELIDED,
+
+        /**
+         * Drains of an encoder buffer and flushes of a writer; their latencies are in the histogram.
+         */
+        FLUSHES;
+
+        static final Counter[] VALUES = values();
+    }
+
+    /**
+     * Receives the reports of the library. Implementations must be thread-safe, and should be cheap, since they are
+     * called on the output path.
+     */
+    public interface Recorder {
+        /**
+         * Adds {@code amount} to {@code counter}.
+         *
+         * @param counter the counter
+         * @param amount  the amount to add
+         */
+        void add(Counter counter, long amount);
+
+        /**
+         * Records a drain or flush of an output.
+         *
+         * @param nanos the time it took, in nanoseconds
+         * @param bytes the number of bytes or chars written out, or zero if unknown
+         */
+        void flushed(long nanos, long bytes);
+    }
+
+    /**
+     * Whether the {@code jdk.jfr} module is present, checked once so events are never created without it.
+     */
+    private static final boolean JFR_AVAILABLE = isFlightRecorderPresent();
+
+    private static volatile Recorder recorder = (Boolean.getBoolean(PROPERTY_METRICS) ? new Counters() : null);
+    private static boolean periodicEventRegistered;
+
+    static {
+        if (recorder != null) {
+            registerPeriodicEvent();
+        }
+    }
+
+    private AnsiMetrics() {
+    }
+
+    /**
+     * Installs a new set of {@link Counters}, replacing any Recorder, and returns it.
+     *
+     * @return the installed counters
+     */
+    public static Counters enable() {
+        Counters counters = new Counters();
+        setRecorder(counters);
+        return counters;
+    }
+
+    /**
+     * Removes the installed Recorder, if any, so reporting costs nothing.
+     */
+    public static void disable() {
+        setRecorder(null);
+    }
+
+    /**
+     * Returns whether a Recorder is installed.
+     *
+     * @return {@code true} if reports are recorded
+     */
+    public static boolean isEnabled() {
+        return (recorder != null);
+    }
+
+    /**
+     * Returns the installed Recorder.
+     *
+     * @return the Recorder, or {@code null} if metrics are disabled
+     */
+    public static Recorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Returns the installed {@link Counters}, for pulling their values.
+     *
+     * @return the counters, or {@code null} if metrics are disabled or another Recorder is installed
+     */
+    public static Counters getCounters() {
+        Recorder current = recorder;
+        return (current instanceof Counters ? (Counters)current : null);
+    }
+
+    /**
+     * Installs {@code recorder}, replacing any other.
+     *
+     * @param recorder the Recorder, or {@code null} to disable metrics
+     */
+    public static void setRecorder(Recorder recorder) {
+        if (recorder instanceof Counters) {
+            registerPeriodicEvent();
+        }
+        AnsiMetrics.recorder = recorder;
+    }
+
+    static void add(Counter counter, long amount) {
+        Recorder current = recorder;
+        if (current != null) {
+            current.add(counter, amount);
+        }
+    }
+
+    /**
+     * Reports a Control Sequence of {@code length} bytes or chars written to an output.
+     */
+    static void sequenceWritten(int length) {
+        Recorder current = recorder;
+        if (current != null) {
+            current.add(Counter.SEQUENCES_WRITTEN, 1);
+            current.add(Counter.ESCAPE_BYTES, length);
+        }
+    }
+
+    /**
+     * Returns the start time of a flush to pass to {@link #flushed(long, long)}, or 0 if metrics are disabled.
+     */
+    static long flushStarted() {
+        return (recorder != null ? System.nanoTime() : 0L);
+    }
+
+    static void flushed(long start, long bytes) {
+        Recorder current = recorder;
+        if (current != null && start != 0L) {
+            current.flushed(System.nanoTime() - start, bytes);
+        }
+    }
+
+    private static boolean isFlightRecorderPresent() {
+        try {
+            Class.forName("jdk.jfr.Event", false, AnsiMetrics.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    private static synchronized void registerPeriodicEvent() {
+        if (periodicEventRegistered || !JFR_AVAILABLE) {
+            return;
+        }
+        periodicEventRegistered = true;
+        try {
+            FlightRecorder.addPeriodicEvent(CountersEvent.class, AnsiMetrics::emitCountersEvent);
+        } catch (LinkageError | SecurityException ex) {
+            // Flight Recorder is not available in this runtime; the pull API still works.
+        }
+    }
+
+    private static void emitCountersEvent() {
+        Counters counters = getCounters();
+        if (counters == null) {
+            return;
+        }
+        CountersEvent event = new CountersEvent();
+        event.sequencesWritten = counters.get(Counter.SEQUENCES_WRITTEN);
+        event.escapeBytes = counters.get(Counter.ESCAPE_BYTES);
+        event.payloadBytes = counters.get(Counter.PAYLOAD_BYTES);
+        event.cacheHits = counters.get(Counter.CACHE_HITS);
+        event.cacheMisses = counters.get(Counter.CACHE_MISSES);
+        event.transitionsElided = counters.get(Counter.TRANSITIONS_ELIDED);
+        event.flushes = counters.get(Counter.FLUSHES);
+        event.commit();
+    }
+
+    /**
+     * A {@link Recorder} that sums every counter in a {@link LongAdder} and sorts flush latencies into a histogram of
+     * power-of-two buckets, and whose values can be pulled at any time.
+     */
+    public static final class Counters implements Recorder {
+        private final LongAdder[] counters = new LongAdder[Counter.VALUES.length];
+        private final LongAdder[] histogram = new LongAdder[HISTOGRAM_BUCKETS];
+
+        /**
+         * Creates a set of counters, all zero. They only count once installed with {@link #setRecorder(Recorder)}.
+         */
+        public Counters() {
+            for (int index = 0; index < counters.length; index++) {
+                counters[index] = new LongAdder();
+            }
+            for (int index = 0; index < histogram.length; index++) {
+                histogram[index] = new LongAdder();
+            }
+        }
+
+        @Override
+        public void add(Counter counter, long amount) {
+            counters[counter.ordinal()].add(amount);
+        }
+
+        @Override
+        public void flushed(long nanos, long bytes) {
+            counters[Counter.FLUSHES.ordinal()].increment();
+            histogram[bucketOf(nanos)].increment();
+            if (!JFR_AVAILABLE) {
+                return;
+            }
+            FlushEvent event = new FlushEvent();
+            if (event.isEnabled()) {
+                event.latency = nanos;
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+
+        /**
+         * Returns the current value of {@code counter}.
+         *
+         * @param counter the counter
+         * @return its sum
+         */
+        public long get(Counter counter) {
+            return counters[counter.ordinal()].sum();
+        }
+
+        /**
+         * Returns the current values of all counters.
+         *
+         * @return the sums, by counter
+         */
+        public Map<Counter, Long> snapshot() {
+            Map<Counter, Long> snapshot = new EnumMap<>(Counter.class);
+            for (Counter counter : Counter.VALUES) {
+                snapshot.put(counter, get(counter));
+            }
+            return snapshot;
+        }
+
+        /**
+         * Returns the number of flushes in each latency bucket. Bucket {@code i} counts flushes that took less than
+         * {@link #bucketLimit(int) bucketLimit(i)} nanoseconds, and at least the limit of the bucket before.
+         *
+         * @return the counts, {@link #HISTOGRAM_BUCKETS} of them
+         */
+        public long[] getFlushHistogram() {
+            long[] counts = new long[histogram.length];
+            for (int index = 0; index < counts.length; index++) {
+                counts[index] = histogram[index].sum();
+            }
+            return counts;
+        }
+
+        /**
+         * Returns the exclusive upper bound of a histogram bucket, {@code 2^bucket} nanoseconds. The last bucket has
+         * no bound.
+         *
+         * @param bucket the index of the bucket
+         * @return the upper bound in nanoseconds, or {@link Long#MAX_VALUE} for the last bucket
+         */
+        public static long bucketLimit(int bucket) {
+            return (bucket >= HISTOGRAM_BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket);
+        }
+
+        /**
+         * Sets all counters and the histogram to zero. Reports made concurrently may or may not be kept.
+         */
+        public void reset() {
+            for (LongAdder counter : counters) {
+                counter.reset();
+            }
+            for (LongAdder bucket : histogram) {
+                bucket.reset();
+            }
+        }
+
+        static int bucketOf(long nanos) {
+            return Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0L)));
+        }
+
+        @Override
+        public String toString() {
+            return "AnsiMetrics.Counters" + snapshot();
+        }
+    }
+
+    @Name("com.witcraft.ansi.Flush")
+    @Label("ANSI Output Flush")
+    @Description("A drain of an AnsiEncoder buffer or a flush of an AnsiWriter")
+    @Category("ANSI")
+    @StackTrace(false)
+    static final class FlushEvent extends Event {
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.witcraft.ansi.Counters")
+    @Label("ANSI Output Counters")
+    @Description("Totals of the AnsiMetrics counters")
+    @Category("ANSI")
+    @Period("1 s")
+    @StackTrace(false)
+    static final class CountersEvent extends Event {
+        @Label("Sequences Written")
+        long sequencesWritten;
+
+        @Label("Escape Bytes")
+        @DataAmount
+        long escapeBytes;
+
+        @Label("Payload Bytes")
+        @DataAmount
+        long payloadBytes;
+
+        @Label("Cache Hits")
+        long cacheHits;
+
+        @Label("Cache Misses")
+        long cacheMisses;
+
+        @Label("Transitions Elided")
+        long transitionsElided;
+
+        @Label("Flushes")
+        long flushes;
+    }
+}
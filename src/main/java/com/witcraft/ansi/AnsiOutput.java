@@ -0,0 +1,491 @@
+package com.witcraft.ansi;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A terminal output shared by many threads, which batches their writes on a single background thread.
+ * <p>
+ * Producers enqueue segments of text into a bounded lock-free ring buffer and return without waiting for I/O. The
+ * consumer thread replays the segments through an {@link AnsiParser}, tracking the graphic rendition state the text
+ * asks for, and only writes a Control Sequence when text is written in a different state than the terminal is in.
+ * Resets between segments that are immediately followed by the same styles are therefore never written, and adjacent
+ * segments in the same state are joined. Other escape sequences are passed through.
+ * <p>
+ * Output is encoded into a batch buffer, which is written as a single large write when it fills up, when the oldest
+ * byte in it has waited for the flush delay, on {@link #flush()} and on {@link #close()}. Each segment is written as a
+ * whole, so segments from different threads never interleave.
+ * <p>
+ * When the ring buffer is full, the {@link OverflowPolicy} decides whether producers wait, drop the segment or fail.
+ * Producers never hold a monitor, so virtual threads waiting on a full buffer or on {@link #flush()} don't pin their
+ * carrier threads.
+ */
+public final class AnsiOutput implements Flushable, Closeable {
+    /**
+     * What to do with a segment when the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait until the consumer has made room.
+         */
+        BLOCK,
+        /**
+         * Drop the segment, counting it in {@link #getDroppedCount()}.
+         */
+        DROP,
+        /**
+         * Throw an {@link IllegalStateException}.
+         */
+        FAIL
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final long DEFAULT_FLUSH_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * The state of segments whose text is written in whatever state the previous segments left.
+     */
+    private static final long INHERIT = Long.MIN_VALUE;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] states;
+    private final CharSequence[] texts;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicInteger activeWriters = new AtomicInteger();
+    private final OverflowPolicy overflowPolicy;
+    private final long flushDelayNanos;
+    private final LongAdder droppedCount = new LongAdder();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition flushed = flushLock.newCondition();
+    private final Consumer consumer;
+    private final Thread thread;
+    private volatile boolean parked;
+    private volatile boolean closed;
+    private volatile long flushRequest = -1;
+    private volatile long flushedPosition = -1;
+    private volatile IOException failure;
+
+    /**
+     * Creates an AnsiOutput with {@link #DEFAULT_CAPACITY room} for 1024 segments, a batch buffer of
+     * {@link AnsiEncoder#DEFAULT_CAPACITY} bytes, a flush delay of 10 milliseconds, and producers that wait when it is
+     * full.
+     *
+     * @param out the OutputStream to write to
+     */
+    public AnsiOutput(OutputStream out) {
+        this(new AnsiEncoder(out), DEFAULT_CAPACITY, DEFAULT_FLUSH_DELAY_NANOS, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Creates an AnsiOutput writing to an OutputStream.
+     *
+     * @param out            the OutputStream to write to
+     * @param capacity       the number of segments the ring buffer holds, rounded up to a power of two
+     * @param batchSize      the size in bytes of the batch buffer
+     * @param flushDelay     the longest time output waits in the batch buffer
+     * @param unit           the unit of {@code flushDelay}
+     * @param overflowPolicy what to do with segments when the ring buffer is full
+     */
+    public AnsiOutput(OutputStream out, int capacity, int batchSize, long flushDelay, TimeUnit unit, OverflowPolicy overflowPolicy) {
+        this(new AnsiEncoder(out, batchSize), capacity, unit.toNanos(flushDelay), overflowPolicy);
+    }
+
+    /**
+     * Creates an AnsiOutput writing to a channel.
+     *
+     * @param channel        the channel to write to
+     * @param capacity       the number of segments the ring buffer holds, rounded up to a power of two
+     * @param batchSize      the size in bytes of the batch buffer
+     * @param flushDelay     the longest time output waits in the batch buffer
+     * @param unit           the unit of {@code flushDelay}
+     * @param overflowPolicy what to do with segments when the ring buffer is full
+     */
+    public AnsiOutput(WritableByteChannel channel, int capacity, int batchSize, long flushDelay, TimeUnit unit, OverflowPolicy overflowPolicy) {
+        this(new AnsiEncoder(channel, batchSize), capacity, unit.toNanos(flushDelay), overflowPolicy);
+    }
+
+    private AnsiOutput(AnsiEncoder encoder, int capacity, long flushDelayNanos, OverflowPolicy overflowPolicy) {
+        if (capacity < 2 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int index = 0; index < size; index++) {
+            sequences.set(index, index);
+        }
+        this.states = new long[size];
+        this.texts = new CharSequence[size];
+        this.flushDelayNanos = Math.max(0, flushDelayNanos);
+        this.overflowPolicy = overflowPolicy;
+        this.consumer = new Consumer(encoder);
+        this.thread = new Thread(consumer, "ansi-output");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Enqueues text, which may contain escape sequences. The text is written in the state left by the segments before
+     * it, as changed by its own SGR Control Sequences.
+     *
+     * @param text the text to write; must not be modified after this call
+     * @return false if the segment was dropped
+     * @throws IllegalStateException if this AnsiOutput is closed, or if the ring buffer is full and the policy is
+     *                               {@link OverflowPolicy#FAIL}
+     * @throws UncheckedIOException  if an earlier write failed
+     */
+    public boolean write(CharSequence text) {
+        return enqueue(INHERIT, text);
+    }
+
+    /**
+     * Enqueues text in the styles of {@code sequence}, as {@code sequence.wrap(text)} would write it but without the
+     * reset that follows. Segments in the same styles are joined without any Control Sequence between them.
+     *
+     * @param sequence the styles to write the text in
+     * @param text     the text to write; must not be modified after this call
+     * @return false if the segment was dropped
+     * @throws IllegalStateException if this AnsiOutput is closed, or if the ring buffer is full and the policy is
+     *                               {@link OverflowPolicy#FAIL}
+     * @throws UncheckedIOException  if an earlier write failed
+     */
+    public boolean write(AnsiSequence<?> sequence, CharSequence text) {
+        return enqueue(SgrState.of(sequence), text);
+    }
+
+    /**
+     * Enqueues text in a packed {@link SgrState}.
+     *
+     * @param state the packed state to write the text in
+     * @param text  the text to write; must not be modified after this call
+     * @return false if the segment was dropped
+     * @throws IllegalStateException if this AnsiOutput is closed, or if the ring buffer is full and the policy is
+     *                               {@link OverflowPolicy#FAIL}
+     * @throws UncheckedIOException  if an earlier write failed
+     */
+    public boolean write(long state, CharSequence text) {
+        return enqueue(state & ~INHERIT, text);
+    }
+
+    /**
+     * Offers a segment, counted as an active writer until it is published or refused, so that the consumer doesn't
+     * finish closing while a writer that found this AnsiOutput open is still claiming its slot.
+     */
+    private boolean enqueue(long state, CharSequence text) {
+        activeWriters.incrementAndGet();
+        try {
+            checkOpen();
+            while (!offer(state, text)) {
+                switch (overflowPolicy) {
+                    case DROP:
+                        droppedCount.increment();
+                        return false;
+                    case FAIL:
+                        throw new IllegalStateException("AnsiOutput is full");
+                    default:
+                        checkOpen();
+                        LockSupport.unpark(thread);
+                        LockSupport.parkNanos(this, BLOCKED_PARK_NANOS);
+                        break;
+                }
+            }
+        } finally {
+            activeWriters.decrementAndGet();
+        }
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    private boolean offer(long state, CharSequence text) {
+        long position = tail.get();
+        while (true) {
+            int index = (int)position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    states[index] = state;
+                    texts[index] = text;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("AnsiOutput is closed");
+        }
+        IOException failed = failure;
+        if (failed != null) {
+            throw new UncheckedIOException(failed);
+        }
+    }
+
+    /**
+     * Returns the number of segments dropped because the ring buffer was full.
+     *
+     * @return the number of dropped segments
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * Waits until every segment enqueued before this call has been written and the underlying stream flushed.
+     *
+     * @throws IOException if writing failed
+     */
+    @Override
+    public void flush() throws IOException {
+        long position = tail.get();
+        flushLock.lock();
+        try {
+            if (flushRequest < position) {
+                flushRequest = position;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        flushLock.lock();
+        try {
+            while (flushedPosition < position && failure == null && thread.isAlive()) {
+                try {
+                    flushed.awaitNanos(IDLE_PARK_NANOS);
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes every segment enqueued so far, including those of writes in progress that return {@code true}, resets the
+     * terminal, and closes the underlying stream. Segments can no longer be enqueued.
+     *
+     * @throws IOException if writing or closing failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            LockSupport.unpark(thread);
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * The consumer thread, which owns the encoder and the parser.
+     */
+    private final class Consumer implements Runnable, AnsiParser.Handler {
+        private final AnsiEncoder encoder;
+        private final AnsiParser parser = new AnsiParser(this);
+        private final StringBuilder scratch = new StringBuilder(64);
+        private long head;
+        private long terminalState = SgrState.DEFAULT;
+        private long state = SgrState.DEFAULT;
+        private long pendingSince = -1;
+        private int sgrSinceApplied;
+
+        Consumer(AnsiEncoder encoder) {
+            this.encoder = encoder;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    boolean drained = drain();
+                    long now = System.nanoTime();
+                    if (pendingSince >= 0 && now - pendingSince >= flushDelayNanos) {
+                        flushEncoder();
+                    }
+                    if (flushRequest >= 0 && flushedPosition < flushRequest && !isAvailable()) {
+                        flushEncoder();
+                        signalFlushed();
+                    }
+                    if (drained) {
+                        continue;
+                    }
+                    if (closed && activeWriters.get() == 0 && !isAvailable()) {
+                        break;
+                    }
+                    parked = true;
+                    if (!isAvailable() && !closed && flushedPosition >= flushRequest) {
+                        long wait = (pendingSince >= 0 ? flushDelayNanos - (now - pendingSince) : IDLE_PARK_NANOS);
+                        LockSupport.parkNanos(this, Math.max(1, Math.min(wait, IDLE_PARK_NANOS)));
+                    }
+                    parked = false;
+                }
+                parser.finish();
+                state = SgrState.DEFAULT;
+                applyState();
+                encoder.close();
+            } catch (IOException ex) {
+                failure = ex;
+            } catch (UncheckedIOException ex) {
+                failure = ex.getCause();
+            } catch (RuntimeException ex) {
+                failure = new IOException(ex);
+            } finally {
+                signalFlushed();
+            }
+        }
+
+        private boolean isAvailable() {
+            return sequences.get((int)head & mask) == head + 1;
+        }
+
+        /**
+         * Writes every segment available.
+         *
+         * @return true if there was at least one
+         */
+        private boolean drain() throws IOException {
+            boolean drained = false;
+            while (isAvailable()) {
+                int index = (int)head & mask;
+                long segmentState = states[index];
+                CharSequence text = texts[index];
+                texts[index] = null;
+                sequences.set(index, head + mask + 1);
+                head++;
+                if (segmentState != INHERIT) {
+                    state = segmentState;
+                }
+                parser.parse(text);
+                drained = true;
+            }
+            return drained;
+        }
+
+        private void flushEncoder() throws IOException {
+            encoder.flush();
+            pendingSince = -1;
+        }
+
+        private void signalFlushed() {
+            flushLock.lock();
+            try {
+                flushedPosition = head;
+                flushed.signalAll();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        private void markPending() {
+            if (pendingSince < 0) {
+                pendingSince = System.nanoTime();
+            }
+        }
+
+        /**
+         * Moves the terminal to the current state, in a single transition however many SGR sequences led to it.
+         */
+        private void applyState() throws IOException {
+            long adapted = TerminalProfile.getDefault().adapt(state);
+            int elided = sgrSinceApplied;
+            sgrSinceApplied = 0;
+            if (adapted != terminalState) {
+                scratch.setLength(0);
+                SgrState.appendTransition(scratch, terminalState, adapted);
+                encoder.writeEscape(scratch);
+                terminalState = adapted;
+                markPending();
+                elided--;
+            }
+            if (elided > 0) {
+                AnsiMetrics.add(AnsiMetrics.Counter.TRANSITIONS_ELIDED, elided);
+            }
+        }
+
+        @Override
+        public void text(CharSequence input, int start, int end) {
+            try {
+                applyState();
+                encoder.writeText(input, start, end);
+                markPending();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void controlSequence(AnsiParser parser) {
+            if (parser.isSelectGraphicRendition()) {
+                state = parser.applyTo(state);
+                sgrSinceApplied++;
+            } else {
+                writeSequence(parser);
+            }
+        }
+
+        @Override
+        public void escapeSequence(AnsiParser parser) {
+            writeSequence(parser);
+        }
+
+        @Override
+        public void operatingSystemCommand(AnsiParser parser) {
+            writeSequence(parser);
+        }
+
+        private void writeSequence(AnsiParser parser) {
+            try {
+                scratch.setLength(0);
+                parser.appendSequenceTo(scratch);
+                encoder.writeEscape(scratch);
+                markPending();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
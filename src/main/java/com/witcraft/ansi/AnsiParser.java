@@ -0,0 +1,645 @@
+package com.witcraft.ansi;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+
+/**
+ * An incremental tokenizer for text containing ANSI escape sequences.
+ * <p>
+ * Input is split into text runs and Control Sequences (CSI), Operating System Commands (OSC) and other escape
+ * sequences, which are reported to a {@link Handler}. The parser is a table-driven state machine modelled on the DEC
+ * VT500 parser: all of its state lives in fields, so input may be fed in chunks of any size and a sequence may span
+ * chunks. Runs of text are found with a single scan for ESC and reported as ranges of the input, and sequence
+ * parameters are collected into a reused array, so nothing is allocated per token.
+ * <p>
+ * Device Control Strings and SOS, PM and APC strings are consumed without being reported. C1 controls are not
+ * recognized, since their code points are valid UTF-8 continuation bytes; they are reported as text. An AnsiParser is
+ * not thread-safe.
+ */
+public final class AnsiParser {
+    /**
+     * Receives the tokens found by an {@link AnsiParser}. Ranges and parser accessors are only valid during the call.
+     */
+    public interface Handler {
+        /**
+         * Called with a run of text from a character input. C0 controls other than ESC, CAN and SUB are part of text.
+         *
+         * @param input the input being parsed
+         * @param start the index of the first character of the run
+         * @param end   the index after the last character of the run
+         */
+        default void text(CharSequence input, int start, int end) {
+        }
+
+        /**
+         * Called with a run of text from a byte input. Multi-byte UTF-8 characters are never split by escape
+         * sequences, but may be split across chunks.
+         *
+         * @param input the input being parsed
+         * @param start the absolute index of the first byte of the run
+         * @param end   the absolute index after the last byte of the run
+         */
+        default void text(ByteBuffer input, int start, int end) {
+        }
+
+        /**
+         * Called for each complete Control Sequence ({@code ESC [ ...}).
+         *
+         * @param parser the parser, positioned on the sequence
+         */
+        default void controlSequence(AnsiParser parser) {
+        }
+
+        /**
+         * Called for each complete escape sequence other than CSI and OSC ({@code ESC ...}).
+         *
+         * @param parser the parser, positioned on the sequence
+         */
+        default void escapeSequence(AnsiParser parser) {
+        }
+
+        /**
+         * Called for each complete Operating System Command ({@code ESC ] ... BEL} or {@code ESC ] ... ESC \}).
+         *
+         * @param parser the parser, positioned on the command
+         */
+        default void operatingSystemCommand(AnsiParser parser) {
+        }
+    }
+
+    /**
+     * The maximum number of parameters kept for a Control Sequence; further parameters are dropped.
+     */
+    public static final int MAX_PARAMETERS = 32;
+
+    /**
+     * The maximum length of an Operating System Command kept; the remainder is dropped.
+     */
+    public static final int MAX_STRING_LENGTH = 4096;
+
+    private static final int MAX_PARAMETER_VALUE = 65535;
+
+    private static final char ESC = 0x1B;
+
+    private static final int GROUND = 0;
+    private static final int ESCAPE = 1;
+    private static final int ESCAPE_INTERMEDIATE = 2;
+    private static final int CSI_ENTRY = 3;
+    private static final int CSI_PARAM = 4;
+    private static final int CSI_INTERMEDIATE = 5;
+    private static final int CSI_IGNORE = 6;
+    private static final int OSC_STRING = 7;
+    private static final int IGNORED_STRING = 8;
+    private static final int STRING_ESCAPE = 9;
+    private static final int STATE_COUNT = 10;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ESCAPES = 0x1B1B1B1B1B1B1B1BL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private static final int CLASS_CONTROL = 0;
+    private static final int CLASS_BELL = 1;
+    private static final int CLASS_CANCEL = 2;
+    private static final int CLASS_ESCAPE = 3;
+    private static final int CLASS_INTERMEDIATE = 4;
+    private static final int CLASS_DIGIT = 5;
+    private static final int CLASS_SEPARATOR = 6;
+    private static final int CLASS_PRIVATE = 7;
+    private static final int CLASS_CSI = 8;
+    private static final int CLASS_OSC = 9;
+    private static final int CLASS_STRING = 10;
+    private static final int CLASS_BACKSLASH = 11;
+    private static final int CLASS_FINAL = 12;
+    private static final int CLASS_DELETE = 13;
+    private static final int CLASS_OTHER = 14;
+    private static final int CLASS_COUNT = 15;
+
+    private static final int ACTION_NONE = 0;
+    private static final int ACTION_EXECUTE = 1;
+    private static final int ACTION_CLEAR = 2;
+    private static final int ACTION_COLLECT = 3;
+    private static final int ACTION_PARAM = 4;
+    private static final int ACTION_SEPARATOR = 5;
+    private static final int ACTION_PRIVATE_MARKER = 6;
+    private static final int ACTION_CSI_DISPATCH = 7;
+    private static final int ACTION_ESC_DISPATCH = 8;
+    private static final int ACTION_STRING_PUT = 9;
+    private static final int ACTION_STRING_END = 10;
+    private static final int ACTION_REPROCESS = 11;
+
+    private static final int KIND_ESCAPE = 1;
+    private static final int KIND_CONTROL_SEQUENCE = 2;
+    private static final int KIND_OPERATING_SYSTEM_COMMAND = 3;
+
+    private static final byte[] CHAR_CLASSES = new byte[0x80];
+    private static final byte[] TRANSITIONS = new byte[STATE_COUNT * CLASS_COUNT];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            CHAR_CLASSES[c] = CLASS_CONTROL;
+        }
+        CHAR_CLASSES[0x07] = CLASS_BELL;
+        CHAR_CLASSES[0x18] = CLASS_CANCEL;
+        CHAR_CLASSES[0x1A] = CLASS_CANCEL;
+        CHAR_CLASSES[ESC] = CLASS_ESCAPE;
+        for (int c = 0x20; c <= 0x2F; c++) {
+            CHAR_CLASSES[c] = CLASS_INTERMEDIATE;
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            CHAR_CLASSES[c] = CLASS_DIGIT;
+        }
+        CHAR_CLASSES[':'] = CLASS_SEPARATOR;
+        CHAR_CLASSES[';'] = CLASS_SEPARATOR;
+        for (int c = 0x3C; c <= 0x3F; c++) {
+            CHAR_CLASSES[c] = CLASS_PRIVATE;
+        }
+        for (int c = 0x40; c <= 0x7E; c++) {
+            CHAR_CLASSES[c] = CLASS_FINAL;
+        }
+        CHAR_CLASSES['['] = CLASS_CSI;
+        CHAR_CLASSES[']'] = CLASS_OSC;
+        CHAR_CLASSES['P'] = CLASS_STRING;
+        CHAR_CLASSES['X'] = CLASS_STRING;
+        CHAR_CLASSES['^'] = CLASS_STRING;
+        CHAR_CLASSES['_'] = CLASS_STRING;
+        CHAR_CLASSES['\\'] = CLASS_BACKSLASH;
+        CHAR_CLASSES[0x7F] = CLASS_DELETE;
+
+        for (int state = 0; state < STATE_COUNT; state++) {
+            // Defaults shared by every state: CAN and SUB abort, ESC starts over.
+            transition(state, CLASS_CANCEL, ACTION_NONE, GROUND);
+            transition(state, CLASS_ESCAPE, ACTION_CLEAR, ESCAPE);
+        }
+
+        int[] escapeStates = {ESCAPE, ESCAPE_INTERMEDIATE};
+        for (int state : escapeStates) {
+            transition(state, CLASS_CONTROL, ACTION_EXECUTE, state);
+            transition(state, CLASS_BELL, ACTION_EXECUTE, state);
+            transition(state, CLASS_INTERMEDIATE, ACTION_COLLECT, ESCAPE_INTERMEDIATE);
+            transition(state, CLASS_DELETE, ACTION_NONE, state);
+            transition(state, CLASS_OTHER, ACTION_REPROCESS, GROUND);
+            for (int charClass : new int[] {CLASS_DIGIT, CLASS_SEPARATOR, CLASS_PRIVATE, CLASS_CSI, CLASS_OSC, CLASS_STRING, CLASS_BACKSLASH, CLASS_FINAL}) {
+                transition(state, charClass, ACTION_ESC_DISPATCH, GROUND);
+            }
+        }
+        transition(ESCAPE, CLASS_CSI, ACTION_NONE, CSI_ENTRY);
+        transition(ESCAPE, CLASS_OSC, ACTION_NONE, OSC_STRING);
+        transition(ESCAPE, CLASS_STRING, ACTION_NONE, IGNORED_STRING);
+
+        int[] csiStates = {CSI_ENTRY, CSI_PARAM, CSI_INTERMEDIATE, CSI_IGNORE};
+        for (int state : csiStates) {
+            transition(state, CLASS_CONTROL, ACTION_EXECUTE, state);
+            transition(state, CLASS_BELL, ACTION_EXECUTE, state);
+            transition(state, CLASS_DELETE, ACTION_NONE, state);
+            transition(state, CLASS_OTHER, ACTION_NONE, CSI_IGNORE);
+            for (int charClass : new int[] {CLASS_CSI, CLASS_OSC, CLASS_STRING, CLASS_BACKSLASH, CLASS_FINAL}) {
+                transition(state, charClass, (state == CSI_IGNORE ? ACTION_NONE : ACTION_CSI_DISPATCH), GROUND);
+            }
+            transition(state, CLASS_INTERMEDIATE, (state == CSI_IGNORE ? ACTION_NONE : ACTION_COLLECT), (state == CSI_IGNORE ? CSI_IGNORE : CSI_INTERMEDIATE));
+        }
+        transition(CSI_ENTRY, CLASS_DIGIT, ACTION_PARAM, CSI_PARAM);
+        transition(CSI_ENTRY, CLASS_SEPARATOR, ACTION_SEPARATOR, CSI_PARAM);
+        transition(CSI_ENTRY, CLASS_PRIVATE, ACTION_PRIVATE_MARKER, CSI_PARAM);
+        transition(CSI_PARAM, CLASS_DIGIT, ACTION_PARAM, CSI_PARAM);
+        transition(CSI_PARAM, CLASS_SEPARATOR, ACTION_SEPARATOR, CSI_PARAM);
+        transition(CSI_PARAM, CLASS_PRIVATE, ACTION_NONE, CSI_IGNORE);
+        transition(CSI_INTERMEDIATE, CLASS_DIGIT, ACTION_NONE, CSI_IGNORE);
+        transition(CSI_INTERMEDIATE, CLASS_SEPARATOR, ACTION_NONE, CSI_IGNORE);
+        transition(CSI_INTERMEDIATE, CLASS_PRIVATE, ACTION_NONE, CSI_IGNORE);
+        transition(CSI_IGNORE, CLASS_DIGIT, ACTION_NONE, CSI_IGNORE);
+        transition(CSI_IGNORE, CLASS_SEPARATOR, ACTION_NONE, CSI_IGNORE);
+        transition(CSI_IGNORE, CLASS_PRIVATE, ACTION_NONE, CSI_IGNORE);
+
+        for (int state : new int[] {OSC_STRING, IGNORED_STRING}) {
+            for (int charClass = 0; charClass < CLASS_COUNT; charClass++) {
+                transition(state, charClass, (state == OSC_STRING ? ACTION_STRING_PUT : ACTION_NONE), state);
+            }
+            transition(state, CLASS_CONTROL, ACTION_NONE, state);
+            transition(state, CLASS_BELL, ACTION_STRING_END, GROUND);
+            transition(state, CLASS_CANCEL, ACTION_NONE, GROUND);
+            transition(state, CLASS_ESCAPE, ACTION_NONE, STRING_ESCAPE);
+        }
+        for (int charClass = 0; charClass < CLASS_COUNT; charClass++) {
+            transition(STRING_ESCAPE, charClass, ACTION_STRING_END, ESCAPE);
+        }
+        transition(STRING_ESCAPE, CLASS_BACKSLASH, ACTION_STRING_END, GROUND);
+    }
+
+    private static void transition(int state, int charClass, int action, int nextState) {
+        TRANSITIONS[state * CLASS_COUNT + charClass] = (byte)((action << 4) | nextState);
+    }
+
+    private final Handler handler;
+    private final int[] parameters = new int[MAX_PARAMETERS];
+    private final StringBuilder string = new StringBuilder();
+    private char[] readBuffer;
+    private int state = GROUND;
+    private int parameterCount;
+    private int parameter;
+    private boolean hasParameter;
+    private char privateMarker;
+    private int intermediates;
+    private char finalChar;
+    private boolean inOperatingSystemCommand;
+    private int kind;
+
+    /**
+     * Creates a parser reporting to {@code handler}.
+     *
+     * @param handler the handler to report tokens to
+     */
+    public AnsiParser(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Parses all characters of {@code input}.
+     *
+     * @param input the characters to parse
+     */
+    public void parse(CharSequence input) {
+        parse(input, 0, input.length());
+    }
+
+    /**
+     * Parses the characters of {@code input} from {@code start} (inclusive) to {@code end} (exclusive).
+     *
+     * @param input the characters to parse
+     * @param start the index of the first character to parse
+     * @param end   the index after the last character to parse
+     */
+    public void parse(CharSequence input, int start, int end) {
+        int index = start;
+        while (index < end) {
+            if (state == GROUND) {
+                int escape = indexOfEscape(input, index, end);
+                if (escape > index) {
+                    handler.text(input, index, escape);
+                }
+                if (escape == end) {
+                    return;
+                }
+                clear();
+                state = ESCAPE;
+                index = escape + 1;
+                continue;
+            }
+            int action = step(input.charAt(index));
+            if (action == ACTION_EXECUTE) {
+                handler.text(input, index, index + 1);
+            }
+            if (action != ACTION_REPROCESS) {
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Parses the remaining bytes of {@code input}, advancing its position to its limit. Bytes of 0x80 and above are
+     * always text, so UTF-8 input is handled without decoding it.
+     *
+     * @param input the bytes to parse
+     */
+    public void parse(ByteBuffer input) {
+        int index = input.position();
+        int end = input.limit();
+        while (index < end) {
+            if (state == GROUND) {
+                int escape = indexOfEscape(input, index, end);
+                if (escape > index) {
+                    handler.text(input, index, escape);
+                }
+                if (escape == end) {
+                    break;
+                }
+                clear();
+                state = ESCAPE;
+                index = escape + 1;
+                continue;
+            }
+            int action = step(input.get(index) & 0xFF);
+            if (action == ACTION_EXECUTE) {
+                handler.text(input, index, index + 1);
+            }
+            if (action != ACTION_REPROCESS) {
+                index++;
+            }
+        }
+        input.position(end);
+    }
+
+    /**
+     * Parses all characters read from {@code reader}, until it is exhausted. Text runs are reported as ranges of a
+     * reused buffer.
+     *
+     * @param reader the Reader to parse
+     * @throws IOException if {@code reader} fails
+     */
+    public void parse(Reader reader) throws IOException {
+        if (readBuffer == null) {
+            readBuffer = new char[8192];
+        }
+        CharBuffer view = CharBuffer.wrap(readBuffer);
+        int count;
+        while ((count = reader.read(readBuffer, 0, readBuffer.length)) >= 0) {
+            parse(view, 0, count);
+        }
+    }
+
+    /**
+     * Ends the input, discarding an incomplete sequence.
+     *
+     * @return true if an incomplete sequence was discarded
+     */
+    public boolean finish() {
+        boolean incomplete = (state != GROUND);
+        state = GROUND;
+        clear();
+        return incomplete;
+    }
+
+    /**
+     * Returns whether the parser is between sequences, so that the next input starts with text or a new sequence.
+     *
+     * @return true if the parser is not inside a sequence
+     */
+    public boolean isInText() {
+        return (state == GROUND);
+    }
+
+    private static int indexOfEscape(CharSequence input, int start, int end) {
+        if (input instanceof String) {
+            int index = ((String)input).indexOf(ESC, start);
+            return (index < 0 || index > end ? end : index);
+        }
+        if (input instanceof CharBuffer && ((CharBuffer)input).hasArray()) {
+            CharBuffer buffer = (CharBuffer)input;
+            char[] array = buffer.array();
+            int offset = buffer.arrayOffset() + buffer.position();
+            for (int index = start; index < end; index++) {
+                if (array[offset + index] == ESC) {
+                    return index;
+                }
+            }
+            return end;
+        }
+        for (int index = start; index < end; index++) {
+            if (input.charAt(index) == ESC) {
+                return index;
+            }
+        }
+        return end;
+    }
+
+    private static int indexOfEscape(ByteBuffer input, int start, int end) {
+        if (input.hasArray()) {
+            int offset = input.arrayOffset();
+            return indexOfEscape(input.array(), offset + start, offset + end) - offset;
+        }
+        for (int index = start; index < end; index++) {
+            if (input.get(index) == ESC) {
+                return index;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Returns the index of the first ESC in {@code array} from {@code start} (inclusive) to {@code end} (exclusive),
+     * or {@code end} if there is none. Eight bytes are tested at a time by XOR-ing each word with ESC and finding its
+     * lowest zero byte.
+     */
+    static int indexOfEscape(byte[] array, int start, int end) {
+        int index = start;
+        for (; index + Long.BYTES <= end; index += Long.BYTES) {
+            long word = (long)LONGS.get(array, index) ^ ESCAPES;
+            long zeros = (word - LOW_BITS) & ~word & HIGH_BITS;
+            if (zeros != 0) {
+                return index + (Long.numberOfTrailingZeros(zeros) >>> 3);
+            }
+        }
+        for (; index < end; index++) {
+            if (array[index] == ESC) {
+                return index;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Advances the state machine by one character outside of text.
+     *
+     * @return the action taken
+     */
+    private int step(int c) {
+        int charClass = (c < 0x80 ? CHAR_CLASSES[c] : CLASS_OTHER);
+        int entry = TRANSITIONS[state * CLASS_COUNT + charClass] & 0xFF;
+        int action = (entry >>> 4);
+        int nextState = (entry & 0xF);
+        switch (action) {
+            case ACTION_CLEAR:
+                clear();
+                break;
+            case ACTION_COLLECT:
+                intermediates = (intermediates << 8) | c;
+                break;
+            case ACTION_PARAM:
+                parameter = Math.min(MAX_PARAMETER_VALUE, parameter * 10 + (c - '0'));
+                hasParameter = true;
+                break;
+            case ACTION_SEPARATOR:
+                pushParameter();
+                hasParameter = true;
+                break;
+            case ACTION_PRIVATE_MARKER:
+                privateMarker = (char)c;
+                break;
+            case ACTION_CSI_DISPATCH:
+                if (hasParameter) {
+                    pushParameter();
+                }
+                finalChar = (char)c;
+                kind = KIND_CONTROL_SEQUENCE;
+                handler.controlSequence(this);
+                break;
+            case ACTION_ESC_DISPATCH:
+                finalChar = (char)c;
+                kind = KIND_ESCAPE;
+                handler.escapeSequence(this);
+                break;
+            case ACTION_STRING_PUT:
+                if (string.length() < MAX_STRING_LENGTH) {
+                    string.append((char)c);
+                }
+                break;
+            case ACTION_STRING_END:
+                if (state == OSC_STRING || (state == STRING_ESCAPE && inOperatingSystemCommand)) {
+                    kind = KIND_OPERATING_SYSTEM_COMMAND;
+                    handler.operatingSystemCommand(this);
+                }
+                inOperatingSystemCommand = false;
+                if (nextState == ESCAPE) {
+                    clear();
+                    state = ESCAPE;
+                    return step(c);
+                }
+                break;
+            default:
+                break;
+        }
+        if (nextState == OSC_STRING) {
+            inOperatingSystemCommand = true;
+        } else if (nextState == IGNORED_STRING) {
+            inOperatingSystemCommand = false;
+        }
+        state = nextState;
+        return action;
+    }
+
+    private void pushParameter() {
+        if (parameterCount < MAX_PARAMETERS) {
+            parameters[parameterCount++] = parameter;
+        }
+        parameter = 0;
+    }
+
+    private void clear() {
+        parameterCount = 0;
+        parameter = 0;
+        hasParameter = false;
+        privateMarker = 0;
+        intermediates = 0;
+        finalChar = 0;
+        kind = 0;
+        string.setLength(0);
+    }
+
+    /**
+     * Returns the final character of the current sequence, such as {@code 'm'} for SGR.
+     *
+     * @return the final character
+     */
+    public char getFinal() {
+        return finalChar;
+    }
+
+    /**
+     * Returns the private marker ({@code '<'}, {@code '='}, {@code '>'} or {@code '?'}) of the current Control
+     * Sequence, or 0 if it has none.
+     *
+     * @return the private marker, or 0
+     */
+    public char getPrivateMarker() {
+        return privateMarker;
+    }
+
+    /**
+     * Returns the intermediate characters of the current sequence, packed one per byte with the last in the low byte.
+     *
+     * @return the packed intermediate characters, or 0 if there are none
+     */
+    public int getIntermediates() {
+        return intermediates;
+    }
+
+    /**
+     * Returns the number of parameters of the current Control Sequence. Omitted parameters between separators count
+     * as 0.
+     *
+     * @return the number of parameters
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * Returns a parameter of the current Control Sequence.
+     *
+     * @param index        the index of the parameter
+     * @param defaultValue the value to return if the parameter is missing or 0
+     * @return the parameter value
+     */
+    public int getParameter(int index, int defaultValue) {
+        int value = (index < parameterCount ? parameters[index] : 0);
+        return (value == 0 ? defaultValue : value);
+    }
+
+    /**
+     * Returns the payload of the current Operating System Command, such as {@code "0;title"}.
+     *
+     * @return the payload; only valid during the call to the handler
+     */
+    public CharSequence getString() {
+        return string;
+    }
+
+    /**
+     * Returns whether the current Control Sequence is a Select Graphic Rendition sequence ({@code ESC [ ... m}).
+     *
+     * @return true if the current sequence sets graphic rendition
+     */
+    public boolean isSelectGraphicRendition() {
+        return kind == KIND_CONTROL_SEQUENCE && finalChar == 'm' && privateMarker == 0 && intermediates == 0;
+    }
+
+    /**
+     * Applies the parameters of the current Select Graphic Rendition sequence to a packed {@link SgrState}.
+     *
+     * @param state the packed state before the sequence
+     * @return the packed state after the sequence
+     */
+    public long applyTo(long state) {
+        return SgrState.apply(state, parameters, 0, parameterCount);
+    }
+
+    /**
+     * Decodes the parameters of the current Select Graphic Rendition sequence into the {@link AnsiSequence.Style styles}
+     * and color arguments of {@code sequence}, as the cumulative effect on its current state.
+     *
+     * @param sequence the sequence to update
+     * @param <T>      the type of AnsiSequence
+     * @return the updated sequence
+     */
+    public <T extends AnsiSequence<T>> T applyTo(T sequence) {
+        return SgrState.applyTo(applyTo(SgrState.of(sequence)), sequence);
+    }
+
+    /**
+     * Appends the current sequence to {@code out} in canonical form. Operating System Commands are terminated with
+     * ST.
+     *
+     * @param out the StringBuilder to append to
+     * @return {@code out} for chaining
+     */
+    public StringBuilder appendSequenceTo(StringBuilder out) {
+        out.append(ESC);
+        if (kind == KIND_OPERATING_SYSTEM_COMMAND) {
+            return out.append(']').append(string).append(ESC).append('\\');
+        }
+        if (kind == KIND_CONTROL_SEQUENCE) {
+            out.append('[');
+            if (privateMarker != 0) {
+                out.append(privateMarker);
+            }
+            for (int index = 0; index < parameterCount; index++) {
+                if (index > 0) {
+                    out.append(';');
+                }
+                out.append(parameters[index]);
+            }
+        }
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            int intermediate = (intermediates >>> shift) & 0xFF;
+            if (intermediate != 0) {
+                out.append((char)intermediate);
+            }
+        }
+        return out.append(finalChar);
+    }
+}
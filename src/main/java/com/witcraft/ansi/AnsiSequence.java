@@ -1,7 +1,10 @@
 package com.witcraft.ansi;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.function.Function;
 
 import static com.witcraft.ansi.AnsiSequence.Style.*;
 
@@ -9,44 +12,22 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
     String CSI_START = "\033[";
     String CSI_END = "m";
 
-    Function<Object, String> HANDLER_INDEX = (color) -> {
-        if (color instanceof Number) {
-            int colorIndex = ((Number)color).intValue();
-            if (colorIndex >= 0 && colorIndex <= 255) {
-                return ";5;" + colorIndex;
-            }
+    ArgumentHandler HANDLER_INDEX = (out, color) -> {
+        if (AnsiColor.mode(color) == AnsiColor.MODE_INDEXED) {
+            out.append(";5;");
+            Digits.appendTo(out, AnsiColor.value(color));
         }
-        return null;
     };
 
-    Function<Object, String> HANDLER_COLOR = (color) -> {
-        float red = -1;
-        float green = -1;
-        float blue = -1;
-
-        if (color instanceof Number) {
-            int colorInt = ((Number)color).intValue();
-            if (colorInt >= 0) {
-                colorInt = (0xff000000 | colorInt);
-                red = (colorInt >> 16) & 0xFF;
-                green = (colorInt >> 8) & 0xFF;
-                blue = (colorInt) & 0xFF;
-            }
-        } else if (color instanceof Number[]) {
-            Number[] colors = (Number[])color;
-            if (colors.length >= 3) {
-                int colorDepth = colors.length;
-                red = colors[colorDepth - 3].floatValue();
-                green = colors[colorDepth - 2].floatValue();
-                blue = colors[colorDepth - 1].floatValue();
-            }
-        }
-
-        if (red > 0 && green > 0 && blue > 0) {
-            return ";2;" + red + ';' + green + ';' + blue;
+    ArgumentHandler HANDLER_COLOR = (out, color) -> {
+        if (AnsiColor.mode(color) == AnsiColor.MODE_RGB) {
+            out.append(";2;");
+            Digits.appendTo(out, AnsiColor.red(color));
+            out.append(';');
+            Digits.appendTo(out, AnsiColor.green(color));
+            out.append(';');
+            Digits.appendTo(out, AnsiColor.blue(color));
         }
-
-        return null;
     };
 
     static int rgb2int(int red, int green, int blue) {
@@ -57,16 +38,56 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
     }
 
     /**
-     * Returns a map of arguments and their values.
+     * Returns the styles currently applied to this AnsiSequence, as a bit vector of {@code 1L << style.ordinal()}.
+     * @return the styles currently applied to this AnsiSequence
+     */
+    long getStyleMask();
+
+    /**
+     * Returns the {@link AnsiColor packed} argument of {@link Style#COLOR} or {@link Style#COLOR_INDEX}.
+     * @return the packed foreground color, or {@link AnsiColor#NONE}
+     */
+    int getForeground();
+
+    /**
+     * Returns the {@link AnsiColor packed} argument of {@link Style#BACKGROUND_COLOR} or {@link Style#BACKGROUND_COLOR_INDEX}.
+     * @return the packed background color, or {@link AnsiColor#NONE}
+     */
+    int getBackground();
+
+    /**
+     * Replaces the styles and color arguments of this AnsiSequence. Color arguments without a matching style in
+     * {@code styleMask} are discarded.
+     * @param styleMask the styles to apply, as returned by {@link #getStyleMask()}
+     * @param foreground the packed argument of {@link Style#COLOR} or {@link Style#COLOR_INDEX}
+     * @param background the packed argument of {@link Style#BACKGROUND_COLOR} or {@link Style#BACKGROUND_COLOR_INDEX}
+     * @return the AnsiSequence with the new state; this AnsiSequence if it is mutable
+     */
+    T setState(long styleMask, int foreground, int background);
+
+    /**
+     * Returns a map of arguments and their values. The map is a copy; changes to it are not reflected in this AnsiSequence.
      * @return a map of arguments and their values
      */
-    Map<Style, Object> getArgumentMap();
+    default Map<Style, Object> getArgumentMap() {
+        Map<Style, Object> argumentMap = new EnumMap<>(Style.class);
+        long styleMask = getStyleMask();
+        for (Style style : ARGUMENT_STYLES) {
+            int argument = style.argumentOf(getForeground(), getBackground());
+            if ((styleMask & style.getMask()) != 0 && argument != AnsiColor.NONE) {
+                argumentMap.put(style, AnsiColor.value(argument));
+            }
+        }
+        return argumentMap;
+    }
 
     /**
-     * Returns the styles currently applied to this AnsiSequence.
+     * Returns the styles currently applied to this AnsiSequence. The set is a copy; changes to it are not reflected in this AnsiSequence.
      * @return the styles currently applied to this AnsiSequence
      */
-    EnumSet<Style> getStyles();
+    default EnumSet<Style> getStyles() {
+        return Style.setOf(getStyleMask());
+    }
 
     /**
      * Returns whether this AnsiSequence groups multiple styles into a single Control Sequence structure, or wraps a Control Sequence structure around each style.
@@ -84,7 +105,7 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
     @SuppressWarnings({"unchecked", "unused"})
     default T addStyle(Style... styles) {
         if (styles.length > 0) {
-            getStyles().addAll(Arrays.asList(styles));
+            return setState(getStyleMask() | Style.maskOf(styles), getForeground(), getBackground());
         }
         return (T)this;
     }
@@ -92,7 +113,7 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
     @SuppressWarnings({"unchecked", "unused"})
     default T addStyles(Collection<Style> styles) {
         if (styles != null && !styles.isEmpty()) {
-            getStyles().addAll(styles);
+            return setState(getStyleMask() | Style.maskOf(styles), getForeground(), getBackground());
         }
         return (T)this;
     }
@@ -105,7 +126,7 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
     @SuppressWarnings({"unchecked"})
     default T removeStyles(Collection<Style> styles) {
         if (styles != null) {
-            getStyles().removeAll(styles);
+            return setState(getStyleMask() & ~Style.maskOf(styles), getForeground(), getBackground());
         }
         return (T)this;
     }
@@ -114,54 +135,120 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
         return getSequence(isGrouped());
     }
 
+    /**
+     * Returns the Control Sequence for the styles of this AnsiSequence, from the {@link SequenceCache#getShared() shared cache}
+     * when it has already been rendered. The {@link TerminalProfile#getDefault() default profile} applies.
+     * @param grouped whether to group all styles into a single Control Sequence structure
+     * @return the Control Sequence for the styles of this AnsiSequence
+     */
     default String getSequence(boolean grouped) {
-        Map<Style, Object> argumentMap = getArgumentMap();
-        List<String> resultList = new ArrayList<>();
-        for (Style style : getStyles()) {
-            Object arg = argumentMap.get(style);
-            resultList.add(style.getSequence(arg));
+        return TerminalProfile.getDefault().getSequence(this, grouped);
+    }
+
+    /**
+     * Returns the Control Sequence for the styles of this AnsiSequence as a terminal with {@code profile} supports it,
+     * honoring {@link #isGrouped()}.
+     * @param profile the capabilities of the terminal
+     * @return the Control Sequence, or an empty String if {@code profile} doesn't support styling
+     */
+    default String getSequence(TerminalProfile profile) {
+        return profile.getSequence(this, isGrouped());
+    }
+
+    /**
+     * Appends the Control Sequence for the styles of this AnsiSequence to {@code out}, honoring {@link #isGrouped()}.
+     * @param out the StringBuilder to append to
+     * @return {@code out} for chaining
+     */
+    default StringBuilder appendTo(StringBuilder out) {
+        return appendTo(out, isGrouped());
+    }
+
+    /**
+     * Appends the Control Sequence for the styles of this AnsiSequence to {@code out}.
+     * @param out the StringBuilder to append to
+     * @param grouped whether to group all styles into a single Control Sequence structure
+     * @return {@code out} for chaining
+     */
+    default StringBuilder appendTo(StringBuilder out, boolean grouped) {
+        try {
+            appendTo((Appendable)out, grouped);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
         }
+        return out;
+    }
 
-        return CSI_START + String.join((grouped ? ";" : (CSI_END + CSI_START)), resultList) + CSI_END;
+    /**
+     * Appends the Control Sequence for the styles of this AnsiSequence to {@code out}, honoring {@link #isGrouped()}.
+     * @param out the Appendable to append to
+     * @param <A> the type of Appendable
+     * @return {@code out} for chaining
+     * @throws IOException if {@code out} fails to accept the sequence
+     */
+    default <A extends Appendable> A appendTo(A out) throws IOException {
+        return appendTo(out, isGrouped());
+    }
+
+    /**
+     * Appends the Control Sequence for the styles of this AnsiSequence to {@code out}, writing parameter digits directly
+     * rather than building intermediate Strings.
+     * @param out the Appendable to append to
+     * @param grouped whether to group all styles into a single Control Sequence structure
+     * @param <A> the type of Appendable
+     * @return {@code out} for chaining
+     * @throws IOException if {@code out} fails to accept the sequence
+     */
+    default <A extends Appendable> A appendTo(A out, boolean grouped) throws IOException {
+        TerminalProfile profile = TerminalProfile.getDefault();
+        if (profile.isUnrestricted()) {
+            return Style.appendSequence(out, getStyleMask(), getForeground(), getBackground(), grouped);
+        }
+        out.append(profile.getSequence(this, grouped));
+        return out;
     }
 
-    @SuppressWarnings({"unchecked"})
     default T styleWithArgument(Style style, Object arg) {
-        getStyles().add(style);
-        getArgumentMap().put(style, arg);
-        return (T)this;
+        return styleWithColor(style, style.toArgument(arg));
+    }
+
+    /**
+     * Applies {@code style} with a {@link AnsiColor packed} color argument, replacing any other argument for the same
+     * color channel.
+     * @param style the style to apply
+     * @param color the packed color argument
+     * @return this AnsiSequence for chaining
+     */
+    default T styleWithColor(Style style, int color) {
+        if (!style.expectsArgument()) {
+            return addStyle(style);
+        }
+        if (style.isBackground()) {
+            return setState((getStyleMask() & ~BACKGROUND_ARGUMENT_MASK) | style.getMask(), getForeground(), color);
+        }
+        return setState((getStyleMask() & ~FOREGROUND_ARGUMENT_MASK) | style.getMask(), color, getBackground());
     }
 
-    @SuppressWarnings({"unchecked"})
     default T set(Style... styles) {
-        reset();
-        getStyles().addAll(Arrays.asList(styles));
-        return (T)this;
+        return setState(Style.maskOf(styles), AnsiColor.NONE, AnsiColor.NONE);
     }
 
     default T set(Style style, Object arg) {
-        reset();
-        return styleWithArgument(style, arg);
+        return reset().styleWithArgument(style, arg);
     }
 
-    @SuppressWarnings({"unchecked"})
     default T reset() {
-        getStyles().clear();
-        getArgumentMap().clear();
-        return (T)this;
+        return setState(0L, AnsiColor.NONE, AnsiColor.NONE);
     }
 
-    @SuppressWarnings({"unchecked", "unused"})
+    @SuppressWarnings("unused")
     default T reset(Style style) {
-        reset();
-        getStyles().add(style);
-        return (T)this;
+        return setState(style.getMask(), AnsiColor.NONE, AnsiColor.NONE);
     }
 
     @SuppressWarnings("unused")
     default T reset(Style style, Object arg) {
-        reset();
-        return styleWithArgument(style, arg);
+        return reset().styleWithArgument(style, arg);
     }
 
     @SuppressWarnings("unused")
@@ -169,14 +256,13 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
         return color(rgb2int(red, green, blue));
     }
 
-    @SuppressWarnings({"unchecked", "unused"})
+    @SuppressWarnings("unused")
     default T noColor() {
-        getStyles().remove(COLOR);
-        return (T)this;
+        return setState(getStyleMask() & ~COLOR.getMask(), getForeground(), getBackground());
     }
 
     default T color(int color) {
-        return styleWithArgument(COLOR, color);
+        return styleWithColor(COLOR, COLOR.toArgument(color));
     }
 
     @SuppressWarnings("unused")
@@ -185,16 +271,16 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
     }
 
     default T bgColor(int color) {
-        return styleWithArgument(COLOR, color);
+        return styleWithColor(COLOR, COLOR.toArgument(color));
     }
 
     default T colorIndex(int color) {
-        return styleWithArgument(COLOR_INDEX, color);
+        return styleWithColor(COLOR_INDEX, COLOR_INDEX.toArgument(color));
     }
 
     @SuppressWarnings("unused")
     default T bgColorIndex(int color) {
-        return styleWithArgument(BACKGROUND_COLOR_INDEX, color);
+        return styleWithColor(BACKGROUND_COLOR_INDEX, BACKGROUND_COLOR_INDEX.toArgument(color));
     }
 
     @SuppressWarnings("unused")
@@ -206,15 +292,19 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
         return and(Arrays.asList(styles));
     }
 
-    @SuppressWarnings({"unchecked"})
     default T and(Collection<Style> styles) {
-        EnumSet<Style> styleSet = getStyles();
-        Map<Style, Object> styleArgumentMap = getArgumentMap();
-        styleSet.addAll(styles);
+        int foreground = getForeground();
+        int background = getBackground();
         for (Style style : styles) {
-            styleArgumentMap.remove(style);
+            if (style.argumentOf(foreground, background) != AnsiColor.NONE) {
+                if (style.isBackground()) {
+                    background = AnsiColor.NONE;
+                } else {
+                    foreground = AnsiColor.NONE;
+                }
+            }
         }
-        return (T)this;
+        return setState(getStyleMask() | Style.maskOf(styles), foreground, background);
     }
 
     @SuppressWarnings("unused")
@@ -222,15 +312,8 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
         return not(Arrays.asList(styles));
     }
 
-    @SuppressWarnings({"unchecked"})
     default T not(Collection<Style> styles) {
-        EnumSet<Style> styleSet = getStyles();
-        Map<Style, Object> styleArgumentMap = getArgumentMap();
-        styleSet.removeAll(styles);
-        for (Style style : styleSet) {
-            styleArgumentMap.remove(style);
-        }
-        return (T)this;
+        return setState(getStyleMask() & ~Style.maskOf(styles), getForeground(), getBackground());
     }
 
     @SuppressWarnings("unused")
@@ -239,12 +322,13 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
     }
 
     default boolean has(Collection<Style> styles) {
-        return getStyles().containsAll(styles);
+        long styleMask = Style.maskOf(styles);
+        return (getStyleMask() & styleMask) == styleMask;
     }
 
     @SuppressWarnings("unused")
     default boolean has(EnumSet<Style> styles) {
-        return getStyles().containsAll(styles);
+        return has((Collection<Style>)styles);
     }
 
     @SuppressWarnings("unused")
@@ -253,12 +337,12 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
     }
 
     default boolean is(Collection<Style> styles) {
-        return getStyles().containsAll(styles);
+        return has(styles);
     }
 
     @SuppressWarnings("unused")
     default boolean is(EnumSet<Style> styles) {
-        return getStyles().containsAll(styles);
+        return has((Collection<Style>)styles);
     }
 
     @SuppressWarnings("unused")
@@ -490,11 +574,77 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
         return and(BACKGROUND_BRIGHT_WHITE);
     }
 
+    /**
+     * Returns {@code input} preceded by the Control Sequence for this AnsiSequence and followed by a reset. When the
+     * {@link TerminalProfile#getDefault() default profile} doesn't support styling, {@code input} itself is returned.
+     * @param input the text to wrap
+     * @return the wrapped text
+     */
     @SuppressWarnings("unused")
     default String wrap(String input) {
-        String sequence = getSequence();
-        String reset = Style.RESET.toString();
-        return getSequence() + input + reset;
+        return wrap(input, TerminalProfile.getDefault());
+    }
+
+    /**
+     * Returns {@code input} preceded by the Control Sequence for this AnsiSequence as a terminal with {@code profile}
+     * supports it, and followed by a reset.
+     * @param input the text to wrap
+     * @param profile the capabilities of the terminal
+     * @return the wrapped text, or {@code input} itself if {@code profile} doesn't support styling
+     */
+    default String wrap(String input, TerminalProfile profile) {
+        if (!profile.isEnabled()) {
+            return input;
+        }
+        String sequence = profile.getSequence(this, isGrouped());
+        return new StringBuilder(sequence.length() + input.length() + 4).append(sequence).append(input).append(CSI_START).append('0').append(CSI_END).toString();
+    }
+
+    /**
+     * Appends {@code input} to {@code out}, preceded by the Control Sequence for this AnsiSequence and followed by a reset.
+     * @param out the StringBuilder to append to
+     * @param input the text to wrap
+     * @return {@code out} for chaining
+     */
+    default StringBuilder appendWrapped(StringBuilder out, CharSequence input) {
+        try {
+            appendWrapped((Appendable)out, input);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out;
+    }
+
+    /**
+     * Appends {@code input} to {@code out}, preceded by the Control Sequence for this AnsiSequence and followed by a reset.
+     * @param out the Appendable to append to
+     * @param input the text to wrap
+     * @param <A> the type of Appendable
+     * @return {@code out} for chaining
+     * @throws IOException if {@code out} fails to accept the text
+     */
+    default <A extends Appendable> A appendWrapped(A out, CharSequence input) throws IOException {
+        if (!TerminalProfile.getDefault().isEnabled()) {
+            out.append(input);
+            return out;
+        }
+        appendTo(out);
+        out.append(input);
+        return RESET.appendSequenceTo(out);
+    }
+
+    /**
+     * Renders the {@link AnsiColor packed} argument of a {@link Style} that expects one.
+     */
+    @FunctionalInterface
+    interface ArgumentHandler {
+        /**
+         * Appends the parameters for {@code color} to {@code out}, or nothing if the color is not of the expected mode.
+         * @param out the Appendable to append to
+         * @param color the packed color to render
+         * @throws IOException if {@code out} fails to accept the parameters
+         */
+        void appendTo(Appendable out, int color) throws IOException;
     }
 
     enum Style {
@@ -611,12 +761,12 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
         /**
          * COLOR_INDEX
          */
-        COLOR_INDEX(38, HANDLER_INDEX),
+        COLOR_INDEX(38, HANDLER_INDEX, AnsiColor.MODE_INDEXED),
 
         /**
          * COLOR
          */
-        COLOR(38, HANDLER_COLOR),
+        COLOR(38, HANDLER_COLOR, AnsiColor.MODE_RGB),
 
         /**
          * BACKGROUND_BLACK
@@ -661,12 +811,12 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
         /**
          * BACKGROUND_COLOR_INDEX
          */
-        BACKGROUND_COLOR_INDEX(48, HANDLER_INDEX),
+        BACKGROUND_COLOR_INDEX(48, HANDLER_INDEX, AnsiColor.MODE_INDEXED),
 
         /**
          * BACKGROUND_COLOR
          */
-        BACKGROUND_COLOR(48, HANDLER_COLOR),
+        BACKGROUND_COLOR(48, HANDLER_COLOR, AnsiColor.MODE_RGB),
 
         /**
          * BRIGHT_BLACK
@@ -748,51 +898,264 @@ public interface AnsiSequence<T extends AnsiSequence<T>> {
          */
         BACKGROUND_BRIGHT_WHITE(107);
 
+        static final Style[] VALUES = values();
+
+        static final Style[] ARGUMENT_STYLES = {COLOR_INDEX, COLOR, BACKGROUND_COLOR_INDEX, BACKGROUND_COLOR};
+
+        static final long FOREGROUND_ARGUMENT_MASK = COLOR_INDEX.getMask() | COLOR.getMask();
+
+        static final long BACKGROUND_ARGUMENT_MASK = BACKGROUND_COLOR_INDEX.getMask() | BACKGROUND_COLOR.getMask();
+
         final int code;
 
-        private final Function<Object, String> argumentHandler;
+        private final ArgumentHandler argumentHandler;
+
+        private final int argumentMode;
+
+        private final String codeString;
+
+        private final byte[] codeBytes;
+
+        /**
+         * The complete parameters for each of the 256 palette colors, such as {@code "38;5;196"}, for styles that
+         * take a palette index.
+         */
+        private final String[] indexedParameters;
+
+        private final byte[][] indexedParameterBytes;
 
         Style(int code) {
-            this(code, null);
+            this(code, null, AnsiColor.MODE_NONE);
         }
 
-        Style(int code, Function<Object, String> argumentHandler) {
+        Style(int code, ArgumentHandler argumentHandler, int argumentMode) {
             this.code = code;
             this.argumentHandler = argumentHandler;
+            this.argumentMode = argumentMode;
+            this.codeString = Integer.toString(code);
+            this.codeBytes = codeString.getBytes(StandardCharsets.US_ASCII);
+            if (argumentMode == AnsiColor.MODE_INDEXED) {
+                indexedParameters = new String[256];
+                indexedParameterBytes = new byte[256][];
+                for (int index = 0; index < indexedParameters.length; index++) {
+                    indexedParameters[index] = codeString + ";5;" + index;
+                    indexedParameterBytes[index] = indexedParameters[index].getBytes(StandardCharsets.US_ASCII);
+                }
+            } else {
+                indexedParameters = null;
+                indexedParameterBytes = null;
+            }
+        }
+
+        /**
+         * Appends the Control Sequence for a style mask and its packed color arguments to {@code out}, exactly as
+         * requested, regardless of any {@link TerminalProfile}.
+         */
+        static <A extends Appendable> A appendSequence(A out, long styleMask, int foreground, int background, boolean grouped) throws IOException {
+            boolean first = true;
+            out.append(CSI_START);
+            for (Style style : VALUES) {
+                if ((styleMask & style.getMask()) != 0) {
+                    if (!first) {
+                        out.append(grouped ? ";" : (CSI_END + CSI_START));
+                    }
+                    style.appendTo(out, style.argumentOf(foreground, background));
+                    first = false;
+                }
+            }
+            out.append(CSI_END);
+            return out;
+        }
+
+        static String toSequence(long styleMask, int foreground, int background, boolean grouped) {
+            try {
+                return appendSequence(new StringBuilder(32), styleMask, foreground, background, grouped).toString();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        static long maskOf(Style... styles) {
+            long styleMask = 0L;
+            for (Style style : styles) {
+                styleMask |= style.getMask();
+            }
+            return styleMask;
+        }
+
+        static long maskOf(Collection<Style> styles) {
+            long styleMask = 0L;
+            for (Style style : styles) {
+                styleMask |= style.getMask();
+            }
+            return styleMask;
+        }
+
+        static EnumSet<Style> setOf(long styleMask) {
+            EnumSet<Style> styles = EnumSet.noneOf(Style.class);
+            for (Style style : VALUES) {
+                if ((styleMask & style.getMask()) != 0) {
+                    styles.add(style);
+                }
+            }
+            return styles;
+        }
+
+        /**
+         * Returns {@code foreground} if it is the argument of a foreground style in {@code styleMask}, otherwise
+         * {@link AnsiColor#NONE}. Implementations of {@link AnsiSequence#setState(long, int, int)} use this to discard
+         * arguments of removed styles.
+         */
+        static int foregroundOf(long styleMask, int foreground) {
+            return retainArgument(styleMask, foreground, COLOR_INDEX, COLOR);
+        }
+
+        /**
+         * Returns {@code background} if it is the argument of a background style in {@code styleMask}, otherwise
+         * {@link AnsiColor#NONE}.
+         */
+        static int backgroundOf(long styleMask, int background) {
+            return retainArgument(styleMask, background, BACKGROUND_COLOR_INDEX, BACKGROUND_COLOR);
+        }
+
+        private static int retainArgument(long styleMask, int color, Style indexStyle, Style colorStyle) {
+            if (((styleMask & indexStyle.getMask()) != 0 && indexStyle.accepts(color))
+                || ((styleMask & colorStyle.getMask()) != 0 && colorStyle.accepts(color))) {
+                return color;
+            }
+            return AnsiColor.NONE;
         }
 
         final int getCode() {
             return code;
         }
 
+        final long getMask() {
+            return (1L << ordinal());
+        }
+
         final boolean expectsArgument() {
             return (argumentHandler != null);
         }
 
+        final boolean isBackground() {
+            return (code >= 40 && code <= 48) || (code >= 100 && code <= 107);
+        }
+
+        final boolean accepts(int color) {
+            return (argumentMode != AnsiColor.MODE_NONE && AnsiColor.mode(color) == argumentMode);
+        }
+
+        /**
+         * Returns the argument of this style from the packed foreground and background colors, or
+         * {@link AnsiColor#NONE} if this style doesn't expect an argument or the color is of another mode.
+         */
+        final int argumentOf(int foreground, int background) {
+            int color = (isBackground() ? background : foreground);
+            return (accepts(color) ? color : AnsiColor.NONE);
+        }
+
+        /**
+         * Converts a boxed argument to the packed color this style expects, or {@link AnsiColor#NONE} if it is not valid.
+         * A {@link Number} is a palette index or an {@code 0xRRGGBB} value; a {@code Number[]} holds red, green and blue
+         * as its last three elements.
+         */
+        final int toArgument(Object argument) {
+            if (argument instanceof Number) {
+                return toArgument(((Number)argument).intValue());
+            }
+            if (argumentMode == AnsiColor.MODE_RGB && argument instanceof Number[]) {
+                Number[] colors = (Number[])argument;
+                if (colors.length >= 3) {
+                    int colorDepth = colors.length;
+                    return AnsiColor.rgb(
+                        toComponent(colors[colorDepth - 3]),
+                        toComponent(colors[colorDepth - 2]),
+                        toComponent(colors[colorDepth - 1])
+                    );
+                }
+            }
+            return AnsiColor.NONE;
+        }
+
+        final int toArgument(int argument) {
+            if (argumentMode == AnsiColor.MODE_INDEXED) {
+                return (argument >= 0 && argument <= 255 ? AnsiColor.indexed(argument) : AnsiColor.NONE);
+            }
+            if (argumentMode == AnsiColor.MODE_RGB) {
+                return (argument >= 0 ? AnsiColor.rgb(argument) : AnsiColor.NONE);
+            }
+            return AnsiColor.NONE;
+        }
+
+        private static int toComponent(Number component) {
+            return Math.max(0, Math.min(255, Math.round(component.floatValue())));
+        }
+
         final String getSequence() {
             return getSequence(null);
         }
 
         final String getSequence(Object argument) {
-            boolean expectsArgument = expectsArgument();
-            int bufferSize = 3;
-            if (expectsArgument && argument != null) {
-                bufferSize += 14;
+            int color = toArgument(argument);
+            if (!accepts(color)) {
+                return codeString;
             }
-            StringBuilder result = new StringBuilder(bufferSize);
-            result.append(getCode());
-            if (expectsArgument) {
-                String argResult = argumentHandler.apply(argument);
-                if (argResult != null) {
-                    result.append(argResult);
-                }
+            if (argumentMode == AnsiColor.MODE_INDEXED) {
+                return indexedParameters[AnsiColor.value(color)];
+            }
+            return appendTo(new StringBuilder(codeString.length() + 14), color).toString();
+        }
+
+        final StringBuilder appendTo(StringBuilder out, int color) {
+            try {
+                appendTo((Appendable)out, color);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
             }
-            return result.toString();
+            return out;
+        }
+
+        final <A extends Appendable> A appendTo(A out, int color) throws IOException {
+            if (argumentMode == AnsiColor.MODE_INDEXED && accepts(color)) {
+                out.append(indexedParameters[AnsiColor.value(color)]);
+                return out;
+            }
+            out.append(codeString);
+            if (expectsArgument()) {
+                argumentHandler.appendTo(out, color);
+            }
+            return out;
+        }
+
+        /**
+         * Writes the parameters of this style and its argument as US-ASCII bytes, matching {@link #appendTo(Appendable, int)}.
+         */
+        final void encodeTo(ByteBuffer out, int color) {
+            if (!accepts(color)) {
+                out.put(codeBytes);
+            } else if (argumentMode == AnsiColor.MODE_INDEXED) {
+                out.put(indexedParameterBytes[AnsiColor.value(color)]);
+            } else {
+                out.put(codeBytes).put((byte)';').put((byte)'2').put((byte)';');
+                Digits.put(out, AnsiColor.red(color));
+                out.put((byte)';');
+                Digits.put(out, AnsiColor.green(color));
+                out.put((byte)';');
+                Digits.put(out, AnsiColor.blue(color));
+            }
+        }
+
+        final <A extends Appendable> A appendSequenceTo(A out) throws IOException {
+            out.append(CSI_START);
+            appendTo(out, AnsiColor.NONE);
+            out.append(CSI_END);
+            return out;
         }
 
         @Override
         public String toString() {
-            return CSI_START + getSequence() + CSI_END;
+            return appendTo(new StringBuilder(8).append(CSI_START), AnsiColor.NONE).append(CSI_END).toString();
         }
     }
 }
@@ -0,0 +1,388 @@
+package com.witcraft.ansi;
+
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Removes ANSI escape sequences from text, leaving the plain text.
+ * <p>
+ * Input is scanned for ESC in bulk, and text between sequences is copied as whole runs; byte input is scanned eight
+ * bytes at a time. Input without any ESC is returned as is, without copying. Sequences are recognized by
+ * {@link AnsiParser}, so CSI, OSC (including hyperlinks and titles) and string sequences are all removed, and an
+ * incomplete sequence at the end of the input is dropped.
+ * <p>
+ * The static methods are thread-safe. The streams returned by {@link #strip(Reader)} and {@link #strip(InputStream)}
+ * use fixed-size buffers, so sequences of any length can be stripped in bounded memory.
+ */
+public final class AnsiStripper {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_RETAINED_SIZE = 1 << 16;
+
+    private static final ThreadLocal<Sink> SINKS = ThreadLocal.withInitial(Sink::new);
+
+    private AnsiStripper() {
+    }
+
+    /**
+     * Returns {@code input} without escape sequences.
+     *
+     * @param input the text to strip
+     * @return the plain text, which is {@code input} itself if it contains no escape sequences
+     */
+    public static String strip(String input) {
+        if (input.indexOf(0x1B) < 0) {
+            return input;
+        }
+        Sink sink = SINKS.get().startChars(input.length());
+        sink.parser.parse(input);
+        sink.parser.finish();
+        String result = new String(sink.chars, 0, sink.count);
+        sink.release();
+        return result;
+    }
+
+    /**
+     * Returns {@code input} without escape sequences.
+     *
+     * @param input the characters to strip
+     * @return the plain text, which is {@code input} itself if it contains no escape sequences
+     */
+    public static char[] strip(char[] input) {
+        if (indexOfEscape(input) < 0) {
+            return input;
+        }
+        Sink sink = SINKS.get().startChars(input.length);
+        sink.parser.parse(CharBuffer.wrap(input), 0, input.length);
+        sink.parser.finish();
+        char[] result = (sink.count == input.length ? input : Arrays.copyOf(sink.chars, sink.count));
+        sink.release();
+        return result;
+    }
+
+    /**
+     * Copies {@code input} from {@code start} (inclusive) to {@code end} (exclusive) into {@code output} at
+     * {@code offset}, without escape sequences. {@code output} may be {@code input}, to strip in place.
+     *
+     * @param input  the characters to strip
+     * @param start  the index of the first character to strip
+     * @param end    the index after the last character to strip
+     * @param output the array to copy the plain text into
+     * @param offset the index in {@code output} to copy to
+     * @return the number of characters copied
+     */
+    public static int strip(char[] input, int start, int end, char[] output, int offset) {
+        Sink sink = SINKS.get().startChars(end - start);
+        sink.parser.parse(CharBuffer.wrap(input), start, end);
+        sink.parser.finish();
+        int count = sink.count;
+        System.arraycopy(sink.chars, 0, output, offset, count);
+        sink.release();
+        return count;
+    }
+
+    /**
+     * Returns {@code input} without escape sequences. Bytes of 0x80 and above are copied unchanged, so any
+     * ASCII-compatible encoding, such as UTF-8, is supported.
+     *
+     * @param input the bytes to strip
+     * @return the plain text, which is {@code input} itself if it contains no escape sequences
+     */
+    public static byte[] strip(byte[] input) {
+        if (AnsiParser.indexOfEscape(input, 0, input.length) == input.length) {
+            return input;
+        }
+        Sink sink = SINKS.get().startBytes(input.length);
+        sink.parser.parse(ByteBuffer.wrap(input));
+        sink.parser.finish();
+        byte[] result = Arrays.copyOf(sink.bytes, sink.count);
+        sink.release();
+        return result;
+    }
+
+    /**
+     * Returns the remaining bytes of {@code input} without escape sequences. The position of {@code input} is not
+     * changed.
+     *
+     * @param input the bytes to strip
+     * @return the plain text, which is {@code input} itself if it contains no escape sequences, or else a new buffer
+     */
+    public static ByteBuffer strip(ByteBuffer input) {
+        if (input.hasArray()) {
+            int offset = input.arrayOffset();
+            int start = offset + input.position();
+            int end = offset + input.limit();
+            if (AnsiParser.indexOfEscape(input.array(), start, end) == end) {
+                return input;
+            }
+        }
+        Sink sink = SINKS.get().startBytes(input.remaining());
+        sink.parser.parse(input.duplicate());
+        sink.parser.finish();
+        if (sink.count == input.remaining()) {
+            sink.release();
+            return input;
+        }
+        ByteBuffer result = ByteBuffer.wrap(Arrays.copyOf(sink.bytes, sink.count));
+        sink.release();
+        return result;
+    }
+
+    /**
+     * Returns a Reader that reads from {@code in} without escape sequences.
+     *
+     * @param in the Reader to strip
+     * @return the stripping Reader
+     */
+    public static Reader strip(Reader in) {
+        return new StrippingReader(in);
+    }
+
+    /**
+     * Returns an InputStream that reads from {@code in} without escape sequences. Bytes of 0x80 and above are passed
+     * through unchanged.
+     *
+     * @param in the InputStream to strip
+     * @return the stripping InputStream
+     */
+    public static InputStream strip(InputStream in) {
+        return new StrippingInputStream(in);
+    }
+
+    private static int indexOfEscape(char[] input) {
+        for (int index = 0; index < input.length; index++) {
+            if (input[index] == 0x1B) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Collects the text reported by a parser into a growable array.
+     */
+    private static final class Sink implements AnsiParser.Handler {
+        private final AnsiParser parser = new AnsiParser(this);
+        private char[] chars = new char[0];
+        private byte[] bytes = new byte[0];
+        private int count;
+
+        Sink startChars(int capacity) {
+            count = 0;
+            if (chars.length < capacity) {
+                chars = new char[capacity];
+            }
+            return this;
+        }
+
+        Sink startBytes(int capacity) {
+            count = 0;
+            if (bytes.length < capacity) {
+                bytes = new byte[capacity];
+            }
+            return this;
+        }
+
+        void release() {
+            if (chars.length > MAX_RETAINED_SIZE) {
+                chars = new char[0];
+            }
+            if (bytes.length > MAX_RETAINED_SIZE) {
+                bytes = new byte[0];
+            }
+        }
+
+        @Override
+        public void text(CharSequence input, int start, int end) {
+            int length = end - start;
+            if (input instanceof String) {
+                ((String)input).getChars(start, end, chars, count);
+            } else if (input instanceof CharBuffer && ((CharBuffer)input).hasArray()) {
+                CharBuffer buffer = (CharBuffer)input;
+                System.arraycopy(buffer.array(), buffer.arrayOffset() + buffer.position() + start, chars, count, length);
+            } else {
+                for (int index = start; index < end; index++) {
+                    chars[count + index - start] = input.charAt(index);
+                }
+            }
+            count += length;
+        }
+
+        @Override
+        public void text(ByteBuffer input, int start, int end) {
+            int length = end - start;
+            if (input.hasArray()) {
+                System.arraycopy(input.array(), input.arrayOffset() + start, bytes, count, length);
+            } else {
+                input.position(start);
+                input.get(bytes, count, length);
+            }
+            count += length;
+        }
+    }
+
+    private static final class StrippingReader extends FilterReader {
+        private final Sink sink = new Sink().startChars(BUFFER_SIZE);
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private final CharBuffer view = CharBuffer.wrap(buffer);
+        private int position;
+
+        StrippingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return (fill() ? sink.chars[position++] : -1);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, sink.count - position);
+            System.arraycopy(sink.chars, position, cbuf, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && fill()) {
+                int count = (int)Math.min(n - skipped, sink.count - position);
+                position += count;
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean ready() throws IOException {
+            return position < sink.count || in.ready();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void mark(int readAheadLimit) throws IOException {
+            throw new IOException("mark() not supported");
+        }
+
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("reset() not supported");
+        }
+
+        /**
+         * Reads until there is stripped text available.
+         *
+         * @return false at the end of the stream
+         */
+        private boolean fill() throws IOException {
+            while (position >= sink.count) {
+                int count = in.read(buffer, 0, buffer.length);
+                if (count < 0) {
+                    sink.parser.finish();
+                    return false;
+                }
+                sink.count = 0;
+                position = 0;
+                sink.parser.parse(view, 0, count);
+            }
+            return true;
+        }
+    }
+
+    private static final class StrippingInputStream extends FilterInputStream {
+        private final Sink sink = new Sink().startBytes(BUFFER_SIZE);
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final ByteBuffer view = ByteBuffer.wrap(buffer);
+        private int position;
+
+        StrippingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return (fill() ? (sink.bytes[position++] & 0xFF) : -1);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, sink.count - position);
+            System.arraycopy(sink.bytes, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            while (skipped < n && fill()) {
+                int count = (int)Math.min(n - skipped, sink.count - position);
+                position += count;
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return sink.count - position;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+
+        /**
+         * Reads until there is stripped text available.
+         *
+         * @return false at the end of the stream
+         */
+        private boolean fill() throws IOException {
+            while (position >= sink.count) {
+                int count = in.read(buffer, 0, buffer.length);
+                if (count < 0) {
+                    sink.parser.finish();
+                    return false;
+                }
+                sink.count = 0;
+                position = 0;
+                view.limit(count).position(0);
+                sink.parser.parse(view);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.witcraft.ansi;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable {@link AnsiSequence}, with its Control Sequence rendered once at construction.
+ * <p>
+ * Instances are interned: equal styles share a single instance, so they can be held in {@code static final} fields
+ * and used from any number of threads without locking or rendering cost. The fluent {@link AnsiSequence} methods
+ * return the interned AnsiStyle for the modified state instead of changing this one.
+ * <pre>{@code
+ * static final AnsiStyle FAILED = AnsiStyle.DEFAULT.bgBrightRed().colorIndex(255);
+ * }</pre>
+ */
+public final class AnsiStyle implements AnsiSequence<AnsiStyle> {
+    private static final String RESET_SEQUENCE = Style.RESET.toString();
+
+    private static final ConcurrentHashMap<SequenceKey, Interned> INTERNED = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<AnsiStyle> COLLECTED = new ReferenceQueue<>();
+
+    /**
+     * The grouped AnsiStyle without any styles.
+     */
+    public static final AnsiStyle DEFAULT = of(0L, AnsiColor.NONE, AnsiColor.NONE, true);
+
+    private final long styleMask;
+    private final int foreground;
+    private final int background;
+    private final boolean isGrouped;
+    private final String sequence;
+    final byte[] sequenceBytes;
+
+    private AnsiStyle(long styleMask, int foreground, int background, boolean isGrouped) {
+        this.styleMask = styleMask;
+        this.foreground = Style.foregroundOf(styleMask, foreground);
+        this.background = Style.backgroundOf(styleMask, background);
+        this.isGrouped = isGrouped;
+        this.sequence = Style.toSequence(this.styleMask, this.foreground, this.background, isGrouped);
+        this.sequenceBytes = sequence.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the interned AnsiStyle for the current styles and arguments of {@code source}.
+     *
+     * @param source the sequence to take a snapshot of
+     * @return the interned AnsiStyle
+     */
+    public static AnsiStyle of(AnsiSequence<?> source) {
+        if (source instanceof AnsiStyle) {
+            return (AnsiStyle)source;
+        }
+        return of(source.getStyleMask(), source.getForeground(), source.getBackground(), source.isGrouped());
+    }
+
+    /**
+     * Returns the interned, grouped AnsiStyle for {@code styles}.
+     *
+     * @param styles the styles to apply
+     * @return the interned AnsiStyle
+     */
+    public static AnsiStyle of(Style... styles) {
+        return of(Style.maskOf(styles), AnsiColor.NONE, AnsiColor.NONE, true);
+    }
+
+    /**
+     * Returns the interned AnsiStyle for a packed state.
+     *
+     * @param styleMask  the styles to apply, as returned by {@link AnsiSequence#getStyleMask()}
+     * @param foreground the packed argument of {@link Style#COLOR} or {@link Style#COLOR_INDEX}
+     * @param background the packed argument of {@link Style#BACKGROUND_COLOR} or {@link Style#BACKGROUND_COLOR_INDEX}
+     * @param grouped    whether to group all styles into a single Control Sequence structure
+     * @return the interned AnsiStyle
+     */
+    public static AnsiStyle of(long styleMask, int foreground, int background, boolean grouped) {
+        SequenceKey key = SequenceKey.of(styleMask, Style.foregroundOf(styleMask, foreground), Style.backgroundOf(styleMask, background), grouped);
+        Interned reference = INTERNED.get(key);
+        AnsiStyle existing = (reference != null ? reference.get() : null);
+        if (existing != null) {
+            return existing;
+        }
+        expungeCollected();
+        AnsiStyle candidate = new AnsiStyle(styleMask, foreground, background, grouped);
+        Interned created = new Interned(key, candidate);
+        while (true) {
+            reference = INTERNED.putIfAbsent(key, created);
+            if (reference == null) {
+                return candidate;
+            }
+            existing = reference.get();
+            if (existing != null) {
+                return existing;
+            }
+            if (INTERNED.replace(key, reference, created)) {
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * Removes the entries of styles that have been garbage collected.
+     */
+    private static void expungeCollected() {
+        Interned reference;
+        while ((reference = (Interned)COLLECTED.poll()) != null) {
+            INTERNED.remove(reference.key, reference);
+        }
+    }
+
+    @Override
+    public long getStyleMask() { return styleMask; }
+
+    @Override
+    public int getForeground() { return foreground; }
+
+    @Override
+    public int getBackground() { return background; }
+
+    /**
+     * Returns the interned AnsiStyle for the given state; this AnsiStyle is not modified.
+     */
+    @Override
+    public AnsiStyle setState(long styleMask, int foreground, int background) {
+        return of(styleMask, foreground, background, isGrouped);
+    }
+
+    @Override
+    public boolean isGrouped() { return isGrouped; }
+
+    /**
+     * Returns the interned AnsiStyle with the given grouping; this AnsiStyle is not modified.
+     */
+    @Override
+    public AnsiStyle setGrouped(boolean group) {
+        return (group == isGrouped ? this : of(styleMask, foreground, background, group));
+    }
+
+    /**
+     * Returns the Control Sequence rendered when this AnsiStyle was created, unless the
+     * {@link TerminalProfile#getDefault() default profile} restricts it.
+     * @return the Control Sequence for this AnsiStyle
+     */
+    @Override
+    public String getSequence() {
+        return (TerminalProfile.getDefault().isUnrestricted() ? sequence : AnsiSequence.super.getSequence());
+    }
+
+    @Override
+    public String getSequence(boolean grouped) {
+        return (grouped == isGrouped && TerminalProfile.getDefault().isUnrestricted() ? sequence : AnsiSequence.super.getSequence(grouped));
+    }
+
+    @Override
+    public StringBuilder appendTo(StringBuilder out) {
+        return out.append(getSequence());
+    }
+
+    @Override
+    public <A extends Appendable> A appendTo(A out) throws IOException {
+        out.append(getSequence());
+        return out;
+    }
+
+    @Override
+    public String wrap(String input) {
+        if (!TerminalProfile.getDefault().isUnrestricted()) {
+            return AnsiSequence.super.wrap(input);
+        }
+        return appendWrapped(new StringBuilder(sequence.length() + input.length() + RESET_SEQUENCE.length()), input).toString();
+    }
+
+    @Override
+    public StringBuilder appendWrapped(StringBuilder out, CharSequence input) {
+        if (!TerminalProfile.getDefault().isUnrestricted()) {
+            return AnsiSequence.super.appendWrapped(out, input);
+        }
+        return out.append(sequence).append(input).append(RESET_SEQUENCE);
+    }
+
+    @Override
+    public <A extends Appendable> A appendWrapped(A out, CharSequence input) throws IOException {
+        if (!TerminalProfile.getDefault().isUnrestricted()) {
+            return AnsiSequence.super.appendWrapped(out, input);
+        }
+        out.append(sequence).append(input).append(RESET_SEQUENCE);
+        return out;
+    }
+
+    /**
+     * Returns a new, mutable Ansi object with the styles and arguments of this AnsiStyle.
+     * @return a new Ansi object
+     */
+    public Ansi toAnsi() {
+        return new Ansi(isGrouped).setState(styleMask, foreground, background);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof AnsiStyle)) {
+            return false;
+        }
+        AnsiStyle other = (AnsiStyle)obj;
+        return styleMask == other.styleMask
+            && foreground == other.foreground
+            && background == other.background
+            && isGrouped == other.isGrouped;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(styleMask);
+        result = 31 * result + foreground;
+        result = 31 * result + background;
+        result = 31 * result + (isGrouped ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() { return getSequence(); }
+
+    /**
+     * A weak reference to an interned style, which remembers its key so it can be removed once collected.
+     */
+    private static final class Interned extends WeakReference<AnsiStyle> {
+        final SequenceKey key;
+
+        Interned(SequenceKey key, AnsiStyle style) {
+            super(style, COLLECTED);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.witcraft.ansi;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lays out styled cells in aligned columns.
+ * <p>
+ * Column widths are measured in terminal columns with {@link AnsiText#displayWidth(CharSequence)}, so escape sequences,
+ * combining marks and wide characters are accounted for. Cells are padded with spaces, or cut to their column and
+ * ended with an ellipsis when too wide, and are copied straight into the output together with their escape sequences.
+ * A reset is added when a cut leaves a style in effect. Tabs take no columns, so cells that may contain them should be
+ * passed through {@link AnsiText#expandTabs(CharSequence, int)} first.
+ * <pre>{@code
+ * AnsiTable table = new AnsiTable().addColumn(Alignment.RIGHT).addColumn(Alignment.LEFT, 20);
+ * table.addRow("1", AnsiStyle.of(Style.GREEN).wrap("passed"));
+ * System.out.print(table.render());
+ * }</pre>
+ * Rows added with {@link #addRow(CharSequence...)} are kept until the table is rendered, and columns without a
+ * declared width are as wide as their widest cell. For tables too large to keep, {@link #stream(Appendable, int)}
+ * fixes the widths from a sample of the first rows and then writes every row as soon as it is added. An AnsiTable is
+ * not thread-safe.
+ */
+public final class AnsiTable {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * The alignment of cells narrower than their column.
+     */
+    public enum Alignment {
+        LEFT, RIGHT, CENTER
+    }
+
+    private final List<Alignment> alignments = new ArrayList<>();
+    private final List<Integer> declaredWidths = new ArrayList<>();
+    private final List<CharSequence[]> rows = new ArrayList<>();
+    private String separator = " ";
+    private String ellipsis = "\u2026";
+
+    /**
+     * Adds a left-aligned column as wide as its widest cell. Rows with more cells than there are columns add such
+     * columns implicitly.
+     *
+     * @return this AnsiTable for chaining
+     */
+    public AnsiTable addColumn() {
+        return addColumn(Alignment.LEFT);
+    }
+
+    /**
+     * Adds a column as wide as its widest cell.
+     *
+     * @param alignment the alignment of its cells
+     * @return this AnsiTable for chaining
+     */
+    public AnsiTable addColumn(Alignment alignment) {
+        alignments.add(alignment);
+        declaredWidths.add(0);
+        return this;
+    }
+
+    /**
+     * Adds a column {@code width} terminal columns wide. Wider cells are cut.
+     *
+     * @param alignment the alignment of its cells
+     * @param width     the width of the column
+     * @return this AnsiTable for chaining
+     */
+    public AnsiTable addColumn(Alignment alignment, int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("width must be positive: " + width);
+        }
+        alignments.add(alignment);
+        declaredWidths.add(width);
+        return this;
+    }
+
+    /**
+     * Sets the text written between columns, a single space by default.
+     *
+     * @param separator the column separator
+     * @return this AnsiTable for chaining
+     */
+    public AnsiTable setSeparator(String separator) {
+        this.separator = separator;
+        return this;
+    }
+
+    /**
+     * Sets the text that ends cells cut to fit their column, {@code "\u2026"} by default.
+     *
+     * @param ellipsis the ellipsis, or an empty String to cut cells without one
+     * @return this AnsiTable for chaining
+     */
+    public AnsiTable setEllipsis(String ellipsis) {
+        this.ellipsis = ellipsis;
+        return this;
+    }
+
+    /**
+     * Adds a row of cells, which may contain escape sequences. Missing cells are left empty.
+     *
+     * @param cells the cells of the row
+     * @return this AnsiTable for chaining
+     */
+    public AnsiTable addRow(CharSequence... cells) {
+        ensureColumns(cells.length);
+        rows.add(cells.clone());
+        return this;
+    }
+
+    /**
+     * Returns the number of rows added.
+     *
+     * @return the number of rows
+     */
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    /**
+     * Renders the rows added, each followed by a line separator.
+     *
+     * @return the rendered table
+     */
+    public String render() {
+        return appendTo(new StringBuilder()).toString();
+    }
+
+    /**
+     * Appends the rows added to {@code out}, each followed by a line separator.
+     *
+     * @param out the StringBuilder to append to
+     * @return {@code out}
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        int[] widths = measure(rows, rows.size());
+        for (CharSequence[] row : rows) {
+            appendRow(out, row, widths);
+        }
+        return out;
+    }
+
+    /**
+     * Writes the rows added to {@code out}, each followed by a line separator. Rows are rendered one at a time.
+     *
+     * @param out the Appendable to write to
+     * @param <A> the type of Appendable
+     * @return {@code out}
+     * @throws IOException if {@code out} fails
+     */
+    public <A extends Appendable> A appendTo(A out) throws IOException {
+        if (out instanceof StringBuilder) {
+            appendTo((StringBuilder)out);
+            return out;
+        }
+        int[] widths = measure(rows, rows.size());
+        StringBuilder line = new StringBuilder();
+        for (CharSequence[] row : rows) {
+            line.setLength(0);
+            out.append(appendRow(line, row, widths));
+        }
+        return out;
+    }
+
+    /**
+     * Returns a RowWriter that writes rows to {@code out} as they are added, without keeping them. Columns without a
+     * declared width are as wide as their widest cell among the first {@code sampleRows} rows, which are held until
+     * then, and add columns implicitly as {@link #addRow(CharSequence...)} does. Once the widths are fixed, cells of
+     * later rows are cut to fit, and cells beyond the last column are dropped. Rows added to this AnsiTable itself are
+     * not written.
+     *
+     * @param out        the Appendable to write to
+     * @param sampleRows the number of rows to measure, at least one if any column has no declared width
+     * @return a new RowWriter
+     * @throws IllegalArgumentException if {@code sampleRows} is less than one while a column has no declared width or
+     *                                  no column was added, since rows would then add columns that can't be measured
+     */
+    public RowWriter stream(Appendable out, int sampleRows) {
+        if (sampleRows < 1 && (declaredWidths.isEmpty() || declaredWidths.contains(0))) {
+            throw new IllegalArgumentException("sampleRows must be positive when a column has no declared width: " + sampleRows);
+        }
+        return new RowWriter(out, sampleRows);
+    }
+
+    private void ensureColumns(int count) {
+        while (alignments.size() < count) {
+            addColumn();
+        }
+    }
+
+    /**
+     * Returns the width of each column: the declared width, or the widest cell of the first {@code count} rows.
+     */
+    private int[] measure(List<CharSequence[]> sample, int count) {
+        int[] widths = new int[alignments.size()];
+        for (int column = 0; column < widths.length; column++) {
+            widths[column] = declaredWidths.get(column);
+        }
+        for (int index = 0; index < count; index++) {
+            CharSequence[] row = sample.get(index);
+            for (int column = 0; column < row.length; column++) {
+                if (declaredWidths.get(column) == 0 && row[column] != null) {
+                    widths[column] = Math.max(widths[column], AnsiText.displayWidth(row[column]));
+                }
+            }
+        }
+        return widths;
+    }
+
+    /**
+     * Appends a row laid out in {@code widths}, ignoring cells beyond the last column.
+     */
+    private StringBuilder appendRow(StringBuilder out, CharSequence[] cells, int[] widths) {
+        int lastColumn = widths.length - 1;
+        for (int column = 0; column <= lastColumn; column++) {
+            if (column > 0) {
+                out.append(separator);
+            }
+            CharSequence cell = (column < cells.length && cells[column] != null ? cells[column] : "");
+            int width = widths[column];
+            int cellWidth = AnsiText.displayWidth(cell);
+            int after;
+            if (cellWidth <= width) {
+                int padding = width - cellWidth;
+                Alignment alignment = alignments.get(column);
+                int before = (alignment == Alignment.RIGHT ? padding : alignment == Alignment.CENTER ? padding / 2 : 0);
+                appendSpaces(out, before);
+                out.append(cell);
+                after = padding - before;
+            } else {
+                after = width - AnsiText.appendTruncated(out, cell, width, ellipsis);
+            }
+            if (column < lastColumn) {
+                appendSpaces(out, after);
+            }
+        }
+        return out.append(LINE_SEPARATOR);
+    }
+
+    private static void appendSpaces(StringBuilder out, int count) {
+        for (int index = 0; index < count; index++) {
+            out.append(' ');
+        }
+    }
+
+    /**
+     * Writes the rows of a table as they are added. Closing a RowWriter writes any rows still held for measuring, but
+     * doesn't close the Appendable it writes to.
+     */
+    public final class RowWriter implements Flushable, Closeable {
+        private final Appendable out;
+        private final int sampleRows;
+        private final StringBuilder line = new StringBuilder();
+        private List<CharSequence[]> sample = new ArrayList<>();
+        private int[] widths;
+
+        private RowWriter(Appendable out, int sampleRows) {
+            this.out = out;
+            this.sampleRows = sampleRows;
+        }
+
+        /**
+         * Adds a row of cells, which may contain escape sequences, and writes it unless it is part of the sample. Once
+         * the widths are fixed, cells beyond the last column are dropped.
+         *
+         * @param cells the cells of the row
+         * @return this RowWriter for chaining
+         * @throws IOException if the Appendable fails
+         */
+        public RowWriter writeRow(CharSequence... cells) throws IOException {
+            if (widths != null) {
+                writeLine(cells);
+                return this;
+            }
+            ensureColumns(cells.length);
+            sample.add(cells.clone());
+            if (sample.size() >= sampleRows) {
+                flush();
+            }
+            return this;
+        }
+
+        /**
+         * Fixes the column widths if they aren't yet and writes any rows held for measuring.
+         *
+         * @throws IOException if the Appendable fails
+         */
+        @Override
+        public void flush() throws IOException {
+            if (widths == null) {
+                widths = measure(sample, sample.size());
+                for (CharSequence[] row : sample) {
+                    writeLine(row);
+                }
+                sample = null;
+            }
+            if (out instanceof Flushable) {
+                ((Flushable)out).flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        private void writeLine(CharSequence[] cells) throws IOException {
+            line.setLength(0);
+            out.append(appendRow(line, cells, widths));
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.witcraft.ansi;
+
+import com.witcraft.ansi.AnsiSequence.Style;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A text template with inline style markup, compiled once into a plan of precomputed escape segments and argument
+ * slots.
+ * <pre>{@code
+ * static final AnsiTemplate FAILED = AnsiTemplate.compile("[{red,bold}FAILED{/}] {msg}");
+ * String line = FAILED.render(message);
+ * }</pre>
+ * Markup is enclosed in braces:
+ * <ul>
+ *     <li>{@code {red,bold}} layers comma-separated styles over the current ones until the matching {@code {/}}. Names
+ *     are those of {@link Style}, in any case, with {@code -} for {@code _} and {@code bg-} for {@code BACKGROUND_}, so
+ *     {@code {bg-bright-blue}} is {@link Style#BACKGROUND_BRIGHT_BLUE}. {@code color(196)} and {@code bg(196)} select
+ *     palette colors, {@code color(#ff8800)} and {@code bg(#ff8800)} 24-bit colors.</li>
+ *     <li>{@code {/}} restores the styles in effect before the matching group.</li>
+ *     <li>{@code {name}} is an argument slot, filled with {@link String#valueOf(Object)} of its argument. Arguments are
+ *     numbered in order of the first appearance of their names. A name that is also a style name is a style.</li>
+ *     <li><code>{{</code> is a literal opening brace.</li>
+ * </ul>
+ * Only the transitions between consecutive styles are emitted, and rendered output always ends in the default state.
+ * Rendering is a sequence of array copies of the segments between argument values. Plans are rendered for each
+ * {@link TerminalProfile} in use and kept per profile, so templates rendered both as Strings and to encoders of other
+ * profiles compile once for each. AnsiTemplates are immutable and thread-safe, and {@link #compile(String)} caches
+ * them by source, evicting templates that haven't been compiled again recently once the cache is full.
+ */
+public final class AnsiTemplate {
+    private static final int MAX_CACHED = 512;
+    private static final int MAX_PLANS = 8;
+    private static final ConcurrentHashMap<String, AnsiTemplate> CACHE = new ConcurrentHashMap<>();
+    private static final String[] CLOCK = new String[MAX_CACHED];
+    private static final ReentrantLock CLOCK_LOCK = new ReentrantLock();
+    private static int clockSize;
+    private static int clockHand;
+
+    private final String source;
+    private final List<String> argumentNames;
+    private final ConcurrentHashMap<TerminalProfile, Plan> plans = new ConcurrentHashMap<>(4);
+    private volatile boolean referenced;
+
+    private AnsiTemplate(String source) {
+        this.source = source;
+        List<String> names = new ArrayList<>();
+        Plan plan = compile(source, TerminalProfile.getDefault(), names);
+        this.plans.put(plan.profile, plan);
+        this.argumentNames = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Returns the compiled template for {@code source}, from the cache when it was compiled before.
+     *
+     * @param source the template source
+     * @return the compiled template
+     * @throws IllegalArgumentException if {@code source} has malformed markup or unknown style names
+     */
+    public static AnsiTemplate compile(String source) {
+        AnsiTemplate template = CACHE.get(source);
+        if (template != null) {
+            if (!template.referenced) {
+                template.referenced = true;
+            }
+            return template;
+        }
+        template = new AnsiTemplate(source);
+        CLOCK_LOCK.lock();
+        try {
+            AnsiTemplate existing = CACHE.putIfAbsent(source, template);
+            if (existing != null) {
+                return existing;
+            }
+            CLOCK[nextSlot()] = source;
+        } finally {
+            CLOCK_LOCK.unlock();
+        }
+        return template;
+    }
+
+    /**
+     * Returns the clock slot for a new template, evicting the first unreferenced template when the cache is full, as
+     * {@link SequenceCache} does.
+     */
+    private static int nextSlot() {
+        if (clockSize < MAX_CACHED) {
+            return clockSize++;
+        }
+        while (true) {
+            int slot = clockHand;
+            clockHand = (clockHand + 1) % MAX_CACHED;
+            AnsiTemplate candidate = CACHE.get(CLOCK[slot]);
+            if (candidate != null && candidate.referenced) {
+                candidate.referenced = false;
+            } else {
+                CACHE.remove(CLOCK[slot]);
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Returns the source this template was compiled from.
+     *
+     * @return the template source
+     */
+    public String getSource() { return source; }
+
+    /**
+     * Returns the names of the argument slots, in the order their arguments are expected.
+     *
+     * @return the argument names
+     */
+    public List<String> getArgumentNames() { return argumentNames; }
+
+    /**
+     * Renders this template with positional arguments, as the {@link TerminalProfile#getDefault() default profile}
+     * supports its styles.
+     *
+     * @param arguments the arguments, in the order of {@link #getArgumentNames()}
+     * @return the rendered text
+     * @throws IllegalArgumentException if fewer arguments are given than there are names
+     */
+    public String render(Object... arguments) {
+        Plan plan = plan(TerminalProfile.getDefault());
+        return appendTo(new StringBuilder(plan.length + arguments.length * 16), arguments).toString();
+    }
+
+    /**
+     * Renders this template with named arguments. Missing names render as {@code "null"}.
+     *
+     * @param arguments the arguments, by name
+     * @return the rendered text
+     */
+    public String render(Map<String, ?> arguments) {
+        Object[] values = new Object[argumentNames.size()];
+        for (int index = 0; index < values.length; index++) {
+            values[index] = arguments.get(argumentNames.get(index));
+        }
+        return render(values);
+    }
+
+    /**
+     * Appends this template rendered with positional arguments to {@code out}.
+     *
+     * @param out       the StringBuilder to append to
+     * @param arguments the arguments, in the order of {@link #getArgumentNames()}
+     * @return {@code out}
+     * @throws IllegalArgumentException if fewer arguments are given than there are names
+     */
+    public StringBuilder appendTo(StringBuilder out, Object... arguments) {
+        checkArguments(arguments);
+        Plan plan = plan(TerminalProfile.getDefault());
+        char[][] segments = plan.chars;
+        int[] slots = plan.slots;
+        out.append(segments[0]);
+        for (int index = 0; index < slots.length; index++) {
+            out.append(arguments[slots[index]]).append(segments[index + 1]);
+        }
+        return out;
+    }
+
+    /**
+     * Writes this template rendered with positional arguments to {@code encoder}, as the
+     * {@link AnsiEncoder#getProfile() profile of the encoder} supports its styles.
+     *
+     * @param encoder   the encoder to write to
+     * @param arguments the arguments, in the order of {@link #getArgumentNames()}
+     * @return {@code encoder}
+     * @throws IOException if the underlying channel or stream fails
+     * @throws IllegalArgumentException if fewer arguments are given than there are names
+     */
+    public AnsiEncoder writeTo(AnsiEncoder encoder, Object... arguments) throws IOException {
+        checkArguments(arguments);
+        Plan plan = plan(encoder.getProfile());
+        byte[][] segments = plan.bytes;
+        int[] slots = plan.slots;
+        int[] escapeLengths = plan.escapeLengths;
+        int[] sequenceCounts = plan.sequenceCounts;
+        encoder.writeSegment(segments[0], escapeLengths[0], sequenceCounts[0]);
+        for (int index = 0; index < slots.length; index++) {
+            encoder.writeText(String.valueOf(arguments[slots[index]]));
+            encoder.writeSegment(segments[index + 1], escapeLengths[index + 1], sequenceCounts[index + 1]);
+        }
+        return encoder;
+    }
+
+    private void checkArguments(Object[] arguments) {
+        if (arguments.length < argumentNames.size()) {
+            throw new IllegalArgumentException("Expected " + argumentNames.size() + " arguments " + argumentNames + ", got " + arguments.length);
+        }
+    }
+
+    private Plan plan(TerminalProfile profile) {
+        Plan plan = plans.get(profile);
+        if (plan == null) {
+            plan = compile(source, profile, new ArrayList<>());
+            if (plans.size() < MAX_PLANS) {
+                Plan existing = plans.putIfAbsent(profile, plan);
+                if (existing != null) {
+                    plan = existing;
+                }
+            }
+        }
+        return plan;
+    }
+
+    @Override
+    public String toString() { return source; }
+
+    /**
+     * Parses {@code source} into the segments and slots rendered for {@code profile}, adding argument names to
+     * {@code names}.
+     */
+    private static Plan compile(String source, TerminalProfile profile, List<String> names) {
+        List<String> segments = new ArrayList<>();
+        List<int[]> escapes = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        StringBuilder segment = new StringBuilder();
+        int[] escape = new int[2];
+        long[] stack = new long[8];
+        int depth = 0;
+        long state = SgrState.DEFAULT;
+        long emitted = SgrState.DEFAULT;
+        int length = source.length();
+        int index = 0;
+        while (index < length) {
+            char c = source.charAt(index);
+            if (c != '{') {
+                int next = source.indexOf('{', index);
+                int end = (next < 0 ? length : next);
+                emitted = transition(segment, emitted, profile.adapt(state), escape);
+                segment.append(source, index, end);
+                index = end;
+                continue;
+            }
+            if (index + 1 < length && source.charAt(index + 1) == '{') {
+                emitted = transition(segment, emitted, profile.adapt(state), escape);
+                segment.append('{');
+                index += 2;
+                continue;
+            }
+            int close = source.indexOf('}', index + 1);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed '{' at index " + index + ": " + source);
+            }
+            String markup = source.substring(index + 1, close).trim();
+            if (markup.equals("/")) {
+                if (depth == 0) {
+                    throw new IllegalArgumentException("'{/}' without an open group at index " + index + ": " + source);
+                }
+                state = stack[--depth];
+            } else if (isArgumentName(markup) && styleOf(markup) == null) {
+                emitted = transition(segment, emitted, profile.adapt(state), escape);
+                int slot = names.indexOf(markup);
+                if (slot < 0) {
+                    slot = names.size();
+                    names.add(markup);
+                }
+                segments.add(segment.toString());
+                escapes.add(escape);
+                segment.setLength(0);
+                escape = new int[2];
+                slots.add(slot);
+            } else {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = state;
+                state = applyGroup(state, markup, index, source);
+            }
+            index = close + 1;
+        }
+        transition(segment, emitted, SgrState.DEFAULT, escape);
+        segments.add(segment.toString());
+        escapes.add(escape);
+
+        int count = segments.size();
+        char[][] chars = new char[count][];
+        byte[][] bytes = new byte[count][];
+        int[] escapeLengths = new int[count];
+        int[] sequenceCounts = new int[count];
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            chars[i] = segments.get(i).toCharArray();
+            bytes[i] = segments.get(i).getBytes(StandardCharsets.UTF_8);
+            escapeLengths[i] = escapes.get(i)[0];
+            sequenceCounts[i] = escapes.get(i)[1];
+            total += chars[i].length;
+        }
+        int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++) {
+            slotArray[i] = slots.get(i);
+        }
+        return new Plan(profile, chars, bytes, escapeLengths, sequenceCounts, slotArray, total);
+    }
+
+    /**
+     * Appends the transition between two states to {@code out}, adding its length and one sequence to
+     * {@code escape}, so that output written from the segment can be reported as escape bytes.
+     */
+    private static long transition(StringBuilder out, long from, long to, int[] escape) {
+        if (from != to) {
+            int start = out.length();
+            SgrState.appendTransition(out, from, to);
+            if (out.length() > start) {
+                escape[0] += out.length() - start;
+                escape[1]++;
+            }
+        }
+        return to;
+    }
+
+    private static boolean isArgumentName(String markup) {
+        if (markup.isEmpty() || !Character.isJavaIdentifierStart(markup.charAt(0))) {
+            return false;
+        }
+        for (int index = 1; index < markup.length(); index++) {
+            char c = markup.charAt(index);
+            if (!Character.isJavaIdentifierPart(c) && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long applyGroup(long state, String markup, int position, String source) {
+        for (String token : markup.split(",")) {
+            String name = token.trim();
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("color(") && lower.endsWith(")")) {
+                state = SgrState.withForeground(state, colorOf(name.substring(6, name.length() - 1), position, source));
+            } else if (lower.startsWith("bg(") && lower.endsWith(")")) {
+                state = SgrState.withBackground(state, colorOf(name.substring(3, name.length() - 1), position, source));
+            } else {
+                Style style = styleOf(name);
+                if (style == null) {
+                    throw new IllegalArgumentException("Unknown style '" + name + "' at index " + position + ": " + source);
+                }
+                state = SgrState.apply(state, AnsiStyle.of(style));
+            }
+        }
+        return state;
+    }
+
+    private static int colorOf(String argument, int position, String source) {
+        String value = argument.trim();
+        try {
+            if (value.startsWith("#") && value.length() == 7) {
+                return AnsiColor.rgb(Integer.parseInt(value.substring(1), 16));
+            }
+            return AnsiColor.indexed(Integer.parseInt(value));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid color '" + argument + "' at index " + position + ": " + source, ex);
+        }
+    }
+
+    /**
+     * Returns the style named by {@code name}, or {@code null}. Styles that take an argument can't be named.
+     */
+    private static Style styleOf(String name) {
+        String key = name.toUpperCase(Locale.ROOT).replace('-', '_');
+        if (key.startsWith("BG_")) {
+            key = "BACKGROUND_" + key.substring(3);
+        }
+        for (Style style : Style.VALUES) {
+            if (!style.expectsArgument() && style.name().equals(key)) {
+                return style;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The segments between argument slots, rendered for one profile, with the number of escape bytes and sequences in
+     * each.
+     */
+    private static final class Plan {
+        final TerminalProfile profile;
+        final char[][] chars;
+        final byte[][] bytes;
+        final int[] escapeLengths;
+        final int[] sequenceCounts;
+        final int[] slots;
+        final int length;
+
+        Plan(TerminalProfile profile, char[][] chars, byte[][] bytes, int[] escapeLengths, int[] sequenceCounts, int[] slots, int length) {
+            this.profile = profile;
+            this.chars = chars;
+            this.bytes = bytes;
+            this.escapeLengths = escapeLengths;
+            this.sequenceCounts = sequenceCounts;
+            this.slots = slots;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,983 @@
+package com.witcraft.ansi;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Styled text, built from fragments and rendered with the fewest Control Sequences needed.
+ * <p>
+ * The characters are held in a single array, and their styles in a parallel list of runs: the index where each run
+ * starts and the packed {@link SgrState} of its characters. Adjacent runs always differ, so rendering walks the runs
+ * once and emits only the {@link SgrState#appendTransition(StringBuilder, long, long) transition} between them, ending
+ * with a return to the default state. Styles can be nested with {@link #push(AnsiSequence)} and {@link #pop()}, and
+ * layered over any range with {@link #style(int, int, AnsiSequence)}. {@link #substring(int, int)},
+ * {@link #append(AnsiText)} and {@link #setLength(int)} work on the runs directly, without parsing escape sequences.
+ * <pre>{@code
+ * AnsiText line = new AnsiText()
+ *     .append(AnsiStyle.of(Style.BOLD), "Status: ")
+ *     .push(AnsiStyle.of(Style.GREEN)).append("ok").pop();
+ * System.out.println(line.render());
+ * }</pre>
+ * As a {@link CharSequence}, an AnsiText is its plain text. The static methods measure, wrap and truncate text that
+ * may contain ANSI escape sequences, which are never split. An AnsiText is not thread-safe.
+ */
+public final class AnsiText implements CharSequence, Appendable {
+    private static final ThreadLocal<Measure> MEASURES = ThreadLocal.withInitial(Measure::new);
+    private static final ThreadLocal<Truncate> TRUNCATES = ThreadLocal.withInitial(Truncate::new);
+    private static final ThreadLocal<Wrap> WRAPS = ThreadLocal.withInitial(Wrap::new);
+    private static final ThreadLocal<ExpandTabs> EXPANDS = ThreadLocal.withInitial(ExpandTabs::new);
+
+    private char[] chars;
+    private int length;
+    private int[] runStarts;
+    private long[] runStates;
+    private int runCount;
+    private long state = SgrState.DEFAULT;
+    private long[] stack = new long[4];
+    private int depth;
+
+    /**
+     * Creates an empty AnsiText.
+     */
+    public AnsiText() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty AnsiText with room for {@code capacity} characters.
+     *
+     * @param capacity the initial capacity
+     */
+    public AnsiText(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+        }
+        this.chars = new char[capacity];
+        this.runStarts = new int[4];
+        this.runStates = new long[4];
+    }
+
+    /**
+     * Returns an AnsiText holding the text of {@code input} styled by its SGR Control Sequences. Other escape sequences
+     * are dropped.
+     *
+     * @param input text that may contain ANSI escape sequences
+     * @return the styled text
+     */
+    public static AnsiText parse(CharSequence input) {
+        Parse parse = new Parse(new AnsiText(input.length()));
+        AnsiParser parser = new AnsiParser(parse);
+        parser.parse(input);
+        parser.finish();
+        return parse.text.setState(SgrState.DEFAULT);
+    }
+
+    /**
+     * Returns the packed state appended text is styled with.
+     *
+     * @return the current packed state
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Sets the packed state appended text is styled with. The nesting of {@link #push(AnsiSequence)} is not changed.
+     *
+     * @param state the packed state
+     * @return this AnsiText for chaining
+     */
+    public AnsiText setState(long state) {
+        this.state = state;
+        return this;
+    }
+
+    /**
+     * Styles text appended until the matching {@link #pop()} with {@code sequence}, layered on the current style.
+     *
+     * @param sequence the styles to add
+     * @return this AnsiText for chaining
+     */
+    public AnsiText push(AnsiSequence<?> sequence) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = state;
+        state = SgrState.apply(state, sequence);
+        return this;
+    }
+
+    /**
+     * Restores the style in effect before the matching {@link #push(AnsiSequence)}.
+     *
+     * @return this AnsiText for chaining
+     * @throws IllegalStateException if there is no matching push
+     */
+    public AnsiText pop() {
+        if (depth == 0) {
+            throw new IllegalStateException("pop() without a matching push()");
+        }
+        state = stack[--depth];
+        return this;
+    }
+
+    /**
+     * Appends {@code text} in the current style. The text must not contain escape sequences; use {@link #parse} for
+     * text that does.
+     *
+     * @param text the text to append
+     * @return this AnsiText for chaining
+     */
+    @Override
+    public AnsiText append(CharSequence text) {
+        if (text == null) {
+            text = "null";
+        }
+        return append(text, 0, text.length());
+    }
+
+    /**
+     * Appends the characters of {@code text} from {@code start} (inclusive) to {@code end} (exclusive) in the current
+     * style.
+     *
+     * @param text  the text to append
+     * @param start the index of the first character to append
+     * @param end   the index after the last character to append
+     * @return this AnsiText for chaining
+     */
+    @Override
+    public AnsiText append(CharSequence text, int start, int end) {
+        if (text == null) {
+            text = "null";
+        }
+        if (start < 0 || start > end || end > text.length()) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + text.length());
+        }
+        int count = end - start;
+        if (count == 0) {
+            return this;
+        }
+        ensureCapacity(length + count);
+        addRun(length, state);
+        if (text instanceof String) {
+            ((String)text).getChars(start, end, chars, length);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder)text).getChars(start, end, chars, length);
+        } else {
+            for (int index = start; index < end; index++) {
+                chars[length + index - start] = text.charAt(index);
+            }
+        }
+        length += count;
+        return this;
+    }
+
+    @Override
+    public AnsiText append(char c) {
+        ensureCapacity(length + 1);
+        addRun(length, state);
+        chars[length++] = c;
+        return this;
+    }
+
+    /**
+     * Appends {@code text} styled with {@code sequence} layered on the current style.
+     *
+     * @param sequence the styles to add
+     * @param text     the text to append
+     * @return this AnsiText for chaining
+     */
+    public AnsiText append(AnsiSequence<?> sequence, CharSequence text) {
+        return push(sequence).append(text).pop();
+    }
+
+    /**
+     * Appends the characters of {@code other} with their styles, which are not layered on the current style.
+     *
+     * @param other the styled text to append
+     * @return this AnsiText for chaining
+     */
+    public AnsiText append(AnsiText other) {
+        int otherLength = other.length;
+        int otherRuns = other.runCount;
+        ensureCapacity(length + otherLength);
+        for (int run = 0; run < otherRuns; run++) {
+            addRun(length + other.runStarts[run], other.runStates[run]);
+        }
+        System.arraycopy(other.chars, 0, chars, length, otherLength);
+        length += otherLength;
+        return this;
+    }
+
+    /**
+     * Layers {@code sequence} over the characters from {@code start} (inclusive) to {@code end} (exclusive). Ranges may
+     * overlap: each character ends up with every sequence applied to it, in the order they were applied.
+     *
+     * @param start    the index of the first character to style
+     * @param end      the index after the last character to style
+     * @param sequence the styles to add
+     * @return this AnsiText for chaining
+     */
+    public AnsiText style(int start, int end, AnsiSequence<?> sequence) {
+        checkRange(start, end);
+        if (start == end) {
+            return this;
+        }
+        int first = split(start);
+        int last = (end < length ? split(end) : runCount);
+        for (int run = first; run < last; run++) {
+            runStates[run] = SgrState.apply(runStates[run], sequence);
+        }
+        mergeRuns();
+        return this;
+    }
+
+    /**
+     * Returns the packed state of the character at {@code index}.
+     *
+     * @param index the index of the character
+     * @return the packed state
+     */
+    public long getState(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return runStates[runIndex(index)];
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return chars[index];
+    }
+
+    /**
+     * Returns the styled text from {@code start} (inclusive) to {@code end} (exclusive).
+     *
+     * @see #substring(int, int)
+     */
+    @Override
+    public AnsiText subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    /**
+     * Returns a new AnsiText with the characters from {@code start} (inclusive) to {@code end} (exclusive) and their
+     * styles.
+     *
+     * @param start the index of the first character
+     * @param end   the index after the last character
+     * @return the styled substring
+     */
+    public AnsiText substring(int start, int end) {
+        checkRange(start, end);
+        AnsiText result = new AnsiText(end - start);
+        if (start < end) {
+            for (int run = runIndex(start); run < runCount && runStarts[run] < end; run++) {
+                result.addRun(Math.max(runStarts[run], start) - start, runStates[run]);
+            }
+            System.arraycopy(chars, start, result.chars, 0, end - start);
+            result.length = end - start;
+        }
+        return result;
+    }
+
+    /**
+     * Truncates this AnsiText to {@code newLength} characters, keeping the styles of the remaining characters.
+     *
+     * @param newLength the new length, at most {@link #length()}
+     * @return this AnsiText for chaining
+     */
+    public AnsiText setLength(int newLength) {
+        if (newLength < 0 || newLength > length) {
+            throw new IndexOutOfBoundsException("newLength " + newLength + ", length " + length);
+        }
+        length = newLength;
+        runCount = (newLength == 0 ? 0 : runIndex(newLength - 1) + 1);
+        return this;
+    }
+
+    /**
+     * Returns the number of terminal columns taken by this text.
+     *
+     * @return the display width
+     * @see #displayWidth(CharSequence)
+     */
+    public int displayWidth() {
+        Measure measure = MEASURES.get().start();
+        measure.text(this, 0, length);
+        return measure.width;
+    }
+
+    /**
+     * Returns the number of style runs: the number of times the style changes along the text, plus one.
+     */
+    int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * Renders this text with its Control Sequences, as the {@link TerminalProfile#getDefault() default profile}
+     * supports them.
+     *
+     * @return the rendered text
+     */
+    public String render() {
+        return appendTo(new StringBuilder(length + runCount * 12)).toString();
+    }
+
+    /**
+     * Appends this text with its Control Sequences to {@code out}.
+     *
+     * @param out the StringBuilder to append to
+     * @return {@code out}
+     * @see #render()
+     */
+    public StringBuilder appendTo(StringBuilder out) {
+        TerminalProfile profile = TerminalProfile.getDefault();
+        long terminal = SgrState.DEFAULT;
+        for (int run = 0; run < runCount; run++) {
+            long target = profile.adapt(runStates[run]);
+            if (target != terminal) {
+                SgrState.appendTransition(out, terminal, target);
+                terminal = target;
+            }
+            out.append(chars, runStarts[run], runEnd(run) - runStarts[run]);
+        }
+        if (terminal != SgrState.DEFAULT) {
+            SgrState.appendTransition(out, terminal, SgrState.DEFAULT);
+        }
+        return out;
+    }
+
+    /**
+     * Appends this text with its Control Sequences to {@code out}.
+     *
+     * @param out the Appendable to append to
+     * @param <A> the type of Appendable
+     * @return {@code out}
+     * @throws IOException if {@code out} fails
+     * @see #render()
+     */
+    public <A extends Appendable> A appendTo(A out) throws IOException {
+        if (out instanceof StringBuilder) {
+            appendTo((StringBuilder)out);
+            return out;
+        }
+        TerminalProfile profile = TerminalProfile.getDefault();
+        CharBuffer view = CharBuffer.wrap(chars, 0, length);
+        long terminal = SgrState.DEFAULT;
+        for (int run = 0; run < runCount; run++) {
+            long target = profile.adapt(runStates[run]);
+            if (target != terminal) {
+                SgrState.appendTransition(out, terminal, target);
+                terminal = target;
+            }
+            out.append(view, runStarts[run], runEnd(run));
+        }
+        if (terminal != SgrState.DEFAULT) {
+            SgrState.appendTransition(out, terminal, SgrState.DEFAULT);
+        }
+        return out;
+    }
+
+    /**
+     * Writes this text with its Control Sequences to {@code encoder}, as the
+     * {@link AnsiEncoder#getProfile() profile of the encoder} supports them.
+     *
+     * @param encoder the encoder to write to
+     * @return {@code encoder}
+     * @throws IOException if the underlying channel or stream fails
+     */
+    public AnsiEncoder writeTo(AnsiEncoder encoder) throws IOException {
+        TerminalProfile profile = encoder.getProfile();
+        long terminal = SgrState.DEFAULT;
+        for (int run = 0; run <= runCount; run++) {
+            long target = (run < runCount ? profile.adapt(runStates[run]) : SgrState.DEFAULT);
+            if (target != terminal) {
+                encoder.writeTransition(terminal, target);
+                terminal = target;
+            }
+            if (run < runCount) {
+                encoder.writeText(this, runStarts[run], runEnd(run));
+            }
+        }
+        return encoder;
+    }
+
+    /**
+     * Returns the plain text, without styles.
+     *
+     * @return the plain text
+     * @see #render()
+     */
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    private int runEnd(int run) {
+        return (run + 1 < runCount ? runStarts[run + 1] : length);
+    }
+
+    private int runIndex(int index) {
+        int found = Arrays.binarySearch(runStarts, 0, runCount, index);
+        return (found >= 0 ? found : -found - 2);
+    }
+
+    /**
+     * Starts a run of {@code state} at {@code start}, the current length, unless the last run already has that state.
+     */
+    private void addRun(int start, long state) {
+        if (runCount > 0 && runStates[runCount - 1] == state) {
+            return;
+        }
+        if (runCount == runStarts.length) {
+            runStarts = Arrays.copyOf(runStarts, runCount * 2);
+            runStates = Arrays.copyOf(runStates, runCount * 2);
+        }
+        runStarts[runCount] = start;
+        runStates[runCount] = state;
+        runCount++;
+    }
+
+    /**
+     * Makes a run start at {@code index}, which must be less than the length, splitting the run containing it.
+     *
+     * @return the index of the run starting at {@code index}
+     */
+    private int split(int index) {
+        int run = runIndex(index);
+        if (runStarts[run] == index) {
+            return run;
+        }
+        if (runCount == runStarts.length) {
+            runStarts = Arrays.copyOf(runStarts, runCount * 2);
+            runStates = Arrays.copyOf(runStates, runCount * 2);
+        }
+        System.arraycopy(runStarts, run + 1, runStarts, run + 2, runCount - run - 1);
+        System.arraycopy(runStates, run + 1, runStates, run + 2, runCount - run - 1);
+        runStarts[run + 1] = index;
+        runStates[run + 1] = runStates[run];
+        runCount++;
+        return run + 1;
+    }
+
+    private void mergeRuns() {
+        int count = 0;
+        for (int run = 0; run < runCount; run++) {
+            if (count > 0 && runStates[count - 1] == runStates[run]) {
+                continue;
+            }
+            runStarts[count] = runStarts[run];
+            runStates[count] = runStates[run];
+            count++;
+        }
+        runCount = count;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2 + 2));
+        }
+    }
+
+    private void checkRange(int start, int end) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+    }
+
+    /**
+     * Returns the number of terminal columns taken by {@code text}, ignoring escape sequences. Tabs, like other
+     * controls, take no columns, since their width depends on where they are written; see
+     * {@link #expandTabs(CharSequence, int)}.
+     *
+     * @param text the text to measure
+     * @return the display width
+     * @see #displayWidth(int)
+     */
+    public static int displayWidth(CharSequence text) {
+        return displayWidth(text, 0, text.length());
+    }
+
+    /**
+     * Returns the number of terminal columns taken by {@code text} from {@code start} (inclusive) to {@code end}
+     * (exclusive), ignoring escape sequences.
+     *
+     * @param text  the text to measure
+     * @param start the index of the first character to measure
+     * @param end   the index after the last character to measure
+     * @return the display width
+     * @see #displayWidth(int)
+     */
+    public static int displayWidth(CharSequence text, int start, int end) {
+        Measure measure = MEASURES.get().start();
+        if (indexOfEscape(text, start, end) < 0) {
+            measure.text(text, start, end);
+        } else {
+            measure.parser.parse(text, start, end);
+            measure.parser.finish();
+        }
+        return measure.width;
+    }
+
+    /**
+     * Returns the number of terminal columns taken by {@code codePoint}: 0 for combining marks, format characters and
+     * controls, 2 for East Asian Wide and Fullwidth characters and emoji, and 1 otherwise. Within text, a code point
+     * following ZERO WIDTH JOINER is part of the same glyph and takes no further columns.
+     *
+     * @param codePoint the code point to measure
+     * @return 0, 1 or 2
+     */
+    public static int displayWidth(int codePoint) {
+        return CharWidth.of(codePoint);
+    }
+
+    /**
+     * Returns {@code text} cut to fit in {@code width} terminal columns together with {@code ellipsis}, if it is wider.
+     * Escape sequences before the cut are kept, those after it are dropped, and a reset is added if the cut leaves a
+     * style in effect. Text that fits is returned as is. Tabs take no columns, so text that may contain them should be
+     * passed through {@link #expandTabs(CharSequence, int)} first.
+     *
+     * @param text     a single line of text that may contain ANSI escape sequences
+     * @param width    the number of columns to fit in
+     * @param ellipsis the text that ends cut text, or an empty String; it is dropped if it doesn't fit either
+     * @return the truncated text
+     * @throws IllegalArgumentException if {@code width} is negative
+     */
+    public static String truncate(CharSequence text, int width, String ellipsis) {
+        if (width < 0) {
+            throw new IllegalArgumentException("width must not be negative: " + width);
+        }
+        if (displayWidth(text) <= width) {
+            return text.toString();
+        }
+        StringBuilder out = new StringBuilder(text.length() + ellipsis.length() + 4);
+        appendTruncated(out, text, width, ellipsis);
+        return out.toString();
+    }
+
+    /**
+     * Returns {@code text} broken into lines of at most {@code width} terminal columns.
+     *
+     * @param text  text that may contain ANSI escape sequences
+     * @param width the number of columns per line
+     * @return the wrapped text
+     * @throws IllegalArgumentException if {@code width} is not positive
+     * @see #appendWrapped(StringBuilder, CharSequence, int)
+     */
+    public static String wrap(CharSequence text, int width) {
+        return appendWrapped(new StringBuilder(text.length() + text.length() / Math.max(width, 1) + 16), text, width)
+            .toString();
+    }
+
+    /**
+     * Appends {@code text} to {@code out}, broken into lines of at most {@code width} terminal columns, in a single
+     * pass.
+     * <p>
+     * A line break is inserted before the character that would overflow a line, so escape sequences, surrogate pairs
+     * and zero-width characters are never split from the text before them; a character wider than {@code width} gets
+     * a line of its own. Line breaks already in {@code text} start a new line as well. Every line ends in the default
+     * state: where a style is in effect across a break, a reset is appended before it, and the next line starts with
+     * the Control Sequence for the active state, rendered from its {@link SgrState}. SGR sequences that come right
+     * before a break are not copied to the end of the line, since the next line starts in their state anyway. Tabs
+     * take no columns, so text that may contain them should be passed through {@link #expandTabs(CharSequence, int)}
+     * first.
+     *
+     * @param out   the StringBuilder to append to
+     * @param text  text that may contain ANSI escape sequences
+     * @param width the number of columns per line
+     * @return {@code out}
+     * @throws IllegalArgumentException if {@code width} is not positive
+     */
+    public static StringBuilder appendWrapped(StringBuilder out, CharSequence text, int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("width must be positive: " + width);
+        }
+        Wrap wrap = WRAPS.get().start(out, width);
+        try {
+            wrap.parser.parse(text);
+            wrap.parser.finish();
+            wrap.flush();
+        } finally {
+            wrap.out = null;
+        }
+        return out;
+    }
+
+    /**
+     * Returns {@code text} with each tab replaced by the spaces up to the next tab stop. Columns are counted from the
+     * start of each line with {@link #displayWidth(int)}, ignoring escape sequences, which are kept. Text without tabs
+     * is returned as is.
+     *
+     * @param text     text that may contain ANSI escape sequences
+     * @param tabWidth the distance between tab stops, such as 8
+     * @return the text without tabs
+     * @throws IllegalArgumentException if {@code tabWidth} is not positive
+     */
+    public static String expandTabs(CharSequence text, int tabWidth) {
+        if (tabWidth <= 0) {
+            throw new IllegalArgumentException("tabWidth must be positive: " + tabWidth);
+        }
+        String string = text.toString();
+        if (string.indexOf('\t') < 0) {
+            return string;
+        }
+        StringBuilder out = new StringBuilder(string.length() + tabWidth * 2);
+        ExpandTabs expand = EXPANDS.get().start(out, tabWidth);
+        try {
+            expand.parser.parse(string);
+            expand.parser.finish();
+        } finally {
+            expand.out = null;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Appends as much of {@code text} to {@code out} as fits in {@code width} columns, keeping its escape sequences. If
+     * {@code text} is wider, it is cut so that it fits together with {@code ellipsis}, which is appended after it, and
+     * a reset is appended if the cut left a style in effect.
+     *
+     * @return the number of columns appended
+     */
+    static int appendTruncated(StringBuilder out, CharSequence text, int width, String ellipsis) {
+        int textWidth = displayWidth(text);
+        if (textWidth <= width) {
+            out.append(text);
+            return textWidth;
+        }
+        int ellipsisWidth = displayWidth(ellipsis);
+        if (ellipsisWidth > width) {
+            ellipsis = "";
+            ellipsisWidth = 0;
+        }
+        Truncate truncate = TRUNCATES.get().start(out, width - ellipsisWidth);
+        int length = text.length();
+        if (indexOfEscape(text, 0, length) < 0) {
+            truncate.text(text, 0, length);
+        } else {
+            truncate.parser.parse(text, 0, length);
+            truncate.parser.finish();
+        }
+        out.append(ellipsis);
+        if (truncate.state != SgrState.DEFAULT) {
+            out.append(AnsiSequence.CSI_START).append('0').append(AnsiSequence.CSI_END);
+        }
+        int appended = truncate.width + ellipsisWidth;
+        truncate.out = null;
+        return appended;
+    }
+
+    private static int indexOfEscape(CharSequence text, int start, int end) {
+        if (text instanceof String) {
+            int index = ((String)text).indexOf(0x1B, start);
+            return (index < end ? index : -1);
+        }
+        for (int index = start; index < end; index++) {
+            if (text.charAt(index) == 0x1B) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Collects the text reported by a parser, styled by the SGR Control Sequences around it.
+     */
+    private static final class Parse implements AnsiParser.Handler {
+        private final AnsiText text;
+
+        Parse(AnsiText text) {
+            this.text = text;
+        }
+
+        @Override
+        public void text(CharSequence input, int start, int end) {
+            text.append(input, start, end);
+        }
+
+        @Override
+        public void controlSequence(AnsiParser parser) {
+            if (parser.isSelectGraphicRendition()) {
+                text.state = parser.applyTo(text.state);
+            }
+        }
+    }
+
+    /**
+     * Copies the text runs and escape sequences reported by a parser until the text reaches a width limit.
+     */
+    private static final class Truncate implements AnsiParser.Handler {
+        private final AnsiParser parser = new AnsiParser(this);
+        private StringBuilder out;
+        private int limit;
+        private int width;
+        private boolean joined;
+        private boolean cut;
+        private long state;
+
+        Truncate start(StringBuilder out, int limit) {
+            this.out = out;
+            this.limit = limit;
+            width = 0;
+            joined = false;
+            cut = false;
+            state = SgrState.DEFAULT;
+            return this;
+        }
+
+        @Override
+        public void text(CharSequence input, int start, int end) {
+            for (int index = start; index < end && !cut; ) {
+                int codePoint = Character.codePointAt(input, index);
+                int next = index + Character.charCount(codePoint);
+                int codePointWidth = (joined ? 0 : CharWidth.of(codePoint));
+                if (width + codePointWidth > limit) {
+                    cut = true;
+                    return;
+                }
+                out.append(input, index, Math.min(next, end));
+                width += codePointWidth;
+                joined = (codePoint == 0x200D);
+                index = next;
+            }
+        }
+
+        @Override
+        public void controlSequence(AnsiParser parser) {
+            if (!cut) {
+                parser.appendSequenceTo(out);
+                if (parser.isSelectGraphicRendition()) {
+                    state = parser.applyTo(state);
+                }
+            }
+        }
+
+        @Override
+        public void escapeSequence(AnsiParser parser) {
+            if (!cut) {
+                parser.appendSequenceTo(out);
+            }
+        }
+
+        @Override
+        public void operatingSystemCommand(AnsiParser parser) {
+            if (!cut) {
+                parser.appendSequenceTo(out);
+            }
+        }
+    }
+
+    /**
+     * Copies the text runs and escape sequences reported by a parser, breaking lines that reach a width limit. SGR
+     * sequences are held back until text follows them on the same line.
+     */
+    private static final class Wrap implements AnsiParser.Handler {
+        private final AnsiParser parser = new AnsiParser(this);
+        private final StringBuilder pending = new StringBuilder();
+        private StringBuilder out;
+        private int limit;
+        private int column;
+        private boolean joined;
+        private long state;
+        private long written;
+
+        Wrap start(StringBuilder out, int limit) {
+            this.out = out;
+            this.limit = limit;
+            pending.setLength(0);
+            column = 0;
+            joined = false;
+            state = SgrState.DEFAULT;
+            written = SgrState.DEFAULT;
+            return this;
+        }
+
+        @Override
+        public void text(CharSequence input, int start, int end) {
+            int copied = start;
+            for (int index = start; index < end; ) {
+                int codePoint = Character.codePointAt(input, index);
+                int next = Math.min(index + Character.charCount(codePoint), end);
+                if (codePoint == '\n') {
+                    out.append(input, copied, index);
+                    breakLine();
+                    copied = next;
+                } else {
+                    int codePointWidth = (joined ? 0 : CharWidth.of(codePoint));
+                    if (codePointWidth > 0 && column > 0 && column + codePointWidth > limit) {
+                        out.append(input, copied, index);
+                        breakLine();
+                        copied = index;
+                    } else if (index == start) {
+                        flush();
+                    }
+                    column += codePointWidth;
+                    joined = (codePoint == 0x200D);
+                }
+                index = next;
+            }
+            out.append(input, copied, end);
+        }
+
+        @Override
+        public void controlSequence(AnsiParser parser) {
+            if (parser.isSelectGraphicRendition()) {
+                parser.appendSequenceTo(pending);
+                state = parser.applyTo(state);
+            } else {
+                flush();
+                parser.appendSequenceTo(out);
+            }
+        }
+
+        @Override
+        public void escapeSequence(AnsiParser parser) {
+            flush();
+            parser.appendSequenceTo(out);
+        }
+
+        @Override
+        public void operatingSystemCommand(AnsiParser parser) {
+            flush();
+            parser.appendSequenceTo(out);
+        }
+
+        /**
+         * Copies the SGR sequences held back, now that the line continues after them.
+         */
+        void flush() {
+            if (pending.length() > 0) {
+                out.append(pending);
+                pending.setLength(0);
+                written = state;
+            }
+        }
+
+        /**
+         * Ends the line in the default state and starts the next one in the active state, dropping the SGR sequences
+         * held back.
+         */
+        private void breakLine() {
+            if (written != SgrState.DEFAULT) {
+                SgrState.appendTransition(out, written, SgrState.DEFAULT);
+            }
+            out.append('\n');
+            pending.setLength(0);
+            if (state != SgrState.DEFAULT) {
+                SgrState.appendTransition(out, SgrState.DEFAULT, state);
+            }
+            written = state;
+            column = 0;
+            joined = false;
+        }
+    }
+
+    /**
+     * Copies the text runs and escape sequences reported by a parser, replacing tabs with spaces up to the next tab
+     * stop.
+     */
+    private static final class ExpandTabs implements AnsiParser.Handler {
+        private final AnsiParser parser = new AnsiParser(this);
+        private StringBuilder out;
+        private int tabWidth;
+        private int column;
+        private boolean joined;
+
+        ExpandTabs start(StringBuilder out, int tabWidth) {
+            this.out = out;
+            this.tabWidth = tabWidth;
+            column = 0;
+            joined = false;
+            return this;
+        }
+
+        @Override
+        public void text(CharSequence input, int start, int end) {
+            int copied = start;
+            for (int index = start; index < end; ) {
+                int codePoint = Character.codePointAt(input, index);
+                int next = Math.min(index + Character.charCount(codePoint), end);
+                if (codePoint == '\t') {
+                    out.append(input, copied, index);
+                    int spaces = tabWidth - column % tabWidth;
+                    for (int space = 0; space < spaces; space++) {
+                        out.append(' ');
+                    }
+                    column += spaces;
+                    copied = next;
+                } else if (codePoint == '\n' || codePoint == '\r') {
+                    column = 0;
+                } else if (!joined) {
+                    column += CharWidth.of(codePoint);
+                }
+                joined = (codePoint == 0x200D);
+                index = next;
+            }
+            out.append(input, copied, end);
+        }
+
+        @Override
+        public void controlSequence(AnsiParser parser) {
+            parser.appendSequenceTo(out);
+        }
+
+        @Override
+        public void escapeSequence(AnsiParser parser) {
+            parser.appendSequenceTo(out);
+        }
+
+        @Override
+        public void operatingSystemCommand(AnsiParser parser) {
+            parser.appendSequenceTo(out);
+        }
+    }
+
+    /**
+     * Adds up the widths of the text runs reported by a parser.
+     */
+    private static final class Measure implements AnsiParser.Handler {
+        private final AnsiParser parser = new AnsiParser(this);
+        private int width;
+        private boolean joined;
+
+        Measure start() {
+            width = 0;
+            joined = false;
+            return this;
+        }
+
+        @Override
+        public void text(CharSequence input, int start, int end) {
+            int total = width;
+            boolean join = joined;
+            for (int index = start; index < end; index++) {
+                int codePoint = input.charAt(index);
+                if (codePoint >= 0x20 && codePoint < 0x7F) {
+                    total++;
+                    join = false;
+                    continue;
+                }
+                if (Character.isHighSurrogate((char)codePoint) && index + 1 < end && Character.isLowSurrogate(input.charAt(index + 1))) {
+                    codePoint = Character.toCodePoint((char)codePoint, input.charAt(++index));
+                }
+                if (!join) {
+                    total += CharWidth.of(codePoint);
+                }
+                join = (codePoint == 0x200D);
+            }
+            width = total;
+            joined = join;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.witcraft.ansi;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A Writer that tracks the graphic rendition state of the terminal it writes to, and changes it with the shortest
+ * Control Sequence possible.
+ * <p>
+ * Styles are applied with {@link #apply(AnsiSequence)} rather than written as text. Only the parameters that differ
+ * from the current state are emitted, or a reset followed by the new state when that is shorter, and nothing at all
+ * when the state doesn't change. Text written through the {@code write} methods is passed through unchanged and must
+ * not contain SGR Control Sequences of its own, or the tracked state will no longer match the terminal.
+ * <p>
+ * {@link #close()} resets the terminal before closing the underlying Writer. An AnsiWriter is not thread-safe.
+ */
+public class AnsiWriter extends FilterWriter {
+    private long state = SgrState.DEFAULT;
+    private final StringBuilder transition = new StringBuilder(64);
+    private char[] transitionChars = new char[64];
+    private TerminalProfile profile;
+
+    /**
+     * Creates an AnsiWriter that assumes the terminal starts in its {@link SgrState#DEFAULT default} state.
+     *
+     * @param out the Writer to write to
+     */
+    public AnsiWriter(Writer out) {
+        super(out);
+    }
+
+    /**
+     * Returns the profile states are adapted to: the one set with {@link #setProfile(TerminalProfile)}, or else the
+     * {@link TerminalProfile#getDefault() default profile}.
+     *
+     * @return the profile of this AnsiWriter
+     */
+    public TerminalProfile getProfile() {
+        return (profile != null ? profile : TerminalProfile.getDefault());
+    }
+
+    /**
+     * Sets the profile states are adapted to, such as {@link TerminalProfile#NONE} for a log file, or {@code null} to
+     * follow the {@link TerminalProfile#getDefault() default profile}.
+     *
+     * @param profile the profile of this AnsiWriter, or {@code null}
+     * @return this AnsiWriter for chaining
+     */
+    public AnsiWriter setProfile(TerminalProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    /**
+     * Returns the packed {@link SgrState} the terminal is in.
+     *
+     * @return the current packed state
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Changes the terminal to the state set by the Control Sequence of {@code sequence} after a reset.
+     *
+     * @param sequence the styles to apply
+     * @return this AnsiWriter for chaining
+     * @throws IOException if an I/O error occurs
+     */
+    public AnsiWriter apply(AnsiSequence<?> sequence) throws IOException {
+        if (!getProfile().isEnabled()) {
+            return this;
+        }
+        return apply(SgrState.of(sequence));
+    }
+
+    /**
+     * Changes the terminal to the packed {@link SgrState} {@code newState}, as the {@link #getProfile() profile}
+     * supports it.
+     *
+     * @param newState the packed state to apply
+     * @return this AnsiWriter for chaining
+     * @throws IOException if an I/O error occurs
+     */
+    public AnsiWriter apply(long newState) throws IOException {
+        newState = getProfile().adapt(newState);
+        if (newState != state) {
+            transition.setLength(0);
+            SgrState.appendTransition(transition, state, newState);
+            int length = transition.length();
+            if (transitionChars.length < length) {
+                transitionChars = new char[Math.max(length, transitionChars.length * 2)];
+            }
+            transition.getChars(0, length, transitionChars, 0);
+            out.write(transitionChars, 0, length);
+            state = newState;
+            AnsiMetrics.sequenceWritten(length);
+        } else {
+            AnsiMetrics.add(AnsiMetrics.Counter.TRANSITIONS_ELIDED, 1);
+        }
+        return this;
+    }
+
+    /**
+     * Changes the terminal to its {@link SgrState#DEFAULT default} state.
+     *
+     * @return this AnsiWriter for chaining
+     * @throws IOException if an I/O error occurs
+     */
+    public AnsiWriter reset() throws IOException {
+        return apply(SgrState.DEFAULT);
+    }
+
+    /**
+     * Applies {@code sequence} and writes {@code text}, leaving the terminal in the applied state.
+     *
+     * @param sequence the styles to apply
+     * @param text     the text to write
+     * @return this AnsiWriter for chaining
+     * @throws IOException if an I/O error occurs
+     */
+    public AnsiWriter writeStyled(AnsiSequence<?> sequence, CharSequence text) throws IOException {
+        apply(sequence);
+        append(text);
+        return this;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        out.write(c);
+        AnsiMetrics.add(AnsiMetrics.Counter.PAYLOAD_BYTES, 1);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        out.write(cbuf, off, len);
+        AnsiMetrics.add(AnsiMetrics.Counter.PAYLOAD_BYTES, len);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        out.write(str, off, len);
+        AnsiMetrics.add(AnsiMetrics.Counter.PAYLOAD_BYTES, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        long start = AnsiMetrics.flushStarted();
+        out.flush();
+        AnsiMetrics.flushed(start, 0L);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reset();
+        } finally {
+            super.close();
+        }
+    }
+}
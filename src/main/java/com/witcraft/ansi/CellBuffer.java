@@ -0,0 +1,222 @@
+package com.witcraft.ansi;
+
+import java.util.Arrays;
+
+/**
+ * A grid of terminal cells, each holding a code point and a packed {@link SgrState}.
+ * <p>
+ * Cells are stored row by row in two parallel primitive arrays, so a buffer of any size is three objects. A wide
+ * character takes two cells: the first holds its code point and the second holds {@link #CONTINUATION}. Overwriting
+ * either half of a wide character blanks the other half. Characters that take no columns, such as combining marks,
+ * are not stored.
+ * <p>
+ * A CellBuffer is not thread-safe.
+ */
+public final class CellBuffer {
+    /**
+     * The code point of the second cell of a wide character.
+     */
+    public static final int CONTINUATION = -1;
+
+    /**
+     * The code point of an empty cell.
+     */
+    public static final int BLANK = ' ';
+
+    private final int width;
+    private final int height;
+    final int[] codePoints;
+    final long[] states;
+
+    /**
+     * Creates a buffer of blank cells in the {@link SgrState#DEFAULT default} state.
+     *
+     * @param width  the number of columns
+     * @param height the number of rows
+     * @throws IllegalArgumentException if {@code width} or {@code height} is negative
+     */
+    public CellBuffer(int width, int height) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException(String.format("Invalid size %dx%d", width, height));
+        }
+        this.width = width;
+        this.height = height;
+        this.codePoints = new int[width * height];
+        this.states = new long[width * height];
+        Arrays.fill(codePoints, BLANK);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the code point in a cell.
+     *
+     * @param x the column, from 0
+     * @param y the row, from 0
+     * @return the code point, or {@link #CONTINUATION} for the second cell of a wide character
+     * @throws IndexOutOfBoundsException if the cell is outside the buffer
+     */
+    public int getCodePoint(int x, int y) {
+        return codePoints[indexOf(x, y)];
+    }
+
+    /**
+     * Returns the packed {@link SgrState} of a cell.
+     *
+     * @param x the column, from 0
+     * @param y the row, from 0
+     * @return the packed state
+     * @throws IndexOutOfBoundsException if the cell is outside the buffer
+     */
+    public long getState(int x, int y) {
+        return states[indexOf(x, y)];
+    }
+
+    /**
+     * Sets a cell. A wide code point also takes the next cell, and is replaced by a blank if it doesn't fit in the
+     * row.
+     *
+     * @param x         the column, from 0
+     * @param y         the row, from 0
+     * @param codePoint the code point to set
+     * @param state     the packed {@link SgrState} to set
+     * @return the number of columns taken
+     * @throws IndexOutOfBoundsException if the cell is outside the buffer
+     */
+    public int set(int x, int y, int codePoint, long state) {
+        int index = indexOf(x, y);
+        int columns = CharWidth.of(codePoint);
+        if (columns == 0) {
+            return 0;
+        }
+        if (columns == 2 && x + 1 >= width) {
+            codePoint = BLANK;
+            columns = 1;
+        }
+        clearWide(index, x);
+        codePoints[index] = codePoint;
+        states[index] = state;
+        if (columns == 2) {
+            clearWide(index + 1, x + 1);
+            codePoints[index + 1] = CONTINUATION;
+            states[index + 1] = state;
+        }
+        return columns;
+    }
+
+    /**
+     * Writes {@code text} from a cell onwards, clipped to the end of the row. Characters that take no columns are
+     * skipped; the text must not contain escape sequences.
+     *
+     * @param x     the column to start at, from 0
+     * @param y     the row, from 0
+     * @param text  the text to write
+     * @param state the packed {@link SgrState} to write the text in
+     * @return the column after the last one written
+     * @throws IndexOutOfBoundsException if the row is outside the buffer
+     */
+    public int print(int x, int y, CharSequence text, long state) {
+        if (y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException(String.format("Row %d outside of %dx%d", y, width, height));
+        }
+        int length = text.length();
+        for (int index = 0; index < length && x < width; index++) {
+            int codePoint = text.charAt(index);
+            if (Character.isHighSurrogate((char)codePoint) && index + 1 < length && Character.isLowSurrogate(text.charAt(index + 1))) {
+                codePoint = Character.toCodePoint((char)codePoint, text.charAt(++index));
+            }
+            if (x >= 0) {
+                x += set(x, y, codePoint, state);
+            } else {
+                x += CharWidth.of(codePoint);
+            }
+        }
+        return x;
+    }
+
+    /**
+     * Writes {@code text} from a cell onwards in the styles of {@code sequence}.
+     *
+     * @param x        the column to start at, from 0
+     * @param y        the row, from 0
+     * @param text     the text to write
+     * @param sequence the styles to write the text in
+     * @return the column after the last one written
+     * @throws IndexOutOfBoundsException if the row is outside the buffer
+     * @see #print(int, int, CharSequence, long)
+     */
+    public int print(int x, int y, CharSequence text, AnsiSequence<?> sequence) {
+        return print(x, y, text, SgrState.of(sequence));
+    }
+
+    /**
+     * Sets every cell of a rectangle, clipped to the buffer.
+     *
+     * @param x         the first column
+     * @param y         the first row
+     * @param columns   the number of columns
+     * @param rows      the number of rows
+     * @param codePoint the code point to set, which must take a single column
+     * @param state     the packed {@link SgrState} to set
+     */
+    public void fill(int x, int y, int columns, int rows, int codePoint, long state) {
+        int left = Math.max(0, x);
+        int right = Math.min(width, x + columns);
+        int top = Math.max(0, y);
+        int bottom = Math.min(height, y + rows);
+        for (int row = top; row < bottom; row++) {
+            if (left < right) {
+                clearWide(row * width + left, left);
+                clearWide(row * width + right - 1, right - 1);
+            }
+            Arrays.fill(codePoints, row * width + left, row * width + right, codePoint);
+            Arrays.fill(states, row * width + left, row * width + right, state);
+        }
+    }
+
+    /**
+     * Sets every cell to a blank in the {@link SgrState#DEFAULT default} state.
+     */
+    public void clear() {
+        Arrays.fill(codePoints, BLANK);
+        Arrays.fill(states, SgrState.DEFAULT);
+    }
+
+    /**
+     * Copies every cell of {@code source}, which must have the same size.
+     *
+     * @param source the buffer to copy
+     * @throws IllegalArgumentException if the sizes differ
+     */
+    public void copyFrom(CellBuffer source) {
+        if (source.width != width || source.height != height) {
+            throw new IllegalArgumentException(String.format("Size %dx%d doesn't match %dx%d", source.width, source.height, width, height));
+        }
+        System.arraycopy(source.codePoints, 0, codePoints, 0, codePoints.length);
+        System.arraycopy(source.states, 0, states, 0, states.length);
+    }
+
+    /**
+     * Blanks the other half of a wide character that a cell is part of, before the cell is overwritten.
+     */
+    private void clearWide(int index, int x) {
+        if (codePoints[index] == CONTINUATION && x > 0) {
+            codePoints[index - 1] = BLANK;
+        } else if (x + 1 < width && codePoints[index + 1] == CONTINUATION) {
+            codePoints[index + 1] = BLANK;
+        }
+    }
+
+    private int indexOf(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException(String.format("Cell %d,%d outside of %dx%d", x, y, width, height));
+        }
+        return y * width + x;
+    }
+}
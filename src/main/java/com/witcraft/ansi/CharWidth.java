@@ -0,0 +1,118 @@
+package com.witcraft.ansi;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The number of terminal columns taken by each Unicode code point.
+ * <p>
+ * Widths are held in a two-stage table built once at class initialization: the high bits of a code point select a
+ * block of 256 widths, and identical blocks are shared, so the whole range fits in a few kilobytes. Combining marks,
+ * format characters such as ZERO WIDTH JOINER, and controls take no columns; East Asian Wide and Fullwidth characters
+ * and emoji with default emoji presentation take two; everything else takes one.
+ */
+final class CharWidth {
+    private static final int BLOCK_SHIFT = 8;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    /**
+     * Inclusive ranges of code points that take two columns.
+     */
+    private static final int[] WIDE = {
+        0x1100, 0x115F, 0x231A, 0x231B, 0x2329, 0x232A, 0x23E9, 0x23EC, 0x23F0, 0x23F0, 0x23F3, 0x23F3,
+        0x25FD, 0x25FE, 0x2614, 0x2615, 0x2648, 0x2653, 0x267F, 0x267F, 0x2693, 0x2693, 0x26A1, 0x26A1,
+        0x26AA, 0x26AB, 0x26BD, 0x26BE, 0x26C4, 0x26C5, 0x26CE, 0x26CE, 0x26D4, 0x26D4, 0x26EA, 0x26EA,
+        0x26F2, 0x26F3, 0x26F5, 0x26F5, 0x26FA, 0x26FA, 0x26FD, 0x26FD, 0x2705, 0x2705, 0x270A, 0x270B,
+        0x2728, 0x2728, 0x274C, 0x274C, 0x274E, 0x274E, 0x2753, 0x2755, 0x2757, 0x2757, 0x2795, 0x2797,
+        0x27B0, 0x27B0, 0x27BF, 0x27BF, 0x2B1B, 0x2B1C, 0x2B50, 0x2B50, 0x2B55, 0x2B55,
+        0x2E80, 0x303E, 0x3041, 0x33FF, 0x3400, 0x4DBF, 0x4E00, 0x9FFF, 0xA000, 0xA4CF, 0xA960, 0xA97F,
+        0xAC00, 0xD7A3, 0xF900, 0xFAFF, 0xFE10, 0xFE19, 0xFE30, 0xFE6F, 0xFF00, 0xFF60, 0xFFE0, 0xFFE6,
+        0x16FE0, 0x16FE4, 0x17000, 0x18CFF, 0x1B000, 0x1B2FF,
+        0x1F004, 0x1F004, 0x1F0CF, 0x1F0CF, 0x1F18E, 0x1F18E, 0x1F191, 0x1F19A, 0x1F200, 0x1F202,
+        0x1F210, 0x1F23B, 0x1F240, 0x1F248, 0x1F250, 0x1F251, 0x1F260, 0x1F265,
+        0x1F300, 0x1F320, 0x1F32D, 0x1F335, 0x1F337, 0x1F37C, 0x1F37E, 0x1F393, 0x1F3A0, 0x1F3CA,
+        0x1F3CF, 0x1F3D3, 0x1F3E0, 0x1F3F0, 0x1F3F4, 0x1F3F4, 0x1F3F8, 0x1F43E, 0x1F440, 0x1F440,
+        0x1F442, 0x1F4FC, 0x1F4FF, 0x1F53D, 0x1F54B, 0x1F54E, 0x1F550, 0x1F567, 0x1F57A, 0x1F57A,
+        0x1F595, 0x1F596, 0x1F5A4, 0x1F5A4, 0x1F5FB, 0x1F64F, 0x1F680, 0x1F6C5, 0x1F6CC, 0x1F6CC,
+        0x1F6D0, 0x1F6D2, 0x1F6D5, 0x1F6D7, 0x1F6DC, 0x1F6DF, 0x1F6EB, 0x1F6EC, 0x1F6F4, 0x1F6FC,
+        0x1F7E0, 0x1F7EB, 0x1F7F0, 0x1F7F0, 0x1F90C, 0x1F93A, 0x1F93C, 0x1F945, 0x1F947, 0x1F9FF,
+        0x1FA70, 0x1FAFF, 0x20000, 0x2FFFD, 0x30000, 0x3FFFD
+    };
+
+    /**
+     * Inclusive ranges of code points that take no columns, in addition to combining marks, format characters and
+     * controls: Hangul medial vowels and final consonants, and emoji skin tone modifiers.
+     */
+    private static final int[] ZERO = {
+        0x1160, 0x11FF, 0xD7B0, 0xD7FF, 0x1F3FB, 0x1F3FF
+    };
+
+    private static final char[] INDEX = new char[(Character.MAX_CODE_POINT + 1) >>> BLOCK_SHIFT];
+    private static final byte[] BLOCKS;
+
+    static {
+        byte[] widths = new byte[Character.MAX_CODE_POINT + 1];
+        Arrays.fill(widths, (byte)1);
+        for (int index = 0; index < WIDE.length; index += 2) {
+            Arrays.fill(widths, WIDE[index], WIDE[index + 1] + 1, (byte)2);
+        }
+        for (int codePoint = 0; codePoint <= Character.MAX_CODE_POINT; codePoint++) {
+            switch (Character.getType(codePoint)) {
+                case Character.NON_SPACING_MARK:
+                case Character.ENCLOSING_MARK:
+                case Character.FORMAT:
+                case Character.CONTROL:
+                    widths[codePoint] = 0;
+                    break;
+                default:
+                    break;
+            }
+        }
+        for (int index = 0; index < ZERO.length; index += 2) {
+            Arrays.fill(widths, ZERO[index], ZERO[index + 1] + 1, (byte)0);
+        }
+        // SOFT HYPHEN is a format character, but terminals display it.
+        widths[0x00AD] = 1;
+
+        Map<String, Character> blockIds = new HashMap<>();
+        byte[] blocks = new byte[BLOCK_SIZE * 64];
+        int blockCount = 0;
+        for (int block = 0; block < INDEX.length; block++) {
+            byte[] content = Arrays.copyOfRange(widths, block << BLOCK_SHIFT, (block + 1) << BLOCK_SHIFT);
+            String key = new String(content, StandardCharsets.ISO_8859_1);
+            Character id = blockIds.get(key);
+            if (id == null) {
+                id = (char)blockCount++;
+                blockIds.put(key, id);
+                if (blocks.length < blockCount << BLOCK_SHIFT) {
+                    blocks = Arrays.copyOf(blocks, blocks.length * 2);
+                }
+                System.arraycopy(content, 0, blocks, id << BLOCK_SHIFT, BLOCK_SIZE);
+            }
+            INDEX[block] = id;
+        }
+        BLOCKS = Arrays.copyOf(blocks, blockCount << BLOCK_SHIFT);
+    }
+
+    private CharWidth() {
+    }
+
+    /**
+     * Returns the number of columns taken by {@code codePoint}.
+     *
+     * @param codePoint the code point to measure
+     * @return 0, 1 or 2
+     */
+    static int of(int codePoint) {
+        if (codePoint >= 0x20 && codePoint < 0x7F) {
+            return 1;
+        }
+        if (codePoint < 0 || codePoint > Character.MAX_CODE_POINT) {
+            return 1;
+        }
+        return BLOCKS[(INDEX[codePoint >>> BLOCK_SHIFT] << BLOCK_SHIFT) | (codePoint & BLOCK_MASK)];
+    }
+}
@@ -0,0 +1,191 @@
+package com.witcraft.ansi;
+
+import java.util.Arrays;
+
+/**
+ * Maps 24-bit colors to the nearest color of the 256-color and 16-color palettes.
+ * <p>
+ * Nearness is the Euclidean distance in CIELAB, which follows perceived difference far better than distance in RGB.
+ * Rather than searching the palette for every color, each table maps every RGB555 value (the top five bits of each
+ * component) to the palette entry nearest to the center of that 8x8x8 cube, so a conversion is one array lookup. The
+ * 32K-entry tables are built on first use, each in its own holder class. Since a cell can hold more than one palette
+ * color, colors of the 256-color palette are recognized exactly before the table is consulted.
+ * <p>
+ * The 256-color table only considers the standardized color cube and gray ramp (16-255), since terminals theme the
+ * first 16 entries. The RGB values assumed for the 16 standard colors are those of xterm.
+ */
+final class ColorQuantizer {
+    private static final int TABLE_SIZE = 1 << 15;
+
+    private static final int[] CUBE_LEVELS = {0, 95, 135, 175, 215, 255};
+
+    /**
+     * The position of every component value in {@link #CUBE_LEVELS}, or -1 for values that aren't levels of the cube.
+     */
+    private static final byte[] CUBE_INDEX = new byte[256];
+
+    private static final int[] BASIC_RGB = {
+        0x000000, 0xCD0000, 0x00CD00, 0xCDCD00, 0x0000EE, 0xCD00CD, 0x00CDCD, 0xE5E5E5,
+        0x7F7F7F, 0xFF0000, 0x00FF00, 0xFFFF00, 0x5C5CFF, 0xFF00FF, 0x00FFFF, 0xFFFFFF
+    };
+
+    /**
+     * The RGB value of every entry of the 256-color palette.
+     */
+    private static final int[] INDEXED_RGB = new int[256];
+
+    static {
+        Arrays.fill(CUBE_INDEX, (byte)-1);
+        for (int level = 0; level < CUBE_LEVELS.length; level++) {
+            CUBE_INDEX[CUBE_LEVELS[level]] = (byte)level;
+        }
+        System.arraycopy(BASIC_RGB, 0, INDEXED_RGB, 0, BASIC_RGB.length);
+        for (int index = 16; index < 232; index++) {
+            int cube = index - 16;
+            INDEXED_RGB[index] = (CUBE_LEVELS[cube / 36] << 16) | (CUBE_LEVELS[(cube / 6) % 6] << 8) | CUBE_LEVELS[cube % 6];
+        }
+        for (int index = 232; index < 256; index++) {
+            int level = 8 + (index - 232) * 10;
+            INDEXED_RGB[index] = (level << 16) | (level << 8) | level;
+        }
+    }
+
+    private static final class IndexedTable {
+        static final byte[] TABLE = buildTable(16, 256);
+    }
+
+    private static final class BasicTable {
+        static final byte[] TABLE = buildTable(0, 16);
+        static final byte[] FROM_INDEXED = new byte[256];
+
+        static {
+            float[] palette = labOf(0, 16);
+            for (int index = 0; index < 256; index++) {
+                FROM_INDEXED[index] = (byte)(index < 16 ? index : nearest(palette, 0, INDEXED_RGB[index], new float[3]));
+            }
+        }
+    }
+
+    private ColorQuantizer() {
+    }
+
+    /**
+     * Returns the RGB value, as {@code 0xRRGGBB}, of an entry of the 256-color palette.
+     */
+    static int indexedToRgb(int index) {
+        return INDEXED_RGB[index & 0xFF];
+    }
+
+    /**
+     * Returns the index of the 256-color palette entry nearest to {@code rgb}, which is the entry itself if
+     * {@code rgb} is a color of the cube or gray ramp.
+     */
+    static int rgbToIndexed(int rgb) {
+        int exact = paletteIndexOf(rgb);
+        return (exact >= 0 ? exact : IndexedTable.TABLE[rgb555(rgb)] & 0xFF);
+    }
+
+    /**
+     * Returns the index of the standard color nearest to {@code rgb}.
+     */
+    static int rgbToBasic(int rgb) {
+        return BasicTable.TABLE[rgb555(rgb)];
+    }
+
+    /**
+     * Returns the index of the standard color nearest to an entry of the 256-color palette.
+     */
+    static int indexedToBasic(int index) {
+        return BasicTable.FROM_INDEXED[index & 0xFF];
+    }
+
+    /**
+     * Returns the index of the color cube or gray ramp entry (16-255) whose RGB value is exactly {@code rgb}, or -1.
+     */
+    private static int paletteIndexOf(int rgb) {
+        int red = CUBE_INDEX[(rgb >> 16) & 0xFF];
+        int green = CUBE_INDEX[(rgb >> 8) & 0xFF];
+        int blue = CUBE_INDEX[rgb & 0xFF];
+        if ((red | green | blue) >= 0) {
+            return 16 + red * 36 + green * 6 + blue;
+        }
+        int level = rgb & 0xFF;
+        if ((rgb & 0xFFFFFF) == level * 0x010101 && level >= 8 && level <= 238 && (level - 8) % 10 == 0) {
+            return 232 + (level - 8) / 10;
+        }
+        return -1;
+    }
+
+    private static int rgb555(int rgb) {
+        return ((rgb >> 9) & 0x7C00) | ((rgb >> 6) & 0x3E0) | ((rgb >> 3) & 0x1F);
+    }
+
+    private static byte[] buildTable(int first, int end) {
+        float[] palette = labOf(first, end);
+        byte[] table = new byte[TABLE_SIZE];
+        float[] lab = new float[3];
+        for (int cell = 0; cell < TABLE_SIZE; cell++) {
+            int red = ((cell >> 10) << 3) | 4;
+            int green = (((cell >> 5) & 0x1F) << 3) | 4;
+            int blue = ((cell & 0x1F) << 3) | 4;
+            table[cell] = (byte)nearest(palette, first, (red << 16) | (green << 8) | blue, lab);
+        }
+        return table;
+    }
+
+    /**
+     * Returns the CIELAB coordinates of the palette entries from {@code first} (inclusive) to {@code end} (exclusive),
+     * three floats per entry.
+     */
+    private static float[] labOf(int first, int end) {
+        float[] lab = new float[(end - first) * 3];
+        for (int index = first; index < end; index++) {
+            toLab(INDEXED_RGB[index], lab, (index - first) * 3);
+        }
+        return lab;
+    }
+
+    private static int nearest(float[] palette, int first, int rgb, float[] lab) {
+        toLab(rgb, lab, 0);
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int entry = 0; entry < palette.length; entry += 3) {
+            float dl = palette[entry] - lab[0];
+            float da = palette[entry + 1] - lab[1];
+            float db = palette[entry + 2] - lab[2];
+            float distance = dl * dl + da * da + db * db;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = entry / 3;
+            }
+        }
+        return first + best;
+    }
+
+    /**
+     * Converts an sRGB color to CIELAB under the D65 illuminant.
+     */
+    private static void toLab(int rgb, float[] out, int offset) {
+        double red = linear((rgb >> 16) & 0xFF);
+        double green = linear((rgb >> 8) & 0xFF);
+        double blue = linear(rgb & 0xFF);
+        double x = (0.4124564 * red + 0.3575761 * green + 0.1804375 * blue) / 0.95047;
+        double y = (0.2126729 * red + 0.7151522 * green + 0.0721750 * blue);
+        double z = (0.0193339 * red + 0.1191920 * green + 0.9503041 * blue) / 1.08883;
+        double fx = labF(x);
+        double fy = labF(y);
+        double fz = labF(z);
+        out[offset] = (float)(116 * fy - 16);
+        out[offset + 1] = (float)(500 * (fx - fy));
+        out[offset + 2] = (float)(200 * (fy - fz));
+    }
+
+    private static double linear(int component) {
+        double value = component / 255.0;
+        return (value <= 0.04045 ? value / 12.92 : Math.pow((value + 0.055) / 1.055, 2.4));
+    }
+
+    private static double labF(double t) {
+        return (t > 216.0 / 24389.0 ? Math.cbrt(t) : (24389.0 / 27.0 * t + 16) / 116);
+    }
+}
@@ -0,0 +1,242 @@
+package com.witcraft.ansi;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static com.witcraft.ansi.AnsiSequence.CSI_START;
+
+/**
+ * Control Sequences other than Select Graphic Rendition: cursor movement, erasing and scrolling.
+ * <p>
+ * Each function takes up to two numeric parameters, which are written with the same encoder as SGR parameters. A
+ * parameter equal to the function's default is omitted, so {@code CURSOR_UP.getSequence(1)} is {@code ESC [ A}.
+ * Sequences with a single parameter from 0 to 255 are cached on first use, so that redraw loops moving the cursor
+ * don't build Strings, and the {@code appendTo} methods never allocate.
+ */
+public enum ControlSequence {
+    /**
+     * CUU: moves the cursor up by the parameter rows.
+     */
+    CURSOR_UP('A', 1),
+    /**
+     * CUD: moves the cursor down by the parameter rows.
+     */
+    CURSOR_DOWN('B', 1),
+    /**
+     * CUF: moves the cursor right by the parameter columns.
+     */
+    CURSOR_FORWARD('C', 1),
+    /**
+     * CUB: moves the cursor left by the parameter columns.
+     */
+    CURSOR_BACK('D', 1),
+    /**
+     * CNL: moves the cursor to the start of the line the parameter rows down.
+     */
+    CURSOR_NEXT_LINE('E', 1),
+    /**
+     * CPL: moves the cursor to the start of the line the parameter rows up.
+     */
+    CURSOR_PREVIOUS_LINE('F', 1),
+    /**
+     * CHA: moves the cursor to the parameter column, from 1.
+     */
+    CURSOR_COLUMN('G', 1),
+    /**
+     * CUP: moves the cursor to the row and column parameters, from 1.
+     */
+    CURSOR_POSITION('H', 1),
+    /**
+     * ED: erases from the cursor to the end of the screen (0), from the start of the screen to the cursor (1), the
+     * whole screen (2), or the whole screen and scrollback (3).
+     */
+    ERASE_DISPLAY('J', 0),
+    /**
+     * EL: erases from the cursor to the end of the line (0), from the start of the line to the cursor (1), or the
+     * whole line (2).
+     */
+    ERASE_LINE('K', 0),
+    /**
+     * SU: scrolls the scroll region up by the parameter lines.
+     */
+    SCROLL_UP('S', 1),
+    /**
+     * SD: scrolls the scroll region down by the parameter lines.
+     */
+    SCROLL_DOWN('T', 1),
+    /**
+     * VPA: moves the cursor to the parameter row, from 1.
+     */
+    LINE_POSITION('d', 1),
+    /**
+     * DECSTBM: sets the scroll region to the top and bottom row parameters, from 1; without parameters, the whole
+     * screen.
+     */
+    SCROLL_REGION('r', 0);
+
+    /**
+     * DECSC: saves the cursor position and graphic rendition.
+     */
+    public static final String SAVE_CURSOR = "\0337";
+
+    /**
+     * DECRC: restores the cursor position and graphic rendition saved by {@link #SAVE_CURSOR}.
+     */
+    public static final String RESTORE_CURSOR = "\0338";
+
+    /**
+     * Switches to the alternate screen buffer, saving the cursor and clearing the screen.
+     */
+    public static final String ENTER_ALTERNATE_SCREEN = "\033[?1049h";
+
+    /**
+     * Switches back from the alternate screen buffer, restoring the cursor.
+     */
+    public static final String EXIT_ALTERNATE_SCREEN = "\033[?1049l";
+
+    public static final String HIDE_CURSOR = "\033[?25l";
+
+    public static final String SHOW_CURSOR = "\033[?25h";
+
+    private static final int CACHE_SIZE = 256;
+
+    private final char finalChar;
+    private final int defaultParameter;
+    private final String sequence;
+    private final String[] cache = new String[CACHE_SIZE];
+
+    ControlSequence(char finalChar, int defaultParameter) {
+        this.finalChar = finalChar;
+        this.defaultParameter = defaultParameter;
+        this.sequence = CSI_START + finalChar;
+    }
+
+    public char getFinal() {
+        return finalChar;
+    }
+
+    /**
+     * Returns this Control Sequence without parameters.
+     *
+     * @return the Control Sequence
+     */
+    public String getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns this Control Sequence with a single parameter.
+     *
+     * @param parameter the parameter
+     * @return the Control Sequence, cached if {@code parameter} is from 0 to 255
+     */
+    public String getSequence(int parameter) {
+        if (parameter >= 0 && parameter < CACHE_SIZE) {
+            String cached = cache[parameter];
+            if (cached == null) {
+                cached = appendTo(new StringBuilder(8), parameter).toString();
+                cache[parameter] = cached;
+            }
+            return cached;
+        }
+        return appendTo(new StringBuilder(16), parameter).toString();
+    }
+
+    /**
+     * Returns this Control Sequence with two parameters, such as the row and column of {@link #CURSOR_POSITION}.
+     *
+     * @param first  the first parameter
+     * @param second the second parameter
+     * @return the Control Sequence
+     */
+    public String getSequence(int first, int second) {
+        return appendTo(new StringBuilder(16), first, second).toString();
+    }
+
+    /**
+     * Appends this Control Sequence with a single parameter to {@code out}.
+     *
+     * @param out       the StringBuilder to append to
+     * @param parameter the parameter
+     * @return {@code out} for chaining
+     */
+    public StringBuilder appendTo(StringBuilder out, int parameter) {
+        try {
+            appendTo((Appendable)out, parameter);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out;
+    }
+
+    /**
+     * Appends this Control Sequence with a single parameter to {@code out}.
+     *
+     * @param out       the Appendable to append to
+     * @param parameter the parameter
+     * @param <A>       the type of Appendable
+     * @return {@code out} for chaining
+     * @throws IOException if {@code out} fails
+     */
+    public <A extends Appendable> A appendTo(A out, int parameter) throws IOException {
+        if (parameter >= 0 && parameter < CACHE_SIZE && cache[parameter] != null) {
+            out.append(cache[parameter]);
+            return out;
+        }
+        out.append(CSI_START);
+        if (parameter != defaultParameter) {
+            Digits.appendTo(out, parameter);
+        }
+        out.append(finalChar);
+        return out;
+    }
+
+    /**
+     * Appends this Control Sequence with two parameters to {@code out}. The second parameter is omitted if both are
+     * the default.
+     *
+     * @param out    the StringBuilder to append to
+     * @param first  the first parameter
+     * @param second the second parameter
+     * @return {@code out} for chaining
+     */
+    public StringBuilder appendTo(StringBuilder out, int first, int second) {
+        try {
+            appendTo((Appendable)out, first, second);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out;
+    }
+
+    /**
+     * Appends this Control Sequence with two parameters to {@code out}. The second parameter is omitted if both are
+     * the default.
+     *
+     * @param out    the Appendable to append to
+     * @param first  the first parameter
+     * @param second the second parameter
+     * @param <A>    the type of Appendable
+     * @return {@code out} for chaining
+     * @throws IOException if {@code out} fails
+     */
+    public <A extends Appendable> A appendTo(A out, int first, int second) throws IOException {
+        out.append(CSI_START);
+        if (first != defaultParameter || second != defaultParameter) {
+            if (first != defaultParameter) {
+                Digits.appendTo(out, first);
+            }
+            if (second != defaultParameter) {
+                out.append(';');
+                Digits.appendTo(out, second);
+            }
+        }
+        out.append(finalChar);
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return name() + "(" + finalChar + ")";
+    }
+}
@@ -0,0 +1,99 @@
+package com.witcraft.ansi;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes numeric Control Sequence parameters without allocating intermediate Strings.
+ */
+final class Digits {
+    /**
+     * The decimal representations of 0-255, the range of palette indexes and color components.
+     */
+    private static final String[] STRINGS = new String[256];
+    private static final byte[][] BYTES = new byte[256][];
+
+    static {
+        for (int value = 0; value < STRINGS.length; value++) {
+            STRINGS[value] = Integer.toString(value);
+            BYTES[value] = STRINGS[value].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private Digits() {
+    }
+
+    /**
+     * Appends the decimal representation of {@code value} to {@code out}.
+     *
+     * @param out   the destination
+     * @param value the value to append
+     * @throws IOException if {@code out} fails to accept the characters
+     */
+    static void appendTo(Appendable out, int value) throws IOException {
+        if (value >= 0 && value < STRINGS.length) {
+            out.append(STRINGS[value]);
+            return;
+        }
+        if (out instanceof StringBuilder) {
+            ((StringBuilder)out).append(value);
+            return;
+        }
+        if (value < 0) {
+            if (value == Integer.MIN_VALUE) {
+                out.append("-2147483648");
+                return;
+            }
+            out.append('-');
+            value = -value;
+        }
+        int divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char)('0' + (value / divisor) % 10));
+        }
+    }
+
+    /**
+     * Returns the number of characters in the decimal representation of the non-negative {@code value}.
+     *
+     * @param value a non-negative value
+     * @return the number of digits
+     */
+    static int size(int value) {
+        int size = 1;
+        while (value >= 10) {
+            value /= 10;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the decimal representation of the non-negative {@code value} as US-ASCII bytes.
+     *
+     * @param out   the destination
+     * @param value a non-negative value
+     * @throws BufferOverflowException if {@code out} doesn't have room for the digits
+     */
+    static void put(ByteBuffer out, int value) {
+        if (value >= 0 && value < BYTES.length) {
+            out.put(BYTES[value]);
+            return;
+        }
+        int size = size(value);
+        int position = out.position();
+        if (out.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+        for (int index = position + size - 1; index >= position; index--) {
+            out.put(index, (byte)('0' + value % 10));
+            value /= 10;
+        }
+        out.position(position + size);
+    }
+}
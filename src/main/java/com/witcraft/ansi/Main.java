@@ -1,62 +1,57 @@
 package com.witcraft.ansi;
 
-import java.io.FilterWriter;
+import com.witcraft.ansi.AnsiMetrics.Counter;
+
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.math.BigDecimal;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         Ansi styler = new Ansi(true);
+        AnsiMetrics.Counters metrics = AnsiMetrics.enable();
 
-        final BigDecimal[] length = {new BigDecimal(0)};
         //PrintStream out = System.out;
-        PrintWriter out = new PrintWriter(new FilterWriter(new PrintWriter(System.out)) {
-            @Override
-            public void write(char[] cbuf, int off, int len) throws IOException {
-                super.write(cbuf, off, len);
-                length[0] = length[0].add(BigDecimal.valueOf(len));
-            }
-
-            @Override
-            public void write(String str, int off, int len) throws IOException {
-                super.write(str, off, len);
-                length[0] = length[0].add(BigDecimal.valueOf(len));
-            }
-
-            @Override
-            public void write(int c) throws IOException {
-                super.write(c);
-                length[0] = length[0].add(BigDecimal.ONE);
-            }
-        });
+        PrintWriter out = new PrintWriter(System.out);
 
+        AnsiWriter ansiOut = new AnsiWriter(out);
+        String lineSeparator = System.lineSeparator();
         for (int i = 0; i < 16; i++) {
             int colorIndex;
             for (int j = 0; j < 16; j++) {
                 colorIndex = (i * 16 + j);
                 String text = String.valueOf(colorIndex);
-                for (int p = text.length(); p <= 4; p++) {
-                    text = " " + text;
-                }
                 styler.reset().colorIndex(colorIndex);
                 //out.print(styler.wrap(text));
-                out.print(styler);
-                out.print(text);
+                ansiOut.apply(styler);
+                for (int p = text.length(); p <= 4; p++) {
+                    ansiOut.write(' ');
+                }
+                ansiOut.write(text);
 
             }
-            out.println();
+            ansiOut.write(lineSeparator);
         }
 
+        ansiOut.reset();
+
+        ansiOut.write(lineSeparator);
         styler.reset().bgBrightRed().colorIndex(255);
-        out.println();
-        out.println("[" + styler.wrap("FAILED") + "]");
+        ansiOut.write("[");
+        ansiOut.writeStyled(styler, "FAILED").reset();
+        ansiOut.write("]" + lineSeparator);
         styler.reset().bgGreen().colorIndex(255);
-        out.println("[" + styler.wrap(" PASS ") + "]");
+        ansiOut.write("[");
+        ansiOut.writeStyled(styler, " PASS ").reset();
+        ansiOut.write("]" + lineSeparator);
         styler.reset().bgBlack().colorIndex(255);
-        out.println("[" + styler.wrap("  OK  ") + "]");
-        out.flush();
-
-        System.out.println("Bytes transferred: " + length[0].longValue());
+        ansiOut.write("[");
+        ansiOut.writeStyled(styler, "  OK  ").reset();
+        ansiOut.write("]" + lineSeparator);
+        ansiOut.flush();
+
+        long escape = metrics.get(Counter.ESCAPE_BYTES);
+        long payload = metrics.get(Counter.PAYLOAD_BYTES);
+        System.out.println("Bytes transferred: " + (escape + payload) + " (" + escape + " in "
+            + metrics.get(Counter.SEQUENCES_WRITTEN) + " escape sequences, " + payload + " of text)");
     }
 }
@@ -0,0 +1,211 @@
+package com.witcraft.ansi;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * A full-screen terminal display that redraws only what changed.
+ * <p>
+ * Frames are drawn into the {@link #getBuffer() back buffer}, which starts out as a copy of what the terminal shows.
+ * {@link #flush()} compares the back buffer with the front buffer, which holds what the terminal is showing, and
+ * writes only cursor movements, graphic rendition changes and text for the cells that differ. Runs of changed cells
+ * separated by a few unchanged ones are joined, since rewriting a short gap is cheaper than moving the cursor over it.
+ * Once written, the back buffer is copied to the front buffer, so an unchanged frame writes nothing.
+ * <p>
+ * The first flush, and the first after {@link #invalidate()}, redraws every cell. A Screen is not thread-safe.
+ */
+public class Screen implements Flushable {
+    /**
+     * The code point of front buffer cells whose contents on the terminal are unknown.
+     */
+    private static final int UNKNOWN = -2;
+
+    /**
+     * The largest number of unchanged cells that are rewritten to join two runs of changed cells.
+     */
+    private static final int MAX_GAP = 4;
+
+    private final Writer out;
+    private final StringBuilder frame = new StringBuilder(256);
+    private char[] frameChars = new char[256];
+    private CellBuffer front;
+    private CellBuffer back;
+    private long terminalState;
+    private boolean resetNeeded;
+    private int cursorX;
+    private int cursorY;
+
+    /**
+     * Creates a Screen whose terminal contents are unknown, so that the first flush redraws every cell.
+     *
+     * @param out    the Writer to the terminal
+     * @param width  the number of columns
+     * @param height the number of rows
+     */
+    public Screen(Writer out, int width, int height) {
+        this.out = out;
+        this.back = new CellBuffer(width, height);
+        this.front = new CellBuffer(width, height);
+        invalidate();
+    }
+
+    /**
+     * Returns the buffer to draw the next frame into.
+     *
+     * @return the back buffer
+     */
+    public CellBuffer getBuffer() {
+        return back;
+    }
+
+    public int getWidth() {
+        return back.getWidth();
+    }
+
+    public int getHeight() {
+        return back.getHeight();
+    }
+
+    /**
+     * Changes the size of the screen, keeping the cells that still fit, and redraws every cell on the next flush.
+     *
+     * @param width  the new number of columns
+     * @param height the new number of rows
+     */
+    public void resize(int width, int height) {
+        CellBuffer resized = new CellBuffer(width, height);
+        int columns = Math.min(width, back.getWidth());
+        for (int row = Math.min(height, back.getHeight()) - 1; row >= 0; row--) {
+            System.arraycopy(back.codePoints, row * back.getWidth(), resized.codePoints, row * width, columns);
+            System.arraycopy(back.states, row * back.getWidth(), resized.states, row * width, columns);
+            if (columns > 0 && columns < back.getWidth() && back.codePoints[row * back.getWidth() + columns] == CellBuffer.CONTINUATION) {
+                // The second half of a wide character was cut off.
+                resized.codePoints[row * width + columns - 1] = CellBuffer.BLANK;
+            }
+        }
+        back = resized;
+        front = new CellBuffer(width, height);
+        invalidate();
+    }
+
+    /**
+     * Forgets what the terminal shows, so that the next flush resets the graphic rendition and redraws every cell.
+     * Call this after something else has written to the terminal.
+     */
+    public void invalidate() {
+        Arrays.fill(front.codePoints, UNKNOWN);
+        terminalState = SgrState.DEFAULT;
+        resetNeeded = true;
+        cursorX = -1;
+        cursorY = -1;
+    }
+
+    /**
+     * Appends the output that brings the terminal from the front buffer to the back buffer to {@code out}, and
+     * updates the front buffer as if it had been written.
+     *
+     * @param out the StringBuilder to append to
+     * @return {@code out} for chaining
+     */
+    public StringBuilder appendChangesTo(StringBuilder out) {
+        int width = back.getWidth();
+        int height = back.getHeight();
+        int[] backCodePoints = back.codePoints;
+        long[] backStates = back.states;
+        int[] frontCodePoints = front.codePoints;
+        long[] frontStates = front.states;
+        for (int row = 0; row < height; row++) {
+            int rowStart = row * width;
+            int column = 0;
+            while (column < width) {
+                int index = rowStart + column;
+                if (backCodePoints[index] == frontCodePoints[index] && backStates[index] == frontStates[index]) {
+                    column++;
+                    continue;
+                }
+                int start = column;
+                if (backCodePoints[index] == CellBuffer.CONTINUATION && start > 0) {
+                    start--;
+                }
+                int lastChanged = column;
+                int end = column + 1;
+                for (; end < width && end - lastChanged <= MAX_GAP; end++) {
+                    if (backCodePoints[rowStart + end] != frontCodePoints[rowStart + end] || backStates[rowStart + end] != frontStates[rowStart + end]) {
+                        lastChanged = end;
+                    }
+                }
+                end = lastChanged + 1;
+                if (end < width && backCodePoints[rowStart + end] == CellBuffer.CONTINUATION) {
+                    end++;
+                }
+                appendRun(out, row, start, end);
+                column = end;
+            }
+        }
+        return out;
+    }
+
+    private void appendRun(StringBuilder out, int row, int start, int end) {
+        int width = back.getWidth();
+        int rowStart = row * width;
+        TerminalProfile profile = TerminalProfile.getDefault();
+        if (resetNeeded) {
+            if (profile.isEnabled()) {
+                out.append(AnsiSequence.CSI_START).append('0').append(AnsiSequence.CSI_END);
+            }
+            resetNeeded = false;
+        }
+        appendCursorMove(out, row, start);
+        for (int column = start; column < end; column++) {
+            int index = rowStart + column;
+            int codePoint = back.codePoints[index];
+            if (codePoint == CellBuffer.CONTINUATION) {
+                continue;
+            }
+            long state = profile.adapt(back.states[index]);
+            if (state != terminalState) {
+                SgrState.appendTransition(out, terminalState, state);
+                terminalState = state;
+            }
+            out.appendCodePoint(codePoint);
+        }
+        System.arraycopy(back.codePoints, rowStart + start, front.codePoints, rowStart + start, end - start);
+        System.arraycopy(back.states, rowStart + start, front.states, rowStart + start, end - start);
+        // Writing the last column leaves the cursor pending a wrap, which terminals handle differently.
+        cursorX = (end < width ? end : -1);
+        cursorY = row;
+    }
+
+    private void appendCursorMove(StringBuilder out, int row, int column) {
+        if (row == cursorY && column == cursorX) {
+            return;
+        }
+        if (row == cursorY && column > cursorX && cursorX >= 0) {
+            ControlSequence.CURSOR_FORWARD.appendTo(out, column - cursorX);
+        } else {
+            ControlSequence.CURSOR_POSITION.appendTo(out, row + 1, column + 1);
+        }
+    }
+
+    /**
+     * Writes the changes since the last flush to the terminal and flushes the Writer.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        frame.setLength(0);
+        appendChangesTo(frame);
+        int length = frame.length();
+        if (length > 0) {
+            if (frameChars.length < length) {
+                frameChars = new char[Math.max(length, frameChars.length * 2)];
+            }
+            frame.getChars(0, length, frameChars, 0);
+            out.write(frameChars, 0, length);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,233 @@
+package com.witcraft.ansi;
+
+import com.witcraft.ansi.AnsiSequence.Style;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded cache of rendered Control Sequences, keyed by the style mask, color arguments and grouping of an
+ * {@link AnsiSequence}.
+ * <p>
+ * Lookups are lock-free. When the cache is full, entries are evicted using the CLOCK (second chance) algorithm, which
+ * approximates LRU without reordering entries on every hit. Insertions are guarded by a {@link ReentrantLock} rather
+ * than a monitor, so virtual threads rendering new sequences don't pin their carrier threads.
+ */
+public final class SequenceCache {
+    /**
+     * System property holding the capacity of the {@link #getShared() shared} cache.
+     */
+    public static final String PROPERTY_CAPACITY = "com.witcraft.ansi.sequenceCache.capacity";
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final SequenceCache SHARED = new SequenceCache(sharedCapacity());
+
+    private final int capacity;
+    private final TerminalProfile profile;
+    private final ConcurrentHashMap<SequenceKey, Entry> entries;
+    private final SequenceKey[] clock;
+    private final ReentrantLock clockLock = new ReentrantLock();
+    private int clockSize;
+    private int clockHand;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache holding at most {@code capacity} sequences. A capacity of zero disables caching, while still
+     * counting misses.
+     *
+     * @param capacity the maximum number of cached sequences
+     */
+    public SequenceCache(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Creates a cache of sequences rendered as a terminal with {@code profile} supports them, or exactly as requested
+     * if {@code profile} is {@code null}.
+     */
+    SequenceCache(int capacity, TerminalProfile profile) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        this.profile = profile;
+        this.entries = new ConcurrentHashMap<>(Math.max(16, capacity * 4 / 3 + 1));
+        this.clock = new SequenceKey[capacity];
+    }
+
+    /**
+     * Returns the cache shared by all {@link AnsiSequence} instances. Its capacity is read from
+     * {@value #PROPERTY_CAPACITY}, defaulting to 1024; zero disables caching, and negative values are ignored.
+     *
+     * @return the shared cache
+     */
+    public static SequenceCache getShared() {
+        return SHARED;
+    }
+
+    private static int sharedCapacity() {
+        int capacity = Integer.getInteger(PROPERTY_CAPACITY, DEFAULT_CAPACITY);
+        return (capacity >= 0 ? capacity : DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Returns the Control Sequence for the current state of {@code sequence}, rendering it only if it isn't cached.
+     *
+     * @param sequence the sequence to render
+     * @param grouped  whether to group all styles into a single Control Sequence structure
+     * @return the rendered Control Sequence
+     */
+    public String getSequence(AnsiSequence<?> sequence, boolean grouped) {
+        return getSequence(SequenceKey.of(sequence, grouped), sequence);
+    }
+
+    /**
+     * Returns the Control Sequence for the current state of {@code sequence}, as US-ASCII bytes.
+     *
+     * @param sequence the sequence to render
+     * @param grouped  whether to group all styles into a single Control Sequence structure
+     * @return the rendered Control Sequence; callers must not modify the returned array
+     */
+    public byte[] getSequenceBytes(AnsiSequence<?> sequence, boolean grouped) {
+        return lookup(SequenceKey.of(sequence, grouped), sequence).getBytes();
+    }
+
+    String getSequence(SequenceKey key, AnsiSequence<?> sequence) {
+        return lookup(key, sequence).sequence;
+    }
+
+    private Entry lookup(SequenceKey key, AnsiSequence<?> sequence) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            hits.increment();
+            AnsiMetrics.add(AnsiMetrics.Counter.CACHE_HITS, 1);
+            return entry;
+        }
+        misses.increment();
+        AnsiMetrics.add(AnsiMetrics.Counter.CACHE_MISSES, 1);
+        entry = new Entry(render(sequence, key.grouped));
+        if (capacity > 0) {
+            clockLock.lock();
+            try {
+                Entry existing = entries.putIfAbsent(key, entry);
+                if (existing != null) {
+                    return existing;
+                }
+                clock[nextSlot()] = key;
+            } finally {
+                clockLock.unlock();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the clock slot for a new entry, evicting the first unreferenced entry when the cache is full.
+     */
+    private int nextSlot() {
+        if (clockSize < capacity) {
+            return clockSize++;
+        }
+        while (true) {
+            int slot = clockHand;
+            clockHand = (clockHand + 1) % capacity;
+            Entry candidate = entries.get(clock[slot]);
+            if (candidate != null && candidate.referenced) {
+                candidate.referenced = false;
+            } else {
+                entries.remove(clock[slot]);
+                evictions.increment();
+                return slot;
+            }
+        }
+    }
+
+    private String render(AnsiSequence<?> sequence, boolean grouped) {
+        long styleMask = sequence.getStyleMask();
+        if (profile == null || profile.isUnrestricted()) {
+            return Style.toSequence(styleMask, sequence.getForeground(), sequence.getBackground(), grouped);
+        }
+        // Styles that only turn something off are kept as requested; the rest are rebuilt from the adapted state.
+        long state = profile.adapt(SgrState.of(sequence));
+        long adaptedMask = SgrState.styleMaskOf(state) | (styleMask & SgrState.STATELESS_STYLES);
+        if (adaptedMask == 0L && styleMask != 0L) {
+            return "";
+        }
+        return Style.toSequence(adaptedMask, SgrState.foreground(state), SgrState.background(state), grouped);
+    }
+
+    /**
+     * Removes all cached sequences. Statistics are not reset.
+     */
+    public void clear() {
+        clockLock.lock();
+        try {
+            entries.clear();
+            Arrays.fill(clock, null);
+            clockSize = 0;
+            clockHand = 0;
+        } finally {
+            clockLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the maximum number of cached sequences.
+     * @return the maximum number of cached sequences
+     */
+    public int getCapacity() { return capacity; }
+
+    /**
+     * Returns the number of cached sequences.
+     * @return the number of cached sequences
+     */
+    public int size() { return entries.size(); }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     * @return the number of lookups answered from the cache
+     */
+    public long getHitCount() { return hits.sum(); }
+
+    /**
+     * Returns the number of lookups that had to render a sequence.
+     * @return the number of lookups that had to render a sequence
+     */
+    public long getMissCount() { return misses.sum(); }
+
+    /**
+     * Returns the number of sequences evicted to make room for others.
+     * @return the number of sequences evicted to make room for others
+     */
+    public long getEvictionCount() { return evictions.sum(); }
+
+    @Override
+    public String toString() {
+        return "SequenceCache[size=" + size() + ", capacity=" + capacity + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+    }
+
+    private static final class Entry {
+        final String sequence;
+        private final byte[] bytes;
+        volatile boolean referenced;
+
+        Entry(String sequence) {
+            this.sequence = sequence;
+            this.bytes = sequence.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        byte[] getBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.witcraft.ansi;
+
+/**
+ * Canonical identity of a rendered Control Sequence: the style bit vector, the packed color arguments and the grouping
+ * mode.
+ */
+final class SequenceKey {
+    final long styleMask;
+    final int foreground;
+    final int background;
+    final boolean grouped;
+
+    private SequenceKey(long styleMask, int foreground, int background, boolean grouped) {
+        this.styleMask = styleMask;
+        this.foreground = foreground;
+        this.background = background;
+        this.grouped = grouped;
+    }
+
+    /**
+     * Returns the key for the current state of {@code sequence}.
+     *
+     * @param sequence the sequence to describe
+     * @param grouped  the grouping mode the sequence will be rendered with
+     * @return the key
+     */
+    static SequenceKey of(AnsiSequence<?> sequence, boolean grouped) {
+        return new SequenceKey(sequence.getStyleMask(), sequence.getForeground(), sequence.getBackground(), grouped);
+    }
+
+    /**
+     * Returns the key for a packed state.
+     *
+     * @param styleMask  the style bit vector
+     * @param foreground the packed foreground color
+     * @param background the packed background color
+     * @param grouped    the grouping mode
+     * @return the key
+     */
+    static SequenceKey of(long styleMask, int foreground, int background, boolean grouped) {
+        return new SequenceKey(styleMask, foreground, background, grouped);
+    }
+
+    boolean matches(long styleMask, int foreground, int background, boolean grouped) {
+        return this.styleMask == styleMask
+            && this.foreground == foreground
+            && this.background == background
+            && this.grouped == grouped;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SequenceKey)) {
+            return false;
+        }
+        SequenceKey other = (SequenceKey)obj;
+        return matches(other.styleMask, other.foreground, other.background, other.grouped);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(styleMask);
+        result = 31 * result + foreground;
+        result = 31 * result + background;
+        result = 31 * result + (grouped ? 1 : 0);
+        return result;
+    }
+}
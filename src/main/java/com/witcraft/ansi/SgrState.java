@@ -0,0 +1,461 @@
+package com.witcraft.ansi;
+
+import com.witcraft.ansi.AnsiSequence.Style;
+
+import java.io.IOException;
+
+/**
+ * Static helpers for the graphic rendition state of a terminal, packed into a single {@code long}.
+ * <p>
+ * Unlike the style mask of an {@link AnsiSequence}, which records the styles that were requested, an SGR state records
+ * their effect: the attributes that are on and the resolved foreground and background colors. For example
+ * {@link Style#BOLD} and {@link Style#HIGH_INTENSITY} both turn on {@link #BOLD}, and {@link Style#RED} sets the
+ * foreground to {@code AnsiColor.basic(1)}. This makes states comparable, and lets the parameters needed to move a
+ * terminal from one state to another be computed.
+ * <p>
+ * Bits 0-25 hold the {@link AnsiColor packed} foreground, bits 26-51 the packed background and bits 52-61 the
+ * attribute flags. {@link #DEFAULT} (zero) is the state after a reset.
+ */
+public final class SgrState {
+    /**
+     * The state after a reset: no attributes and default colors.
+     */
+    public static final long DEFAULT = 0L;
+
+    public static final long BOLD = 1L << 52;
+    public static final long FAINT = 1L << 53;
+    public static final long ITALIC = 1L << 54;
+    public static final long UNDERLINE = 1L << 55;
+    public static final long DOUBLE_UNDERLINE = 1L << 56;
+    public static final long BLINK = 1L << 57;
+    public static final long RAPID_BLINK = 1L << 58;
+    public static final long REVERSE = 1L << 59;
+    public static final long HIDDEN = 1L << 60;
+    public static final long STRIKE = 1L << 61;
+
+    /**
+     * All attribute flags.
+     */
+    public static final long ATTRIBUTES = BOLD | FAINT | ITALIC | UNDERLINE | DOUBLE_UNDERLINE | BLINK | RAPID_BLINK | REVERSE | HIDDEN | STRIKE;
+
+    private static final long INTENSITY = BOLD | FAINT;
+    private static final long UNDERLINES = UNDERLINE | DOUBLE_UNDERLINE;
+    private static final long BLINKS = BLINK | RAPID_BLINK;
+
+    private static final int COLOR_BITS = 26;
+    private static final long COLOR_MASK = (1L << COLOR_BITS) - 1;
+    private static final long STATE_MASK = ATTRIBUTES | COLOR_MASK | (COLOR_MASK << COLOR_BITS);
+
+    private static final long[] ATTRIBUTE_FLAGS = {BOLD, FAINT, ITALIC, UNDERLINE, DOUBLE_UNDERLINE, BLINK, RAPID_BLINK, REVERSE, HIDDEN, STRIKE};
+    private static final Style[] ATTRIBUTE_STYLES = {Style.BOLD, Style.LIGHT, Style.ITALIC, Style.UNDERLINE, Style.DOUBLE_UNDERLINE, Style.BLINK, Style.RAPID_BLINK, Style.REVERSE, Style.INVISIBLE_TEXT, Style.STRIKE};
+    private static final Style[] FOREGROUND_STYLES = new Style[16];
+    private static final Style[] BACKGROUND_STYLES = new Style[16];
+
+    /**
+     * Per-thread buffer for transitions appended to an Appendable that isn't a StringBuilder.
+     */
+    private static final ThreadLocal<StringBuilder> TRANSITIONS = ThreadLocal.withInitial(() -> new StringBuilder(64));
+
+    /**
+     * The styles that don't turn on an attribute or set a color, such as {@link Style#RESET} and
+     * {@link Style#NORMAL_INTENSITY}; they have no effect on a state after a reset.
+     */
+    static final long STATELESS_STYLES;
+
+    static {
+        long stateless = 0L;
+        for (Style style : Style.VALUES) {
+            int code = style.getCode();
+            if (!style.expectsArgument() && applyCode(DEFAULT, code) == DEFAULT) {
+                stateless |= style.getMask();
+            }
+            if (code >= 30 && code <= 37) {
+                FOREGROUND_STYLES[code - 30] = style;
+            } else if (code >= 90 && code <= 97) {
+                FOREGROUND_STYLES[code - 90 + 8] = style;
+            } else if (code >= 40 && code <= 47) {
+                BACKGROUND_STYLES[code - 40] = style;
+            } else if (code >= 100 && code <= 107) {
+                BACKGROUND_STYLES[code - 100 + 8] = style;
+            }
+        }
+        STATELESS_STYLES = stateless;
+    }
+
+    private SgrState() {
+    }
+
+    /**
+     * Returns the state a terminal is in after a reset followed by the Control Sequence of {@code sequence}.
+     *
+     * @param sequence the sequence to resolve
+     * @return the packed state
+     */
+    public static long of(AnsiSequence<?> sequence) {
+        return apply(DEFAULT, sequence);
+    }
+
+    /**
+     * Returns the state a terminal in {@code state} is in after the Control Sequence of {@code sequence}. Attributes and
+     * colors that {@code sequence} doesn't change are kept, so sequences can be layered on top of each other.
+     *
+     * @param state    the packed state before the sequence
+     * @param sequence the sequence to apply
+     * @return the packed state after the sequence
+     */
+    public static long apply(long state, AnsiSequence<?> sequence) {
+        long styleMask = sequence.getStyleMask();
+        int foreground = sequence.getForeground();
+        int background = sequence.getBackground();
+        for (Style style : Style.VALUES) {
+            if ((styleMask & style.getMask()) != 0) {
+                if (style.expectsArgument()) {
+                    int color = style.argumentOf(foreground, background);
+                    if (color != AnsiColor.NONE) {
+                        state = (style.isBackground() ? withBackground(state, color) : withForeground(state, color));
+                    }
+                } else {
+                    state = applyCode(state, style.getCode());
+                }
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Sets the styles and color arguments of {@code sequence} to those that produce {@code state} after a reset. The
+     * intensity attributes map to {@link Style#BOLD} and {@link Style#LIGHT}, and colors to the basic color styles,
+     * {@link Style#COLOR_INDEX} or {@link Style#COLOR} and their background counterparts.
+     *
+     * @param state    the packed state
+     * @param sequence the sequence to update
+     * @param <T>      the type of AnsiSequence
+     * @return the updated sequence
+     */
+    public static <T extends AnsiSequence<T>> T applyTo(long state, T sequence) {
+        return sequence.setState(styleMaskOf(state), foreground(state), background(state));
+    }
+
+    /**
+     * Returns the style mask that produces {@code state} after a reset, as used by {@link #applyTo(long, AnsiSequence)}.
+     */
+    static long styleMaskOf(long state) {
+        long styleMask = 0L;
+        for (int index = 0; index < ATTRIBUTE_FLAGS.length; index++) {
+            if ((state & ATTRIBUTE_FLAGS[index]) != 0) {
+                styleMask |= ATTRIBUTE_STYLES[index].getMask();
+            }
+        }
+        styleMask |= colorStyleMask(foreground(state), FOREGROUND_STYLES, Style.COLOR_INDEX, Style.COLOR);
+        styleMask |= colorStyleMask(background(state), BACKGROUND_STYLES, Style.BACKGROUND_COLOR_INDEX, Style.BACKGROUND_COLOR);
+        return styleMask;
+    }
+
+    private static long colorStyleMask(int color, Style[] basicStyles, Style indexedStyle, Style rgbStyle) {
+        switch (AnsiColor.mode(color)) {
+            case AnsiColor.MODE_BASIC: return basicStyles[AnsiColor.value(color)].getMask();
+            case AnsiColor.MODE_INDEXED: return indexedStyle.getMask();
+            case AnsiColor.MODE_RGB: return rgbStyle.getMask();
+            default: return 0L;
+        }
+    }
+
+    /**
+     * Returns a state from its attributes and packed colors.
+     *
+     * @param attributes the attribute flags, such as {@link #BOLD}
+     * @param foreground the packed foreground color
+     * @param background the packed background color
+     * @return the packed state
+     */
+    public static long of(long attributes, int foreground, int background) {
+        return withBackground(withForeground(attributes & ATTRIBUTES, foreground), background);
+    }
+
+    /**
+     * Returns the attribute flags of {@code state}.
+     *
+     * @param state the packed state
+     * @return the attribute flags
+     */
+    public static long attributes(long state) {
+        return (state & ATTRIBUTES);
+    }
+
+    /**
+     * Returns the packed foreground color of {@code state}.
+     *
+     * @param state the packed state
+     * @return the packed foreground color
+     */
+    public static int foreground(long state) {
+        return (int)(state & COLOR_MASK);
+    }
+
+    /**
+     * Returns the packed background color of {@code state}.
+     *
+     * @param state the packed state
+     * @return the packed background color
+     */
+    public static int background(long state) {
+        return (int)((state >>> COLOR_BITS) & COLOR_MASK);
+    }
+
+    /**
+     * Returns {@code state} with its foreground replaced.
+     *
+     * @param state the packed state
+     * @param color the packed foreground color
+     * @return the new packed state
+     */
+    public static long withForeground(long state, int color) {
+        return (state & ~COLOR_MASK) | (color & COLOR_MASK);
+    }
+
+    /**
+     * Returns {@code state} with its background replaced.
+     *
+     * @param state the packed state
+     * @param color the packed background color
+     * @return the new packed state
+     */
+    public static long withBackground(long state, int color) {
+        return (state & ~(COLOR_MASK << COLOR_BITS)) | ((color & COLOR_MASK) << COLOR_BITS);
+    }
+
+    /**
+     * Applies the parameters of a Select Graphic Rendition Control Sequence to {@code state}. An empty parameter list
+     * is a reset; unknown parameters are ignored.
+     *
+     * @param state  the packed state before the sequence
+     * @param params the parameter values
+     * @param offset the index of the first parameter
+     * @param count  the number of parameters
+     * @return the packed state after the sequence
+     */
+    public static long apply(long state, int[] params, int offset, int count) {
+        if (count == 0) {
+            return DEFAULT;
+        }
+        int end = offset + count;
+        for (int index = offset; index < end; index++) {
+            int code = params[index];
+            if (code == 38 || code == 48) {
+                int color = AnsiColor.NONE;
+                if (index + 2 < end && params[index + 1] == 5) {
+                    int colorIndex = params[index + 2];
+                    color = (colorIndex >= 0 && colorIndex <= 255 ? AnsiColor.indexed(colorIndex) : AnsiColor.NONE);
+                    index += 2;
+                } else if (index + 4 < end && params[index + 1] == 2) {
+                    color = AnsiColor.rgb(params[index + 2] & 0xFF, params[index + 3] & 0xFF, params[index + 4] & 0xFF);
+                    index += 4;
+                } else {
+                    index = end;
+                }
+                if (color != AnsiColor.NONE) {
+                    state = (code == 38 ? withForeground(state, color) : withBackground(state, color));
+                }
+            } else {
+                state = applyCode(state, code);
+            }
+        }
+        return state;
+    }
+
+    private static long applyCode(long state, int code) {
+        switch (code) {
+            case 0: return DEFAULT;
+            case 1: return state | BOLD;
+            case 2: return state | FAINT;
+            case 3: return state | ITALIC;
+            case 4: return (state & ~UNDERLINES) | UNDERLINE;
+            case 5: return (state & ~BLINKS) | BLINK;
+            case 6: return (state & ~BLINKS) | RAPID_BLINK;
+            case 7: return state | REVERSE;
+            case 8: return state | HIDDEN;
+            case 9: return state | STRIKE;
+            case 21: return (state & ~UNDERLINES) | DOUBLE_UNDERLINE;
+            case 22: return state & ~INTENSITY;
+            case 23: return state & ~ITALIC;
+            case 24: return state & ~UNDERLINES;
+            case 25: return state & ~BLINKS;
+            case 27: return state & ~REVERSE;
+            case 28: return state & ~HIDDEN;
+            case 29: return state & ~STRIKE;
+            case 39: return withForeground(state, AnsiColor.NONE);
+            case 49: return withBackground(state, AnsiColor.NONE);
+            default:
+                if (code >= 30 && code <= 37) {
+                    return withForeground(state, AnsiColor.basic(code - 30));
+                } else if (code >= 90 && code <= 97) {
+                    return withForeground(state, AnsiColor.basic(code - 90 + 8));
+                } else if (code >= 40 && code <= 47) {
+                    return withBackground(state, AnsiColor.basic(code - 40));
+                } else if (code >= 100 && code <= 107) {
+                    return withBackground(state, AnsiColor.basic(code - 100 + 8));
+                }
+                return state;
+        }
+    }
+
+    /**
+     * Appends the shortest Control Sequence that moves a terminal from state {@code from} to state {@code to}: either
+     * the parameters that changed, or a reset followed by the parameters of {@code to}. Nothing is appended if the
+     * states are equal.
+     *
+     * @param out  the StringBuilder to append to
+     * @param from the current packed state
+     * @param to   the desired packed state
+     * @return {@code out} for chaining
+     */
+    public static StringBuilder appendTransition(StringBuilder out, long from, long to) {
+        from &= STATE_MASK;
+        to &= STATE_MASK;
+        if (from == to) {
+            return out;
+        }
+        int start = out.length();
+        if (to != DEFAULT) {
+            out.append(AnsiSequence.CSI_START);
+            appendChanges(out, from, to);
+            out.setCharAt(out.length() - 1, 'm');
+        }
+        int middle = out.length();
+        out.append(AnsiSequence.CSI_START).append("0;");
+        appendChanges(out, DEFAULT, to);
+        out.setCharAt(out.length() - 1, 'm');
+        if (start == middle) {
+            return out;
+        }
+        if (out.length() - middle < middle - start) {
+            out.delete(start, middle);
+        } else {
+            out.setLength(middle);
+        }
+        return out;
+    }
+
+    /**
+     * Appends the shortest Control Sequence that moves a terminal from state {@code from} to state {@code to}.
+     *
+     * @param out  the Appendable to append to
+     * @param from the current packed state
+     * @param to   the desired packed state
+     * @param <A>  the type of Appendable
+     * @return {@code out} for chaining
+     * @throws IOException if {@code out} fails to accept the sequence
+     * @see #appendTransition(StringBuilder, long, long)
+     */
+    public static <A extends Appendable> A appendTransition(A out, long from, long to) throws IOException {
+        if (out instanceof StringBuilder) {
+            appendTransition((StringBuilder)out, from, to);
+        } else if ((from & STATE_MASK) != (to & STATE_MASK)) {
+            StringBuilder transition = TRANSITIONS.get();
+            if (transition.length() != 0) {
+                // Called again by the Appendable while it receives a transition from this thread.
+                transition = new StringBuilder(32);
+            }
+            try {
+                out.append(appendTransition(transition, from, to));
+            } finally {
+                transition.setLength(0);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Appends the parameters, each followed by {@code ';'}, that turn state {@code from} into state {@code to}.
+     */
+    private static void appendChanges(StringBuilder out, long from, long to) {
+        appendGroup(out, from & INTENSITY, to & INTENSITY, 22, BOLD, 1, FAINT, 2);
+        appendFlag(out, from, to, ITALIC, 3, 23);
+        appendGroup(out, from & UNDERLINES, to & UNDERLINES, 24, UNDERLINE, 4, DOUBLE_UNDERLINE, 21);
+        appendGroup(out, from & BLINKS, to & BLINKS, 25, BLINK, 5, RAPID_BLINK, 6);
+        appendFlag(out, from, to, REVERSE, 7, 27);
+        appendFlag(out, from, to, HIDDEN, 8, 28);
+        appendFlag(out, from, to, STRIKE, 9, 29);
+        if (foreground(from) != foreground(to)) {
+            appendColor(out, foreground(to), 30, 90, 38, 39);
+        }
+        if (background(from) != background(to)) {
+            appendColor(out, background(to), 40, 100, 48, 49);
+        }
+    }
+
+    private static void appendFlag(StringBuilder out, long from, long to, long flag, int onCode, int offCode) {
+        if ((from & flag) != (to & flag)) {
+            out.append(((to & flag) != 0) ? onCode : offCode).append(';');
+        }
+    }
+
+    /**
+     * Appends the changes to a group of flags that share a single code for turning them off.
+     */
+    private static void appendGroup(StringBuilder out, long from, long to, int offCode, long first, int firstCode, long second, int secondCode) {
+        if (from == to) {
+            return;
+        }
+        if ((from & ~to) != 0) {
+            out.append(offCode).append(';');
+            from = 0;
+        }
+        if ((to & first) != 0 && (from & first) == 0) {
+            out.append(firstCode).append(';');
+        }
+        if ((to & second) != 0 && (from & second) == 0) {
+            out.append(secondCode).append(';');
+        }
+    }
+
+    private static void appendColor(StringBuilder out, int color, int basicCode, int brightCode, int extendedCode, int defaultCode) {
+        switch (AnsiColor.mode(color)) {
+            case AnsiColor.MODE_BASIC:
+                int index = AnsiColor.value(color);
+                out.append(index < 8 ? basicCode + index : brightCode + index - 8).append(';');
+                break;
+            case AnsiColor.MODE_INDEXED:
+                out.append(extendedCode).append(";5;").append(AnsiColor.value(color)).append(';');
+                break;
+            case AnsiColor.MODE_RGB:
+                out.append(extendedCode).append(";2;")
+                    .append(AnsiColor.red(color)).append(';')
+                    .append(AnsiColor.green(color)).append(';')
+                    .append(AnsiColor.blue(color)).append(';');
+                break;
+            default:
+                out.append(defaultCode).append(';');
+                break;
+        }
+    }
+
+    /**
+     * Returns the Control Sequence that sets a terminal to {@code state} after a reset.
+     *
+     * @param state the packed state
+     * @return the Control Sequence
+     */
+    public static String toSequence(long state) {
+        return appendTransition(new StringBuilder(32), DEFAULT, state).toString();
+    }
+
+    /**
+     * Returns a readable description of {@code state}, such as {@code [BOLD, fg=indexed(196), bg=none]}.
+     *
+     * @param state the packed state
+     * @return a description of the state
+     */
+    public static String toString(long state) {
+        StringBuilder result = new StringBuilder("[");
+        String[] names = {"BOLD", "FAINT", "ITALIC", "UNDERLINE", "DOUBLE_UNDERLINE", "BLINK", "RAPID_BLINK", "REVERSE", "HIDDEN", "STRIKE"};
+        for (int bit = 0; bit < names.length; bit++) {
+            if ((state & (BOLD << bit)) != 0) {
+                result.append(names[bit]).append(", ");
+            }
+        }
+        return result.append("fg=").append(AnsiColor.toString(foreground(state)))
+            .append(", bg=").append(AnsiColor.toString(background(state)))
+            .append(']').toString();
+    }
+}
@@ -0,0 +1,326 @@
+package com.witcraft.ansi;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The rendering capabilities of a terminal: the richest color mode it understands and the {@link SgrState} attributes
+ * it supports.
+ * <p>
+ * A profile is resolved once, usually by {@link #detect()}, and installed with {@link #setDefault(TerminalProfile)}.
+ * {@link AnsiSequence#getSequence()}, {@link AnsiSequence#wrap(String)} and the writers then render every sequence as
+ * the terminal supports it: colors are downsampled to the nearest supported mode and unsupported attributes are dropped,
+ * with each adapted sequence cached per profile. {@link #NONE} removes all styling, so {@code getSequence()} returns an
+ * empty String and {@code wrap(String)} returns its input, without rendering anything.
+ * <p>
+ * Unless {@value #PROPERTY_PROFILE} says otherwise, the default profile is {@link #TRUECOLOR}, which renders every
+ * sequence exactly as requested.
+ */
+public final class TerminalProfile {
+    /**
+     * System property selecting the default profile: {@code detect}, {@code none}, {@code basic}, {@code 256} or
+     * {@code truecolor}.
+     */
+    public static final String PROPERTY_PROFILE = "com.witcraft.ansi.profile";
+
+    private static final int CACHE_CAPACITY = 256;
+
+    /**
+     * A terminal without any styling, such as a pipe, a file or {@code TERM=dumb}.
+     */
+    public static final TerminalProfile NONE = new TerminalProfile("NONE", AnsiColor.MODE_NONE, 0L);
+
+    /**
+     * A terminal supporting the 16 standard colors and all attributes.
+     */
+    public static final TerminalProfile BASIC_16 = new TerminalProfile("BASIC_16", AnsiColor.MODE_BASIC, SgrState.ATTRIBUTES);
+
+    /**
+     * A terminal supporting the 256-color palette and all attributes.
+     */
+    public static final TerminalProfile INDEXED_256 = new TerminalProfile("INDEXED_256", AnsiColor.MODE_INDEXED, SgrState.ATTRIBUTES);
+
+    /**
+     * A terminal supporting 24-bit colors and all attributes; sequences are rendered exactly as requested.
+     */
+    public static final TerminalProfile TRUECOLOR = new TerminalProfile("TRUECOLOR", AnsiColor.MODE_RGB, SgrState.ATTRIBUTES);
+
+    private static volatile TerminalProfile defaultProfile = fromProperty(System.getProperty(PROPERTY_PROFILE));
+
+    private final String name;
+    private final int colorMode;
+    private final long attributes;
+    private final SequenceCache cache;
+
+    private TerminalProfile(String name, int colorMode, long attributes) {
+        this.name = name;
+        this.colorMode = colorMode;
+        this.attributes = attributes;
+        this.cache = (isEnabled() && !isUnrestricted() ? new SequenceCache(CACHE_CAPACITY, this) : null);
+    }
+
+    private static TerminalProfile of(int colorMode, long attributes) {
+        attributes &= SgrState.ATTRIBUTES;
+        for (TerminalProfile profile : new TerminalProfile[] {NONE, BASIC_16, INDEXED_256, TRUECOLOR}) {
+            if (profile.colorMode == colorMode && profile.attributes == attributes) {
+                return profile;
+            }
+        }
+        String name = (colorMode == AnsiColor.MODE_NONE ? "MONOCHROME" : "CUSTOM");
+        return new TerminalProfile(name, colorMode, attributes);
+    }
+
+    /**
+     * Returns the profile used by {@link AnsiSequence#getSequence()} and the writers.
+     *
+     * @return the default profile
+     */
+    public static TerminalProfile getDefault() {
+        return defaultProfile;
+    }
+
+    /**
+     * Sets the profile used by {@link AnsiSequence#getSequence()} and the writers.
+     *
+     * @param profile the new default profile
+     */
+    public static void setDefault(TerminalProfile profile) {
+        if (profile == null) {
+            throw new NullPointerException("profile");
+        }
+        defaultProfile = profile;
+    }
+
+    /**
+     * Detects the capabilities of the terminal attached to standard output from the {@code NO_COLOR},
+     * {@code FORCE_COLOR}, {@code TERM}, {@code COLORTERM} and {@code WT_SESSION} environment variables, and whether
+     * the process has a console.
+     * <p>
+     * The JDK only reports a console when both standard input and standard output are terminals, so output to a
+     * terminal is detected as {@link #NONE} when standard input is redirected, as in {@code java App < input}, unless
+     * {@code FORCE_COLOR} is set. Callers that know whether standard output is a terminal should use
+     * {@link #detect(boolean)}.
+     *
+     * @return the detected profile
+     */
+    public static TerminalProfile detect() {
+        return detect(System.getenv(), System.console() != null);
+    }
+
+    /**
+     * Detects the capabilities of the terminal attached to standard output from the environment variables read by
+     * {@link #detect()}, given whether standard output is a terminal.
+     *
+     * @param terminal whether standard output is a terminal
+     * @return the detected profile
+     */
+    public static TerminalProfile detect(boolean terminal) {
+        return detect(System.getenv(), terminal);
+    }
+
+    static TerminalProfile detect(Map<String, String> environment, boolean terminal) {
+        TerminalProfile profile = detectColors(environment, terminal);
+        String noColor = environment.get("NO_COLOR");
+        if (noColor != null && !noColor.isEmpty()) {
+            // NO_COLOR only asks for colors to be left out; attributes such as bold remain.
+            profile = profile.withColorMode(AnsiColor.MODE_NONE);
+        }
+        return profile;
+    }
+
+    private static TerminalProfile detectColors(Map<String, String> environment, boolean terminal) {
+        String force = environment.get("FORCE_COLOR");
+        if (force != null) {
+            switch (force.trim().toLowerCase(Locale.ROOT)) {
+                case "0":
+                case "false":
+                    return NONE;
+                case "2":
+                    return INDEXED_256;
+                case "3":
+                    return TRUECOLOR;
+                default:
+                    return BASIC_16;
+            }
+        }
+        if (!terminal) {
+            return NONE;
+        }
+        String term = environment.getOrDefault("TERM", "").toLowerCase(Locale.ROOT);
+        if (term.equals("dumb")) {
+            return NONE;
+        }
+        String colorTerm = environment.getOrDefault("COLORTERM", "").toLowerCase(Locale.ROOT);
+        if (colorTerm.equals("truecolor") || colorTerm.equals("24bit")) {
+            return TRUECOLOR;
+        }
+        if (environment.containsKey("WT_SESSION") || term.contains("truecolor") || term.contains("24bit") || term.contains("direct")) {
+            return TRUECOLOR;
+        }
+        if (term.contains("256")) {
+            return INDEXED_256;
+        }
+        return BASIC_16;
+    }
+
+    private static TerminalProfile fromProperty(String value) {
+        if (value == null) {
+            return TRUECOLOR;
+        }
+        switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "detect":
+                return detect();
+            case "none":
+                return NONE;
+            case "basic":
+            case "16":
+                return BASIC_16;
+            case "256":
+            case "indexed":
+                return INDEXED_256;
+            case "truecolor":
+            case "24bit":
+                return TRUECOLOR;
+            default:
+                throw new IllegalArgumentException("Unknown " + PROPERTY_PROFILE + ": " + value);
+        }
+    }
+
+    /**
+     * Returns the richest color mode supported, one of the {@code AnsiColor.MODE_*} constants.
+     *
+     * @return the supported color mode
+     */
+    public int getColorMode() { return colorMode; }
+
+    /**
+     * Returns the supported attribute flags, such as {@link SgrState#BOLD}.
+     *
+     * @return the supported attribute flags
+     */
+    public long getAttributes() { return attributes; }
+
+    /**
+     * Returns whether every flag in {@code attributes} is supported.
+     *
+     * @param attributes the attribute flags to test
+     * @return whether they are all supported
+     */
+    public boolean supports(long attributes) {
+        return (this.attributes & attributes) == attributes;
+    }
+
+    /**
+     * Returns whether any styling is supported.
+     *
+     * @return {@code false} for {@link #NONE}
+     */
+    public boolean isEnabled() {
+        return colorMode != AnsiColor.MODE_NONE || attributes != 0L;
+    }
+
+    /**
+     * Returns whether sequences are rendered exactly as requested.
+     */
+    boolean isUnrestricted() {
+        return colorMode == AnsiColor.MODE_RGB && attributes == SgrState.ATTRIBUTES;
+    }
+
+    /**
+     * Returns the profile with this one's attributes and {@code colorMode}.
+     *
+     * @param colorMode one of the {@code AnsiColor.MODE_*} constants
+     * @return the resulting profile
+     */
+    public TerminalProfile withColorMode(int colorMode) {
+        if (colorMode < AnsiColor.MODE_NONE || colorMode > AnsiColor.MODE_RGB) {
+            throw new IllegalArgumentException("Unknown color mode: " + colorMode);
+        }
+        return (colorMode == this.colorMode ? this : of(colorMode, attributes));
+    }
+
+    /**
+     * Returns the profile with this one's color mode and {@code attributes} also supported.
+     *
+     * @param attributes the attribute flags to add
+     * @return the resulting profile
+     */
+    public TerminalProfile withAttributes(long attributes) {
+        return (supports(attributes) ? this : of(colorMode, this.attributes | attributes));
+    }
+
+    /**
+     * Returns the profile with this one's color mode and without {@code attributes}.
+     *
+     * @param attributes the attribute flags to remove
+     * @return the resulting profile
+     */
+    public TerminalProfile withoutAttributes(long attributes) {
+        return ((this.attributes & attributes) == 0L ? this : of(colorMode, this.attributes & ~attributes));
+    }
+
+    /**
+     * Returns {@code state} as this profile can display it. Colors are downsampled to the supported mode; double
+     * underline and rapid blink fall back to their single variants, and other unsupported attributes are dropped.
+     *
+     * @param state the packed state
+     * @return the adapted state
+     */
+    public long adapt(long state) {
+        if (isUnrestricted()) {
+            return state;
+        }
+        long requested = SgrState.attributes(state);
+        long adapted = requested & attributes;
+        if ((requested & SgrState.DOUBLE_UNDERLINE) != 0L && (adapted & SgrState.DOUBLE_UNDERLINE) == 0L) {
+            adapted |= (attributes & SgrState.UNDERLINE);
+        }
+        if ((requested & SgrState.RAPID_BLINK) != 0L && (adapted & SgrState.RAPID_BLINK) == 0L) {
+            adapted |= (attributes & SgrState.BLINK);
+        }
+        return SgrState.of(adapted, AnsiColor.downsample(SgrState.foreground(state), colorMode), AnsiColor.downsample(SgrState.background(state), colorMode));
+    }
+
+    /**
+     * Returns the Control Sequence for the current state of {@code sequence} as this profile can display it.
+     *
+     * @param sequence the sequence to render
+     * @param grouped  whether to group all styles into a single Control Sequence structure
+     * @return the Control Sequence, or an empty String if nothing requested is supported
+     */
+    public String getSequence(AnsiSequence<?> sequence, boolean grouped) {
+        if (!isEnabled()) {
+            return "";
+        }
+        return (cache == null ? SequenceCache.getShared() : cache).getSequence(sequence, grouped);
+    }
+
+    String getSequence(SequenceKey key, AnsiSequence<?> sequence) {
+        if (!isEnabled()) {
+            return "";
+        }
+        return (cache == null ? SequenceCache.getShared() : cache).getSequence(key, sequence);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof TerminalProfile)) {
+            return false;
+        }
+        TerminalProfile other = (TerminalProfile)obj;
+        return colorMode == other.colorMode && attributes == other.attributes;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * colorMode + Long.hashCode(attributes);
+    }
+
+    @Override
+    public String toString() {
+        return name + "[colorMode=" + colorMode + ", attributes=" + SgrState.toString(attributes) + "]";
+    }
+}
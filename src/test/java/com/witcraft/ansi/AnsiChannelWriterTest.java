@@ -0,0 +1,71 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiChannelWriterTest {
+    @Test
+    void testConcurrentLinesStayWhole() throws Exception {
+        Path file = Files.createTempFile("ansi", ".log");
+        try {
+            Files.write(file, "existing\n".getBytes(StandardCharsets.UTF_8));
+            int threads = 16;
+            int lines = 500;
+            try (AnsiChannelWriter writer = AnsiChannelWriter.open(file)) {
+                List<Thread> producers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    Ansi style = new Ansi().colorIndex(t).bold();
+                    String text = "thread " + t + " writes a line";
+                    Thread producer = new Thread(() -> {
+                        try {
+                            for (int i = 0; i < lines; i++) {
+                                writer.writeLine(style, text);
+                            }
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    });
+                    producers.add(producer);
+                    producer.start();
+                }
+                for (Thread producer : producers) {
+                    producer.join();
+                }
+            }
+
+            List<String> written = Files.readAllLines(file, StandardCharsets.UTF_8);
+            assertEquals(1 + threads * lines, written.size());
+            assertEquals("existing", written.get(0));
+            for (String line : written.subList(1, written.size())) {
+                String plain = AnsiStripper.strip(line);
+                assertTrue(plain.matches("thread \\d+ writes a line"), line);
+                assertTrue(line.endsWith("\033[0m"), line);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testClosedWriterRejectsWrites() throws IOException {
+        Path file = Files.createTempFile("ansi", ".log");
+        try {
+            AnsiChannelWriter writer = AnsiChannelWriter.open(file);
+            writer.write(new Ansi().red(), "red").write(" plain");
+            writer.close();
+            assertEquals(new Ansi().red().wrap("red") + " plain", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            assertThrows(IOException.class, () -> writer.write("late"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiColorTest {
+    @Test
+    void testPaletteColorsMapToThemselves() {
+        for (int index = 16; index < 256; index++) {
+            assertEquals(AnsiColor.indexed(index), AnsiColor.toIndexed(AnsiColor.toRgb(AnsiColor.indexed(index))), "Index " + index);
+        }
+        for (int index = 0; index < 16; index++) {
+            assertEquals(AnsiColor.basic(index), AnsiColor.toBasic(AnsiColor.toRgb(AnsiColor.basic(index))));
+            assertEquals(AnsiColor.basic(index), AnsiColor.toBasic(AnsiColor.indexed(index)));
+        }
+    }
+
+    @Test
+    void testNearestColors() {
+        assertEquals(AnsiColor.indexed(196), AnsiColor.toIndexed(AnsiColor.rgb(0xFF0000)));
+        assertEquals(AnsiColor.indexed(231), AnsiColor.toIndexed(AnsiColor.rgb(0xFEFEFE)));
+        assertEquals(AnsiColor.indexed(208), AnsiColor.toIndexed(AnsiColor.rgb(0xFF8700)));
+        assertEquals(AnsiColor.indexed(240), AnsiColor.toIndexed(AnsiColor.rgb(0x585858)));
+        assertEquals(AnsiColor.basic(9), AnsiColor.toBasic(AnsiColor.rgb(0xF01010)));
+        assertEquals(AnsiColor.basic(4), AnsiColor.toBasic(AnsiColor.rgb(0x0000E0)));
+        assertEquals(AnsiColor.basic(0), AnsiColor.toBasic(AnsiColor.indexed(232)));
+        assertEquals(AnsiColor.basic(7), AnsiColor.toBasic(AnsiColor.indexed(255)));
+        assertEquals(AnsiColor.basic(15), AnsiColor.toBasic(AnsiColor.indexed(231)));
+    }
+
+    @Test
+    void testDownsample() {
+        int rgb = AnsiColor.rgb(0x336699);
+        assertEquals(rgb, AnsiColor.downsample(rgb, AnsiColor.MODE_RGB));
+        assertEquals(AnsiColor.toIndexed(rgb), AnsiColor.downsample(rgb, AnsiColor.MODE_INDEXED));
+        assertEquals(AnsiColor.toBasic(rgb), AnsiColor.downsample(rgb, AnsiColor.MODE_BASIC));
+        assertEquals(AnsiColor.NONE, AnsiColor.downsample(rgb, AnsiColor.MODE_NONE));
+        assertEquals(AnsiColor.basic(3), AnsiColor.downsample(AnsiColor.basic(3), AnsiColor.MODE_INDEXED));
+        assertEquals(AnsiColor.NONE, AnsiColor.toRgb(AnsiColor.NONE));
+        assertEquals(AnsiColor.rgb(0x5F87AF), AnsiColor.toRgb(AnsiColor.indexed(67)));
+    }
+}
@@ -0,0 +1,89 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiEncoderTest {
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testSequenceMatchesStringRendering() {
+        ByteBuffer buffer = ByteBuffer.allocate(AnsiEncoder.MIN_CAPACITY);
+        Ansi[] sequences = {
+            new Ansi(),
+            new Ansi().bold().red(),
+            new Ansi(false).underline().colorIndex(196).bgColorIndex(0),
+            new Ansi().color(0x0A141E).bgBrightWhite(),
+            new Ansi(false).italic().color(0xFF00FF),
+            new Ansi().bold().color(255, 0, 0).bgColorIndex(255),
+            new Ansi(false).color(0, 0, 0)
+        };
+        for (Ansi sequence : sequences) {
+            buffer.clear();
+            int length = AnsiEncoder.encodeSequence(sequence, sequence.isGrouped(), buffer);
+            assertTrue(length <= AnsiEncoder.maxSequenceLength(sequence));
+            assertEquals(sequence.getSequence(), new String(buffer.array(), 0, length, StandardCharsets.US_ASCII));
+        }
+        buffer.clear();
+        AnsiStyle style = AnsiStyle.DEFAULT.blink().colorIndex(42);
+        int length = AnsiEncoder.encodeSequence(style, true, buffer);
+        assertEquals(style.getSequence(), new String(buffer.array(), 0, length, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testWrappedTextToStream() throws IOException {
+        Ansi ansi = new Ansi().bgGreen().colorIndex(255);
+        String text = "caf\u00e9 \u4e2d\u6587 \ud83d\ude00";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AnsiEncoder encoder = new AnsiEncoder(out)) {
+            encoder.writeWrapped(ansi, text);
+        }
+        assertArrayEquals(bytes(ansi.wrap(text)), out.toByteArray());
+    }
+
+    @Test
+    void testSurrogatePairSplitAcrossWrites() throws IOException {
+        String text = "a\ud83d\ude00b\ud800";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AnsiEncoder encoder = new AnsiEncoder(Channels.newChannel(out), AnsiEncoder.MIN_CAPACITY)) {
+            encoder.writeText(text, 0, 2);
+            encoder.writeText(text, 2, text.length());
+        }
+        assertArrayEquals(bytes(text), out.toByteArray());
+    }
+
+    @Test
+    void testHeldSurrogateBeforeOtherWrites() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AnsiEncoder encoder = new AnsiEncoder(out).setProfile(TerminalProfile.TRUECOLOR)) {
+            encoder.writeText("a\ud83d").writeReset();
+            encoder.writeText("b\ud83d").writeBytes(new byte[] {'!'}, 0, 1);
+            AnsiTemplate.compile("{msg}{bold}c{/}").writeTo(encoder, "d\ud83d");
+        }
+        assertEquals("a?\033[0mb?!d?\033[1mc\033[0m", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testOutputLargerThanBuffer() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (AnsiEncoder encoder = new AnsiEncoder(out, AnsiEncoder.MIN_CAPACITY)) {
+            for (int i = 0; i < 256; i++) {
+                Ansi ansi = new Ansi().colorIndex(i);
+                String text = "\u00a7" + i;
+                encoder.writeSequence(ansi).writeText(text);
+                expected.append(ansi).append(text);
+            }
+        }
+        assertArrayEquals(bytes(expected.toString()), out.toByteArray());
+    }
+}
@@ -0,0 +1,76 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiGradientTest {
+    private static final int BLACK = AnsiColor.rgb(0x000000);
+    private static final int WHITE = AnsiColor.rgb(0xffffff);
+
+    @Test
+    void testInterpolation() {
+        AnsiGradient gradient = AnsiGradient.of(BLACK, WHITE);
+        assertEquals(BLACK, gradient.colorAt(0.0));
+        assertEquals(WHITE, gradient.colorAt(1.0));
+        assertEquals(AnsiColor.rgb(0x808080), gradient.colorAt(0.5));
+        assertEquals(BLACK, gradient.colorAt(-3.0));
+        assertEquals(WHITE, gradient.colorAt(Double.POSITIVE_INFINITY));
+        assertArrayEquals(new int[] {BLACK, AnsiColor.rgb(0x555555), AnsiColor.rgb(0xaaaaaa), WHITE}, gradient.sample(4));
+        assertArrayEquals(new int[] {BLACK}, gradient.sample(1));
+
+        AnsiGradient stops = AnsiGradient.of(new double[] {0.25, 0.5, 0.5, 1.0}, new int[] {AnsiColor.rgb(0xff0000), AnsiColor.rgb(0x00ff00), AnsiColor.rgb(0x0000ff), AnsiColor.basic(15)});
+        assertEquals(AnsiColor.rgb(0xff0000), stops.colorAt(0.1));
+        assertEquals(AnsiColor.rgb(0x808000), stops.colorAt(0.375));
+        assertEquals(AnsiColor.rgb(0x00ff00), stops.colorAt(0.5));
+        assertEquals(AnsiColor.rgb(0x0000ff), stops.colorAt(0.5001));
+        assertEquals(AnsiColor.rgb(0xffffff), stops.colorAt(1.0));
+        assertEquals(AnsiColor.rgb(0x123456), AnsiGradient.of(AnsiColor.rgb(0x123456)).colorAt(0.7));
+
+        assertThrows(IllegalArgumentException.class, () -> AnsiGradient.of());
+        assertThrows(IllegalArgumentException.class, () -> AnsiGradient.of(BLACK, AnsiColor.NONE));
+        assertThrows(IllegalArgumentException.class, () -> AnsiGradient.of(new double[] {0.5, 0.25}, new int[] {BLACK, WHITE}));
+    }
+
+    @Test
+    void testForegroundMergesEqualColors() {
+        AnsiText text = AnsiGradient.of(BLACK, AnsiColor.rgb(0x030303)).foreground("abcdefgh");
+        assertEquals("abcdefgh", text.toString());
+        assertEquals(4, text.getRunCount());
+        assertEquals(AnsiColor.rgb(0x000000), SgrState.foreground(text.getState(0)));
+        assertEquals(AnsiColor.rgb(0x030303), SgrState.foreground(text.getState(7)));
+        assertEquals("\033[38;5;16mabcdefgh\033[0m", renderIndexed(text));
+    }
+
+    private static String renderIndexed(AnsiText text) {
+        TerminalProfile previous = TerminalProfile.getDefault();
+        TerminalProfile.setDefault(TerminalProfile.INDEXED_256);
+        try {
+            return text.render();
+        } finally {
+            TerminalProfile.setDefault(previous);
+        }
+    }
+
+    @Test
+    void testCellsAndLayering() {
+        AnsiText out = new AnsiText().push(AnsiStyle.of(AnsiSequence.Style.BOLD));
+        AnsiGradient.of(BLACK, WHITE).apply(out, "e\u0301\ud83d\ude00x", true);
+        assertEquals(SgrState.BOLD, out.getState());
+        assertEquals(SgrState.withBackground(SgrState.BOLD, BLACK), out.getState(1));
+        assertEquals(SgrState.withBackground(SgrState.BOLD, AnsiColor.rgb(0x808080)), out.getState(2));
+        assertEquals(SgrState.withBackground(SgrState.BOLD, AnsiColor.rgb(0x808080)), out.getState(3));
+        assertEquals(SgrState.withBackground(SgrState.BOLD, WHITE), out.getState(4));
+    }
+
+    @Test
+    void testHeatmap() {
+        AnsiGradient gradient = AnsiGradient.of(AnsiColor.rgb(0x0000ff), AnsiColor.rgb(0xff0000));
+        AnsiText text = gradient.heatmap("####", new double[] {10, 20, Double.NaN}, 10, 20);
+        assertEquals(AnsiColor.rgb(0x0000ff), SgrState.foreground(text.getState(0)));
+        assertEquals(AnsiColor.rgb(0xff0000), SgrState.foreground(text.getState(1)));
+        assertEquals(SgrState.DEFAULT, text.getState(2));
+        assertEquals(SgrState.DEFAULT, text.getState(3));
+        assertEquals("\033[38;2;0;0;255m#\033[38;2;255;0;0m#\033[0m##", text.render());
+    }
+}
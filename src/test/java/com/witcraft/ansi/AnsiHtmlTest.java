@@ -0,0 +1,82 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiHtmlTest {
+    @Test
+    void testToHtml() {
+        assertEquals("plain &lt;b&gt; &amp; text", AnsiHtml.toHtml("plain <b> & text"));
+        assertEquals("<span class=\"ansi-bold ansi-fg-1\">FAILED</span> ok", AnsiHtml.toHtml("\033[1;31mFAILED\033[0m ok"));
+        assertEquals("<span class=\"ansi-fg-196\">a</span><span class=\"ansi-fg-196 ansi-bg-4\">b</span>",
+            AnsiHtml.toHtml("\033[38;5;196ma\033[44mb"));
+        assertEquals("<span style=\"color:#ff8800;background-color:#000010\">x</span>",
+            AnsiHtml.toHtml("\033[38;2;255;136;0;48;2;0;0;16mx"));
+        assertEquals("<span class=\"ansi-underline-strike ansi-fg-2\">x</span>", AnsiHtml.toHtml("\033[4;9;32mx"));
+        assertEquals("a\tb\nc", AnsiHtml.toHtml("a\tb\r\n\007c\033]0;title\007"));
+    }
+
+    @Test
+    void testOneSpanPerRun() {
+        assertEquals("<span class=\"ansi-italic\">ab</span>c", AnsiHtml.toHtml("\033[3ma\033[1;22mb\033[32;39m\033[0mc"));
+        assertEquals("<span class=\"ansi-bold\">a</span><span class=\"ansi-bold ansi-italic\">b</span>",
+            AnsiHtml.toHtml("\033[1ma\033[3mb\033[0m"));
+        assertEquals("", AnsiHtml.toHtml("\033[31m\033[0m"));
+    }
+
+    @Test
+    void testReverse() {
+        assertEquals("<span class=\"ansi-bg-reverse ansi-fg-4\">x</span>", AnsiHtml.toHtml("\033[7;44mx"));
+        assertEquals("<span class=\"ansi-fg-reverse ansi-bg-1\">x</span>", AnsiHtml.toHtml("\033[7;31mx"));
+    }
+
+    @Test
+    void testStreaming() throws IOException {
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            log.append(new Ansi().colorIndex(i % 256).wrap("line " + i)).append(" \u00e9 <ok>\n");
+        }
+        String expected = AnsiHtml.toHtml(log);
+
+        StringWriter out = new StringWriter();
+        AnsiHtml.convert(new StringReader(log.toString()), out);
+        assertEquals(expected, out.toString());
+
+        out = new StringWriter();
+        AnsiHtml.convert(new ByteArrayInputStream(log.toString().getBytes(StandardCharsets.UTF_8)), out);
+        assertEquals(expected, out.toString());
+
+        Writer failing = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("closed");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertThrows(IOException.class, () -> AnsiHtml.convert(new StringReader("x"), failing));
+    }
+
+    @Test
+    void testStyleSheet() {
+        String sheet = AnsiHtml.getStyleSheet();
+        assertTrue(sheet.contains(".ansi-fg-196 { color: #ff0000; }\n"), sheet);
+        assertTrue(sheet.contains(".ansi-bg-0 { background-color: #000000; }\n"));
+        assertTrue(sheet.contains(".ansi-bold { font-weight: bold; }\n"));
+        assertSame(sheet, AnsiHtml.getStyleSheet());
+    }
+}
@@ -0,0 +1,154 @@
+package com.witcraft.ansi;
+
+import com.witcraft.ansi.AnsiMetrics.Counter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiMetricsTest {
+    private interface Action {
+        void run(AnsiMetrics.Counters metrics) throws IOException;
+    }
+
+    private static void withMetrics(Action action) throws IOException {
+        AnsiMetrics.Counters metrics = AnsiMetrics.enable();
+        try {
+            action.run(metrics);
+        } finally {
+            AnsiMetrics.disable();
+        }
+    }
+
+    @Test
+    void testDisabledByDefault() {
+        assertFalse(AnsiMetrics.isEnabled());
+        assertNull(AnsiMetrics.getRecorder());
+        assertNull(AnsiMetrics.getCounters());
+        assertEquals(0L, AnsiMetrics.flushStarted());
+    }
+
+    @Test
+    void testEncoderCounts() throws IOException {
+        withMetrics((metrics) -> {
+            assertSame(metrics, AnsiMetrics.getCounters());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            AnsiEncoder encoder = new AnsiEncoder(bytes);
+            encoder.writeWrapped(AnsiStyle.DEFAULT.bold(), "h\u00e9llo");
+            encoder.writeBytes(new byte[] {'!'}, 0, 1);
+            encoder.flush();
+            assertEquals(2, metrics.get(Counter.SEQUENCES_WRITTEN));
+            assertEquals("\033[1m\033[0m".length(), metrics.get(Counter.ESCAPE_BYTES));
+            assertEquals(7, metrics.get(Counter.PAYLOAD_BYTES));
+            assertEquals(bytes.size(), metrics.get(Counter.ESCAPE_BYTES) + metrics.get(Counter.PAYLOAD_BYTES));
+            assertEquals(1, metrics.get(Counter.FLUSHES));
+            long flushes = 0;
+            for (long count : metrics.getFlushHistogram()) {
+                flushes += count;
+            }
+            assertEquals(1, flushes);
+
+            metrics.reset();
+            assertEquals(0, metrics.get(Counter.ESCAPE_BYTES));
+        });
+    }
+
+    @Test
+    void testWriterCounts() throws IOException {
+        withMetrics((metrics) -> {
+            StringWriter out = new StringWriter();
+            AnsiWriter writer = new AnsiWriter(out).setProfile(TerminalProfile.TRUECOLOR);
+            writer.apply(AnsiStyle.DEFAULT.bold());
+            writer.apply(AnsiStyle.DEFAULT.bold());
+            writer.write("abc");
+            writer.reset();
+            assertEquals("\033[1mabc\033[0m", out.toString());
+            assertEquals(2, metrics.get(Counter.SEQUENCES_WRITTEN));
+            assertEquals(8, metrics.get(Counter.ESCAPE_BYTES));
+            assertEquals(3, metrics.get(Counter.PAYLOAD_BYTES));
+            assertEquals(1, metrics.get(Counter.TRANSITIONS_ELIDED));
+        });
+    }
+
+    @Test
+    void testTemplateCounts() throws IOException {
+        withMetrics((metrics) -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            AnsiEncoder encoder = new AnsiEncoder(bytes).setProfile(TerminalProfile.TRUECOLOR);
+            AnsiTemplate.compile("{red}x{/} {msg}").writeTo(encoder, "\u00e9");
+            encoder.flush();
+            assertEquals("\033[31mx\033[0m \u00e9", bytes.toString(StandardCharsets.UTF_8));
+            assertEquals(2, metrics.get(Counter.SEQUENCES_WRITTEN));
+            assertEquals("\033[31m\033[0m".length(), metrics.get(Counter.ESCAPE_BYTES));
+            assertEquals(4, metrics.get(Counter.PAYLOAD_BYTES));
+            assertEquals(bytes.size(), metrics.get(Counter.ESCAPE_BYTES) + metrics.get(Counter.PAYLOAD_BYTES));
+        });
+    }
+
+    @Test
+    void testOutputElidesSuperseded() throws IOException {
+        withMetrics((metrics) -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (AnsiOutput output = new AnsiOutput(bytes)) {
+                output.write("\033[31m\033[32mx\033[1m\033[22my");
+                output.flush();
+            }
+            assertEquals(3, metrics.get(Counter.TRANSITIONS_ELIDED));
+            assertEquals(2, metrics.get(Counter.PAYLOAD_BYTES));
+        });
+    }
+
+    @Test
+    void testCacheCounts() throws IOException {
+        withMetrics((metrics) -> {
+            SequenceCache cache = new SequenceCache(4);
+            Ansi ansi = new Ansi().underline();
+            cache.getSequence(ansi, true);
+            cache.getSequence(ansi, true);
+            assertEquals(1, metrics.get(Counter.CACHE_MISSES));
+            assertEquals(1, metrics.get(Counter.CACHE_HITS));
+        });
+    }
+
+    @Test
+    void testCustomRecorder() throws IOException {
+        Map<Counter, Long> totals = new EnumMap<>(Counter.class);
+        AnsiMetrics.setRecorder(new AnsiMetrics.Recorder() {
+            @Override
+            public synchronized void add(Counter counter, long amount) {
+                totals.merge(counter, amount, Long::sum);
+            }
+
+            @Override
+            public void flushed(long nanos, long bytes) {
+                add(Counter.FLUSHES, 1);
+            }
+        });
+        try {
+            assertNull(AnsiMetrics.getCounters());
+            AnsiEncoder encoder = new AnsiEncoder(new ByteArrayOutputStream());
+            encoder.writeText("abc").flush();
+            assertEquals(Long.valueOf(3), totals.get(Counter.PAYLOAD_BYTES));
+            assertEquals(Long.valueOf(1), totals.get(Counter.FLUSHES));
+        } finally {
+            AnsiMetrics.disable();
+        }
+    }
+
+    @Test
+    void testHistogramBuckets() {
+        assertEquals(0, AnsiMetrics.Counters.bucketOf(0));
+        assertEquals(1, AnsiMetrics.Counters.bucketOf(1));
+        assertEquals(10, AnsiMetrics.Counters.bucketOf(1000));
+        assertEquals(AnsiMetrics.HISTOGRAM_BUCKETS - 1, AnsiMetrics.Counters.bucketOf(Long.MAX_VALUE));
+        assertTrue(1000 < AnsiMetrics.Counters.bucketLimit(10));
+        assertTrue(1000 >= AnsiMetrics.Counters.bucketLimit(9));
+        assertEquals(Long.MAX_VALUE, AnsiMetrics.Counters.bucketLimit(AnsiMetrics.HISTOGRAM_BUCKETS - 1));
+    }
+}
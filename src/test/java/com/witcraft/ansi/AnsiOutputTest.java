@@ -0,0 +1,138 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiOutputTest {
+    @Test
+    void testElidesRedundantResets() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AnsiOutput output = new AnsiOutput(bytes);
+        Ansi red = new Ansi().red();
+        output.write(red.wrap("A"));
+        output.write(red.wrap("B"));
+        output.write(red, "C");
+        output.write(new Ansi().red().bold(), "D");
+        output.write("\033[2K");
+        output.flush();
+        assertEquals("\033[31mABC\033[1mD\033[2K", bytes.toString(StandardCharsets.UTF_8));
+        output.close();
+        assertEquals("\033[31mABC\033[1mD\033[2K\033[0m", bytes.toString(StandardCharsets.UTF_8));
+        assertThrows(IllegalStateException.class, () -> output.write("late"));
+    }
+
+    @Test
+    void testSegmentsFromManyThreadsStayWhole() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AnsiOutput output = new AnsiOutput(bytes, 64, 1024, 1, TimeUnit.MILLISECONDS, AnsiOutput.OverflowPolicy.BLOCK);
+        int threads = 8;
+        int segments = 2000;
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Ansi style = new Ansi().colorIndex(t);
+            String segment = "<" + t + "-segment>";
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < segments; i++) {
+                    output.write(style, segment);
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        output.close();
+
+        String text = AnsiStripper.strip(bytes.toString(StandardCharsets.UTF_8));
+        for (int t = 0; t < threads; t++) {
+            String segment = "<" + t + "-segment>";
+            int count = 0;
+            for (int index = text.indexOf(segment); index >= 0; index = text.indexOf(segment, index + 1)) {
+                count++;
+            }
+            assertEquals(segments, count, "Segments of thread " + t);
+        }
+        assertEquals(threads * segments * "<0-segment>".length(), text.length());
+    }
+
+    @Test
+    void testCloseWritesAcceptedSegments() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            AnsiOutput output = new AnsiOutput(bytes, 16, 1024, 1, TimeUnit.MILLISECONDS, AnsiOutput.OverflowPolicy.BLOCK);
+            int threads = 4;
+            AtomicInteger accepted = new AtomicInteger();
+            CountDownLatch started = new CountDownLatch(threads);
+            List<Thread> producers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread producer = new Thread(() -> {
+                    started.countDown();
+                    try {
+                        while (true) {
+                            if (output.write("x")) {
+                                accepted.incrementAndGet();
+                            }
+                        }
+                    } catch (IllegalStateException ex) {
+                        // Closed.
+                    }
+                });
+                producers.add(producer);
+                producer.start();
+            }
+            started.await();
+            output.close();
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            String text = bytes.toString(StandardCharsets.UTF_8);
+            assertEquals(accepted.get(), text.length() - text.replace("x", "").length(), "Round " + round);
+        }
+    }
+
+    @Test
+    void testDropPolicy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        OutputStream blocking = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        AnsiOutput output = new AnsiOutput(blocking, 4, 1024, 0, TimeUnit.MILLISECONDS, AnsiOutput.OverflowPolicy.DROP);
+        output.write("first");
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (output.write("more")) {
+                accepted++;
+            }
+        }
+        assertEquals(4, accepted);
+        assertEquals(6, output.getDroppedCount());
+        release.countDown();
+        output.close();
+    }
+}
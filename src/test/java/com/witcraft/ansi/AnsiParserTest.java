@@ -0,0 +1,128 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiParserTest {
+    /**
+     * Records every token as text, with sequences in canonical form between brackets.
+     */
+    private static class Recorder implements AnsiParser.Handler {
+        private final StringBuilder out = new StringBuilder();
+        private long state = SgrState.DEFAULT;
+
+        @Override
+        public void text(CharSequence input, int start, int end) {
+            out.append(input, start, end);
+        }
+
+        @Override
+        public void text(ByteBuffer input, int start, int end) {
+            byte[] bytes = new byte[end - start];
+            for (int i = start; i < end; i++) {
+                bytes[i - start] = input.get(i);
+            }
+            out.append(new String(bytes, StandardCharsets.ISO_8859_1));
+        }
+
+        @Override
+        public void controlSequence(AnsiParser parser) {
+            if (parser.isSelectGraphicRendition()) {
+                state = parser.applyTo(state);
+            }
+            parser.appendSequenceTo(out.append('<')).append('>');
+        }
+
+        @Override
+        public void escapeSequence(AnsiParser parser) {
+            parser.appendSequenceTo(out.append('<')).append('>');
+        }
+
+        @Override
+        public void operatingSystemCommand(AnsiParser parser) {
+            parser.appendSequenceTo(out.append('<')).append('>');
+        }
+    }
+
+    private static final String INPUT = "plain \033[1;31mred\033[0m \033[38;5;200mindexed\033[m"
+        + "\033[?25l\033]0;title\007\033]8;;http://example.com\033\\link\033]8;;\033\\"
+        + "\033(B\033P1$r\033\\\033[2J\033[;4H\ttab\033[48;2;1;2;3mrgb\033[1\030after cancel";
+
+    private static final String EXPECTED = "plain <\033[1;31m>red<\033[0m> <\033[38;5;200m>indexed<\033[m>"
+        + "<\033[?25l><\033]0;title\033\\><\033]8;;http://example.com\033\\>link<\033]8;;\033\\>"
+        + "<\033(B><\033[2J><\033[0;4H>\ttab<\033[48;2;1;2;3m>rgbafter cancel";
+
+    @Test
+    void testTokens() {
+        Recorder recorder = new Recorder();
+        AnsiParser parser = new AnsiParser(recorder);
+        parser.parse(INPUT);
+        assertFalse(parser.finish());
+        assertEquals(EXPECTED, recorder.out.toString());
+        assertEquals(SgrState.of(0L, AnsiColor.NONE, AnsiColor.rgb(1, 2, 3)), recorder.state);
+    }
+
+    @Test
+    void testResumesAcrossChunks() throws IOException {
+        for (int chunk = 1; chunk <= INPUT.length(); chunk++) {
+            Recorder recorder = new Recorder();
+            AnsiParser parser = new AnsiParser(recorder);
+            for (int start = 0; start < INPUT.length(); start += chunk) {
+                parser.parse(new StringBuilder(INPUT), start, Math.min(INPUT.length(), start + chunk));
+            }
+            assertEquals(EXPECTED, recorder.out.toString(), "Chunk size " + chunk);
+        }
+
+        Recorder recorder = new Recorder();
+        new AnsiParser(recorder).parse(new StringReader(INPUT));
+        assertEquals(EXPECTED, recorder.out.toString());
+    }
+
+    @Test
+    void testBytes() {
+        String input = "caf\u00e9 \033[1mbold\u2713\033[0m\033[";
+        Recorder recorder = new Recorder();
+        AnsiParser parser = new AnsiParser(recorder);
+        ByteBuffer bytes = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+        parser.parse(bytes);
+        assertFalse(bytes.hasRemaining());
+        assertTrue(parser.finish());
+        String expected = "caf\u00e9 <\033[1m>bold\u2713<\033[0m>";
+        assertEquals(expected, new String(recorder.out.toString().getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(64);
+        direct.put(input.getBytes(StandardCharsets.UTF_8)).flip();
+        Recorder directRecorder = new Recorder();
+        new AnsiParser(directRecorder).parse(direct);
+        assertEquals(recorder.out.toString(), directRecorder.out.toString());
+    }
+
+    @Test
+    void testDecodesStyles() {
+        Ansi[] sequences = {
+            new Ansi().bold().red(),
+            new Ansi().underline().bgBrightCyan().italic(),
+            new Ansi().colorIndex(120).bgColorIndex(17),
+            new Ansi().color(255, 128, 1).strike().reverse()
+        };
+        for (Ansi sequence : sequences) {
+            long expected = SgrState.of(sequence);
+            Ansi[] decoded = new Ansi[1];
+            AnsiParser parser = new AnsiParser(new AnsiParser.Handler() {
+                @Override
+                public void controlSequence(AnsiParser parser) {
+                    decoded[0] = parser.applyTo(new Ansi());
+                }
+            });
+            parser.parse(SgrState.toSequence(expected));
+            assertEquals(expected, SgrState.of(decoded[0]));
+            assertEquals(sequence.getStyles(), decoded[0].getStyles());
+        }
+    }
+}
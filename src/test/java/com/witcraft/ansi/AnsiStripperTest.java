@@ -0,0 +1,109 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiStripperTest {
+    private static final Pattern PATTERN_ANSI_CONTROL_SEQUENCE = Pattern.compile("(\\x1B\\[)([\\x30-\\x3F]*)([\\x20-\\x2F]*)([\\x40-\\x7E])");
+
+    private static String randomText(Random random) {
+        Ansi ansi = new Ansi();
+        StringBuilder text = new StringBuilder();
+        for (int i = random.nextInt(200); i > 0; i--) {
+            if (random.nextInt(4) == 0) {
+                AnsiSequence.Style style = AnsiSequence.Style.VALUES[random.nextInt(AnsiSequence.Style.VALUES.length)];
+                text.append(style.expectsArgument() ? ansi.reset(style, random.nextInt(256)) : ansi.reset(style));
+            } else {
+                text.append("text \u00e9\u2713 ".charAt(random.nextInt(8)));
+            }
+        }
+        return text.toString();
+    }
+
+    @Test
+    void testMatchesRegex() throws IOException {
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            String text = randomText(random);
+            String expected = PATTERN_ANSI_CONTROL_SEQUENCE.matcher(text).replaceAll("");
+            byte[] expectedBytes = expected.getBytes(StandardCharsets.UTF_8);
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+            assertEquals(expected, AnsiStripper.strip(text));
+            assertArrayEquals(expected.toCharArray(), AnsiStripper.strip(text.toCharArray()));
+            assertArrayEquals(expectedBytes, AnsiStripper.strip(bytes));
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 1);
+            direct.put((byte)'x').put(bytes).flip().position(1);
+            ByteBuffer stripped = AnsiStripper.strip(direct);
+            assertEquals(1, direct.position());
+            byte[] strippedBytes = new byte[stripped.remaining()];
+            stripped.duplicate().get(strippedBytes);
+            assertArrayEquals(expectedBytes, strippedBytes);
+
+            char[] inPlace = ("ab" + text).toCharArray();
+            int count = AnsiStripper.strip(inPlace, 2, inPlace.length, inPlace, 0);
+            assertEquals(expected, new String(inPlace, 0, count));
+
+            assertEquals(expected, readAll(AnsiStripper.strip(new StringReader(text)), random.nextInt(16) + 1));
+            assertArrayEquals(expectedBytes, readAll(AnsiStripper.strip(new ByteArrayInputStream(bytes)), random.nextInt(16) + 1));
+        }
+    }
+
+    @Test
+    void testReturnsPlainInput() {
+        String text = "plain text";
+        assertSame(text, AnsiStripper.strip(text));
+        char[] chars = text.toCharArray();
+        assertSame(chars, AnsiStripper.strip(chars));
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        assertSame(bytes, AnsiStripper.strip(bytes));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        assertSame(buffer, AnsiStripper.strip(buffer));
+    }
+
+    @Test
+    void testStripsOtherSequences() throws IOException {
+        String text = "a\033]8;;http://example.com\033\\b\033]8;;\007c\033[?1049h\033Pq#0\033\\d\033[1";
+        assertEquals("abcd", AnsiStripper.strip(text));
+
+        StringBuilder large = new StringBuilder("\033]0;");
+        for (int i = 0; i < 100000; i++) {
+            large.append('x');
+        }
+        large.append("\007end");
+        assertEquals("end", readAll(AnsiStripper.strip(new StringReader(large.toString())), 4096));
+    }
+
+    private static String readAll(Reader reader, int chunk) throws IOException {
+        StringBuilder out = new StringBuilder();
+        char[] buffer = new char[chunk];
+        int count;
+        while ((count = reader.read(buffer)) >= 0) {
+            out.append(buffer, 0, count);
+        }
+        return out.toString();
+    }
+
+    private static byte[] readAll(InputStream in, int chunk) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[chunk];
+        int count;
+        while ((count = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
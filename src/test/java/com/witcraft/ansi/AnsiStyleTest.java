@@ -0,0 +1,63 @@
+package com.witcraft.ansi;
+
+import com.witcraft.ansi.AnsiSequence.Style;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiStyleTest {
+    @Test
+    void testInterning() {
+        AnsiStyle first = AnsiStyle.of(new Ansi().bold().colorIndex(200));
+        AnsiStyle second = new Ansi().colorIndex(200).bold().toStyle();
+        AnsiStyle other = AnsiStyle.of(new Ansi().bold().colorIndex(201));
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertNotEquals(first, other);
+    }
+
+    @Test
+    void testInterningIgnoresUnusedArguments() {
+        long mask = Style.BOLD.getMask();
+
+        assertSame(AnsiStyle.of(Style.BOLD), AnsiStyle.of(mask, AnsiColor.indexed(9), AnsiColor.rgb(0x102030), true));
+        assertEquals(AnsiColor.NONE, AnsiStyle.of(mask, AnsiColor.indexed(9), AnsiColor.NONE, true).getForeground());
+    }
+
+    @Test
+    void testRenderedOnce() {
+        Ansi ansi = new Ansi(false).underline().bgColorIndex(17);
+        AnsiStyle style = ansi.toStyle();
+
+        assertEquals(ansi.getSequence(), style.getSequence());
+        assertSame(style.getSequence(), style.toString());
+        assertEquals(ansi.wrap("text"), style.wrap("text"));
+        assertFalse(style.isGrouped());
+    }
+
+    @Test
+    void testSnapshotIsIndependentOfSource() {
+        Ansi ansi = new Ansi().red();
+        AnsiStyle style = ansi.toStyle();
+        ansi.bold();
+        style.getStyles().add(Style.ITALIC);
+
+        assertTrue(style.has(Style.RED));
+        assertFalse(style.has(Style.BOLD));
+        assertFalse(style.has(Style.ITALIC));
+        assertSame(style, AnsiStyle.of(Style.RED));
+        assertEquals(style, style.toAnsi().toStyle());
+    }
+
+    @Test
+    void testFluentMethodsReturnNewValues() {
+        AnsiStyle bold = AnsiStyle.DEFAULT.bold();
+        AnsiStyle boldRed = bold.red();
+
+        assertNotSame(bold, boldRed);
+        assertFalse(bold.has(Style.RED));
+        assertSame(boldRed, AnsiStyle.of(Style.BOLD, Style.RED));
+        assertSame(AnsiStyle.DEFAULT, boldRed.reset());
+    }
+}
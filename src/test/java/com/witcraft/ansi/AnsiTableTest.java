@@ -0,0 +1,84 @@
+package com.witcraft.ansi;
+
+import com.witcraft.ansi.AnsiSequence.Style;
+import com.witcraft.ansi.AnsiTable.Alignment;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiTableTest {
+    private static final String NL = System.lineSeparator();
+    private static final AnsiStyle GREEN = AnsiStyle.of(Style.GREEN);
+
+    @Test
+    void testWidthsIgnoreEscapes() {
+        AnsiTable table = new AnsiTable()
+            .addColumn(Alignment.RIGHT)
+            .addColumn(Alignment.CENTER)
+            .addColumn(Alignment.LEFT);
+        table.addRow("1", GREEN.wrap("ok"), "first");
+        table.addRow("100", "\u65e5\u672c", "x");
+        table.addRow("10", "failed");
+        assertEquals(3, table.getRowCount());
+        assertEquals(
+            "  1 " + "  " + GREEN.wrap("ok") + "  " + " first" + NL
+                + "100 " + " \u65e5\u672c " + " x" + NL
+                + " 10 " + "failed " + NL,
+            table.render());
+    }
+
+    @Test
+    void testCutCells() {
+        AnsiTable table = new AnsiTable().setSeparator("|")
+            .addColumn(Alignment.LEFT, 5)
+            .addColumn(Alignment.RIGHT, 3);
+        table.addRow("abcdefgh", GREEN.wrap("abcd"));
+        table.addRow("\u65e5\u672c\u8a9e", "ab");
+        table.addRow("abcde", null);
+        assertEquals(
+            "abcd\u2026|" + "\033[32mab\u2026\033[0m" + NL
+                + "\u65e5\u672c\u2026|" + " ab" + NL
+                + "abcde|" + "   " + NL,
+            table.render());
+        assertEquals("abcde|abc" + NL, new AnsiTable().setSeparator("|").setEllipsis("")
+            .addColumn(Alignment.LEFT, 5).addColumn(Alignment.LEFT, 3)
+            .addRow("abcdefgh", "abcd").render());
+        assertThrows(IllegalArgumentException.class, () -> new AnsiTable().addColumn(Alignment.LEFT, 0));
+    }
+
+    @Test
+    void testStreaming() throws IOException {
+        AnsiTable table = new AnsiTable().addColumn(Alignment.RIGHT).addColumn();
+        StringWriter out = new StringWriter();
+        try (AnsiTable.RowWriter writer = table.stream(out, 2)) {
+            writer.writeRow("1", "one");
+            assertEquals("", out.toString());
+            writer.writeRow("22", "two");
+            assertEquals(" 1 one" + NL + "22 two" + NL, out.toString());
+            writer.writeRow("333", "three");
+        }
+        assertEquals(" 1 one" + NL + "22 two" + NL + "3\u2026 th\u2026" + NL, out.toString());
+        assertEquals(0, table.getRowCount());
+
+        StringWriter partial = new StringWriter();
+        table.stream(partial, 10).writeRow("4", "four").close();
+        assertEquals("4 four" + NL, partial.toString());
+        assertEquals(partial.toString(), new AnsiTable().addColumn(Alignment.RIGHT).addRow("4", "four").appendTo(new StringWriter()).toString());
+
+        assertThrows(IllegalArgumentException.class, () -> table.stream(new StringWriter(), 0));
+        assertThrows(IllegalArgumentException.class, () -> new AnsiTable().stream(new StringWriter(), 0));
+        StringWriter fixed = new StringWriter();
+        new AnsiTable().addColumn(Alignment.LEFT, 2).stream(fixed, 0).writeRow("5").close();
+        assertEquals("5" + NL, fixed.toString());
+
+        StringWriter extra = new StringWriter();
+        try (AnsiTable.RowWriter writer = new AnsiTable().stream(extra, 1)) {
+            writer.writeRow("a", "b");
+            writer.writeRow("c", "d", "dropped");
+        }
+        assertEquals("a b" + NL + "c d" + NL, extra.toString());
+    }
+}
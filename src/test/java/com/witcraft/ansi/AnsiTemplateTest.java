@@ -0,0 +1,97 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiTemplateTest {
+    @Test
+    void testRender() {
+        AnsiTemplate template = AnsiTemplate.compile("[{red,bold}FAILED{/}] {msg}");
+        assertEquals(Collections.singletonList("msg"), template.getArgumentNames());
+        assertEquals("[\033[1;31mFAILED\033[0m] disk full", template.render("disk full"));
+        assertEquals("[\033[1;31mFAILED\033[0m] null", template.render((Object)null));
+        assertSame(template, AnsiTemplate.compile("[{red,bold}FAILED{/}] {msg}"));
+    }
+
+    @Test
+    void testNestingAndColors() {
+        AnsiTemplate template = AnsiTemplate.compile("{bold}a{color(196)}b{bg(#000080)}c{/}{/}d{/}e");
+        assertEquals("\033[1ma\033[38;5;196mb\033[48;2;0;0;128mc\033[0;1md\033[0me", template.render());
+        assertEquals("\033[92;104mx\033[0m", AnsiTemplate.compile("{bright-green,bg-bright-blue}x").render());
+        assertEquals("\033[4mab\033[0m", AnsiTemplate.compile("{underline}a{/}{underline}b{/}").render());
+        assertEquals("plain", AnsiTemplate.compile("{bold}{/}plain").render());
+    }
+
+    @Test
+    void testArguments() {
+        AnsiTemplate template = AnsiTemplate.compile("{user.name} has {count} items, {user.name}! {{literal} }");
+        assertEquals(Arrays.asList("user.name", "count"), template.getArgumentNames());
+        assertEquals("ann has 3 items, ann! {literal} }", template.render("ann", 3));
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("count", 0);
+        assertEquals("null has 0 items, null! {literal} }", template.render(arguments));
+        assertThrows(IllegalArgumentException.class, () -> template.render("ann"));
+    }
+
+    @Test
+    void testMalformedMarkup() {
+        assertThrows(IllegalArgumentException.class, () -> AnsiTemplate.compile("{bold"));
+        assertThrows(IllegalArgumentException.class, () -> AnsiTemplate.compile("a{/}"));
+        assertThrows(IllegalArgumentException.class, () -> AnsiTemplate.compile("{bold,sparkly}"));
+        assertThrows(IllegalArgumentException.class, () -> AnsiTemplate.compile("{color(256)}"));
+        assertThrows(IllegalArgumentException.class, () -> AnsiTemplate.compile("{bg(#12345)}"));
+    }
+
+    @Test
+    void testProfiles() throws IOException {
+        AnsiTemplate template = AnsiTemplate.compile("{italic,color(#ff0000)}{msg}{/}!");
+        TerminalProfile previous = TerminalProfile.getDefault();
+        TerminalProfile.setDefault(TerminalProfile.BASIC_16.withoutAttributes(SgrState.ITALIC));
+        try {
+            assertEquals("\033[91mhot\033[0m!", template.render("hot"));
+            TerminalProfile.setDefault(TerminalProfile.NONE);
+            assertEquals("hot!", template.render("hot"));
+        } finally {
+            TerminalProfile.setDefault(previous);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (AnsiEncoder encoder = new AnsiEncoder(bytes)) {
+            template.writeTo(encoder.setProfile(TerminalProfile.INDEXED_256), "\u00e9t\u00e9");
+        }
+        assertEquals("\033[3;38;5;196m\u00e9t\u00e9\033[0m!", bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testCacheEvictsUnusedTemplates() {
+        AnsiTemplate hot = AnsiTemplate.compile("{bold}hot{/} {msg}");
+        for (int i = 0; i < 2000; i++) {
+            AnsiTemplate.compile("{italic}cold " + i + "{/}");
+            assertSame(hot, AnsiTemplate.compile("{bold}hot{/} {msg}"));
+        }
+        AnsiTemplate late = AnsiTemplate.compile("{underline}late{/}");
+        assertSame(late, AnsiTemplate.compile("{underline}late{/}"));
+    }
+
+    @Test
+    void testAlternatingProfiles() throws IOException {
+        AnsiTemplate template = AnsiTemplate.compile("{bold}{msg}{/}.");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (AnsiEncoder encoder = new AnsiEncoder(bytes)) {
+            encoder.setProfile(TerminalProfile.NONE);
+            for (int round = 0; round < 3; round++) {
+                assertEquals("\033[1mok\033[0m.", template.render("ok"));
+                template.writeTo(encoder, "ok");
+            }
+        }
+        assertEquals("ok.ok.ok.", bytes.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -9,6 +9,8 @@ import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.DynamicContainer.dynamicContainer;
 import static org.junit.jupiter.api.DynamicTest.dynamicTest;
@@ -105,4 +107,48 @@ public class AnsiTest {
 
         analyzeControlSequence(value, Pattern.compile("^1;31$"));
     }
+
+    @Test
+    void testAppendToMatchesSequence() {
+        ansi.reset().bold().colorIndex(196).bgBlue();
+        StringBuilder builder = new StringBuilder("prefix:");
+        assertSame(builder, ansi.appendTo(builder));
+        assertEquals("prefix:" + ansi.getSequence(), builder.toString());
+
+        builder.setLength(0);
+        ansi.appendWrapped(builder, "text");
+        assertEquals(ansi.getSequence() + "text" + Style.RESET, builder.toString());
+        assertEquals(builder.toString(), ansi.wrap("text"));
+    }
+
+    @Test
+    void testColorArguments() {
+        assertEquals("\033[38;2;255;0;0m", new Ansi().color(255, 0, 0).getSequence());
+        assertEquals("\033[38;2;0;0;0m", new Ansi().color(0).getSequence());
+        assertEquals("38;2;255;0;128", Style.COLOR.getSequence(new Number[] {255.0f, 0, 127.6}));
+        assertEquals("48;5;0", Style.BACKGROUND_COLOR_INDEX.getSequence(0));
+        assertSame(Style.COLOR_INDEX.getSequence(196), Style.COLOR_INDEX.getSequence(196));
+        assertEquals("38", Style.COLOR_INDEX.getSequence(256));
+        assertEquals("1", Style.BOLD.getSequence());
+    }
+
+    @Test
+    void testPackedState() {
+        ansi.reset().bold().colorIndex(196).bgColorIndex(17);
+
+        assertEquals(Style.BOLD.getMask() | Style.COLOR_INDEX.getMask() | Style.BACKGROUND_COLOR_INDEX.getMask(), ansi.getStyleMask());
+        assertEquals(AnsiColor.indexed(196), ansi.getForeground());
+        assertEquals(AnsiColor.indexed(17), ansi.getBackground());
+
+        ansi.not(Style.BOLD);
+        assertEquals(AnsiColor.indexed(196), ansi.getForeground(), "Removing a style must keep the arguments of the others");
+
+        ansi.color(0x102030);
+        assertFalse(ansi.has(Style.COLOR_INDEX));
+        assertEquals(AnsiColor.rgb(0x10, 0x20, 0x30), ansi.getForeground());
+
+        ansi.not(Style.COLOR);
+        assertEquals(AnsiColor.NONE, ansi.getForeground());
+        assertEquals(new Ansi(false).bgColorIndex(17).getSequence(), ansi.getSequence());
+    }
 }
@@ -0,0 +1,176 @@
+package com.witcraft.ansi;
+
+import com.witcraft.ansi.AnsiSequence.Style;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiTextTest {
+    @Test
+    void testDisplayWidth() {
+        assertEquals(0, AnsiText.displayWidth(""));
+        assertEquals(5, AnsiText.displayWidth("hello"));
+        assertEquals(5, AnsiText.displayWidth(new Ansi().bold().red().wrap("hello")));
+        assertEquals(5, AnsiText.displayWidth(new StringBuilder(new Ansi().underline().wrap("hello"))));
+        assertEquals(4, AnsiText.displayWidth("\u65e5\u672c"));
+        assertEquals(4, AnsiText.displayWidth("\uff21\uff22"));
+        assertEquals(1, AnsiText.displayWidth("e\u0301"));
+        assertEquals(2, AnsiText.displayWidth("\ud83d\ude00"));
+        assertEquals(2, AnsiText.displayWidth("\ud83d\udc4d\ud83c\udffd"));
+        assertEquals(2, AnsiText.displayWidth("\ud83d\udc68\u200d\ud83d\udc69\u200d\ud83d\udc67"));
+        assertEquals(3, AnsiText.displayWidth("a\u200bb\u00ad"));
+        assertEquals(2, AnsiText.displayWidth("a\033]8;;http://example.com\033\\b\033]8;;\033\\"));
+        assertEquals(1, AnsiText.displayWidth("abc\033[1mdef", 2, 5));
+    }
+
+    @Test
+    void testCodePointWidth() {
+        assertEquals(1, AnsiText.displayWidth('a'));
+        assertEquals(0, AnsiText.displayWidth('\n'));
+        assertEquals(0, AnsiText.displayWidth(0x0300));
+        assertEquals(0, AnsiText.displayWidth(0x200D));
+        assertEquals(2, AnsiText.displayWidth(0x3000));
+        assertEquals(1, AnsiText.displayWidth(0x303F));
+        assertEquals(2, AnsiText.displayWidth(0xAC00));
+        assertEquals(2, AnsiText.displayWidth(0x20000));
+        assertEquals(1, AnsiText.displayWidth(0x10FFFF + 1));
+    }
+
+    private static final AnsiStyle BOLD = AnsiStyle.of(Style.BOLD);
+    private static final AnsiStyle RED = AnsiStyle.of(Style.RED);
+    private static final AnsiStyle UNDERLINE = AnsiStyle.of(Style.UNDERLINE);
+
+    @Test
+    void testRenderWithMinimalTransitions() {
+        AnsiText text = new AnsiText()
+            .append("a")
+            .append(BOLD, "b")
+            .append(BOLD, "c")
+            .push(RED).append("d").push(BOLD).append("e").pop().append("f").pop()
+            .append("g");
+        assertEquals("abcdefg", text.toString());
+        assertEquals(6, text.getRunCount());
+        assertEquals("a\033[1mbc\033[0;31md\033[1me\033[22mf\033[0mg", text.render());
+        assertEquals(SgrState.BOLD | AnsiColor.basic(1), text.getState(4));
+        assertEquals("\033[1mx\033[0m", new AnsiText().append(BOLD, "x").render());
+        assertEquals("", new AnsiText().push(BOLD).render());
+        assertThrows(IllegalStateException.class, () -> new AnsiText().pop());
+    }
+
+    @Test
+    void testOverlappingStyles() {
+        AnsiText text = new AnsiText().append("abcdef");
+        text.style(1, 4, BOLD).style(2, 6, RED).style(0, 6, UNDERLINE);
+        assertEquals(SgrState.UNDERLINE, text.getState(0));
+        assertEquals(SgrState.UNDERLINE | SgrState.BOLD, text.getState(1));
+        assertEquals(SgrState.UNDERLINE | SgrState.BOLD | AnsiColor.basic(1), text.getState(3));
+        assertEquals(SgrState.UNDERLINE | AnsiColor.basic(1), text.getState(5));
+        assertEquals(4, text.getRunCount());
+        text.style(0, 6, AnsiStyle.of(Style.NORMAL_INTENSITY));
+        assertEquals(SgrState.UNDERLINE, text.getState(1));
+        assertEquals(2, text.getRunCount());
+        assertEquals("\033[4mab\033[31mcde\033[0m", text.substring(0, 5).render());
+    }
+
+    @Test
+    void testSubstringConcatAndTruncate() {
+        AnsiText text = new AnsiText().append(BOLD, "ab").append("cd").append(RED, "ef");
+        AnsiText middle = text.substring(1, 5);
+        assertEquals("bcde", middle.toString());
+        assertEquals(3, middle.getRunCount());
+        assertEquals(SgrState.BOLD, middle.getState(0));
+        assertEquals(AnsiColor.basic(1), middle.getState(3));
+        assertEquals(0, text.substring(3, 3).length());
+
+        AnsiText joined = new AnsiText().append(RED, "x").append(middle).append(middle.substring(3, 4));
+        assertEquals("xbcdee", joined.toString());
+        assertEquals(4, joined.getRunCount());
+        joined.append(joined);
+        assertEquals("xbcdeexbcdee", joined.toString());
+        assertEquals(joined.getState(1), joined.getState(7));
+
+        text.setLength(3);
+        assertEquals("abc", text.toString());
+        assertEquals(2, text.getRunCount());
+        assertEquals("\033[1mab\033[0mc", text.render());
+        text.setLength(2);
+        assertEquals(1, text.getRunCount());
+        assertEquals(AnsiColor.basic(1), text.append(RED, "z").getState(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> text.setLength(4));
+    }
+
+    @Test
+    void testParse() {
+        String ansi = "a" + new Ansi().bold().wrap("b") + "\033[2Jc" + new Ansi().colorIndex(42).wrap("d");
+        AnsiText text = AnsiText.parse(ansi);
+        assertEquals("abcd", text.toString());
+        assertEquals(SgrState.BOLD, text.getState(1));
+        assertEquals(SgrState.DEFAULT, text.getState(2));
+        assertEquals(AnsiColor.indexed(42), text.getState(3));
+        assertEquals(SgrState.DEFAULT, text.getState());
+        assertEquals(4, text.displayWidth());
+        assertEquals(text.render(), AnsiText.parse(text.render()).render());
+    }
+
+    @Test
+    void testRenderTargets() throws IOException {
+        AnsiText text = new AnsiText().append(UNDERLINE, "\u65e5").append("b");
+        String expected = "\033[4m\u65e5\033[0mb";
+        assertEquals(expected, text.render());
+        assertEquals(expected, text.appendTo(new StringWriter()).toString());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (AnsiEncoder encoder = new AnsiEncoder(bytes)) {
+            text.writeTo(encoder);
+        }
+        assertEquals(expected, bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testWrap() {
+        assertEquals("abc\ndef\ng", AnsiText.wrap("abcdefg", 3));
+        assertEquals("\033[31mabc\033[0m\n\033[31md\033[0mef", AnsiText.wrap("\033[31mabcd\033[0mef", 3));
+        assertEquals("abc\n\033[1mdef", AnsiText.wrap("abc\033[1mdef", 3));
+        assertEquals("\033[4mab\033[0m\n\033[4mcd\033[0m", AnsiText.wrap("\033[4mab\ncd\033[0m", 10));
+        assertEquals("a\033[2Jb\nc", AnsiText.wrap("a\033[2Jbc", 2));
+        assertEquals("\u65e5\n\u672c\n\u8a9e", AnsiText.wrap("\u65e5\u672c\u8a9e", 3));
+        assertEquals("\u65e5\n\u672c", AnsiText.wrap("\u65e5\u672c", 1));
+        assertEquals("e\u0301\nx", AnsiText.wrap("e\u0301x", 1));
+        assertEquals("\ud83d\ude00\n\ud83d\ude00", AnsiText.wrap("\ud83d\ude00\ud83d\ude00", 3));
+        assertEquals("", AnsiText.wrap("", 5));
+
+        String log = new Ansi().bold().colorIndex(196).wrap("error: the quick brown fox") + " jumps";
+        String wrapped = AnsiText.wrap(log, 7);
+        for (String line : wrapped.split("\n")) {
+            assertTrue(AnsiText.displayWidth(line) <= 7, line);
+            assertEquals(SgrState.DEFAULT, AnsiText.parse(line).getState(), line);
+        }
+        assertEquals(AnsiText.parse(log).toString(), AnsiText.parse(wrapped).toString().replace("\n", ""));
+        assertThrows(IllegalArgumentException.class, () -> AnsiText.wrap("a", 0));
+    }
+
+    @Test
+    void testExpandTabs() {
+        assertEquals("a       b", AnsiText.expandTabs("a\tb", 8));
+        assertEquals("\033[1mab\033[0m  c\n    d", AnsiText.expandTabs("\033[1mab\033[0m\tc\n\td", 4));
+        assertEquals("\u4e2d  x", AnsiText.expandTabs("\u4e2d\tx", 4));
+        assertEquals("plain", AnsiText.expandTabs("plain", 8));
+        assertEquals(5, AnsiText.displayWidth(AnsiText.expandTabs("ab\tc", 4)));
+        assertThrows(IllegalArgumentException.class, () -> AnsiText.expandTabs("a\tb", 0));
+    }
+
+    @Test
+    void testTruncate() {
+        assertEquals("abc\u2026", AnsiText.truncate("abcdef", 4, "\u2026"));
+        assertEquals("abcd", AnsiText.truncate("abcd", 4, "\u2026"));
+        assertEquals("\033[31mabc\u2026\033[0m", AnsiText.truncate("\033[31mabcdef\033[0m", 4, "\u2026"));
+        assertEquals("\u65e5\u2026", AnsiText.truncate("\u65e5\u672c", 3, "\u2026"));
+        assertEquals("ab", AnsiText.truncate("abc", 2, "..."));
+        assertEquals("", AnsiText.truncate("abc", 0, ""));
+        assertThrows(IllegalArgumentException.class, () -> AnsiText.truncate("a", -1, ""));
+    }
+}
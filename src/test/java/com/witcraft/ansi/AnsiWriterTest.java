@@ -0,0 +1,105 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnsiWriterTest {
+    /**
+     * Applies every SGR Control Sequence in {@code output} to {@code state}.
+     */
+    private static long replay(long state, String output) {
+        int start;
+        int from = 0;
+        while ((start = output.indexOf(AnsiSequence.CSI_START, from)) >= 0) {
+            int end = output.indexOf('m', start);
+            String[] fields = output.substring(start + 2, end).split(";", -1);
+            int[] params = new int[fields.length];
+            int count = 0;
+            for (String field : fields) {
+                if (!field.isEmpty()) {
+                    params[count++] = Integer.parseInt(field);
+                }
+            }
+            state = SgrState.apply(state, params, 0, count);
+            from = end + 1;
+        }
+        return state;
+    }
+
+    private static long randomState(Random random) {
+        int[] colors = {
+            AnsiColor.NONE,
+            AnsiColor.basic(random.nextInt(16)),
+            AnsiColor.indexed(random.nextInt(256)),
+            AnsiColor.rgb(random.nextInt(0x1000000))
+        };
+        long attributes = random.nextLong();
+        if (random.nextBoolean()) {
+            attributes &= ~(SgrState.UNDERLINE | SgrState.BLINK);
+        } else {
+            attributes &= ~(SgrState.DOUBLE_UNDERLINE | SgrState.RAPID_BLINK);
+        }
+        return SgrState.of(attributes, colors[random.nextInt(colors.length)], colors[random.nextInt(colors.length)]);
+    }
+
+    @Test
+    void testTransitionsReachTargetState() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            long from = randomState(random);
+            long to = randomState(random);
+            String transition = SgrState.appendTransition(new StringBuilder(), from, to).toString();
+            assertEquals(to, replay(from, transition), "Transition " + SgrState.toString(from) + " -> " + SgrState.toString(to));
+            assertTrue(transition.length() <= SgrState.appendTransition(new StringBuilder(), SgrState.DEFAULT, to).length() + 4);
+        }
+    }
+
+    @Test
+    void testTransitionsToAppendable() throws IOException {
+        long bold = SgrState.BOLD;
+        long red = SgrState.of(0L, AnsiColor.basic(1), AnsiColor.NONE);
+        StringWriter nested = new StringWriter();
+        StringWriter out = new StringWriter() {
+            @Override
+            public StringWriter append(CharSequence sequence) {
+                try {
+                    SgrState.appendTransition(nested, SgrState.DEFAULT, red);
+                } catch (IOException ex) {
+                    throw new AssertionError(ex);
+                }
+                return super.append(sequence);
+            }
+        };
+        SgrState.appendTransition(out, SgrState.DEFAULT, bold);
+        SgrState.appendTransition(out, bold, bold);
+        SgrState.appendTransition(out, bold, SgrState.DEFAULT);
+        assertEquals("\033[1m\033[0m", out.toString());
+        assertEquals("\033[31m\033[31m", nested.toString());
+    }
+
+    @Test
+    void testStateOfSequence() {
+        assertEquals(SgrState.BOLD | AnsiColor.basic(1), SgrState.of(new Ansi().bold().red()));
+        assertEquals(SgrState.of(SgrState.UNDERLINE, AnsiColor.indexed(196), AnsiColor.basic(12)), SgrState.of(new Ansi().underline().colorIndex(196).bgBrightBlue()));
+        assertEquals(SgrState.of(new Ansi().bold()), SgrState.of(new Ansi().highIntensity()));
+        assertEquals(SgrState.DEFAULT, SgrState.of(new Ansi().bold().and(AnsiSequence.Style.NORMAL_INTENSITY)));
+    }
+
+    @Test
+    void testRedundantTransitionsAreElided() throws IOException {
+        StringWriter out = new StringWriter();
+        try (AnsiWriter writer = new AnsiWriter(out)) {
+            Ansi ansi = new Ansi().bold().colorIndex(1);
+            writer.writeStyled(ansi, "a");
+            writer.writeStyled(ansi, "b");
+            writer.writeStyled(ansi.colorIndex(2), "c");
+            writer.writeStyled(ansi.reset(), "d");
+        }
+        assertEquals("\033[1;38;5;1ma" + "b" + "\033[38;5;2mc" + "\033[0md", out.toString());
+    }
+}
@@ -0,0 +1,41 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ControlSequenceTest {
+    @Test
+    void testSequences() throws IOException {
+        assertEquals("\033[A", ControlSequence.CURSOR_UP.getSequence());
+        assertEquals("\033[A", ControlSequence.CURSOR_UP.getSequence(1));
+        assertEquals("\033[12B", ControlSequence.CURSOR_DOWN.getSequence(12));
+        assertEquals("\033[1000C", ControlSequence.CURSOR_FORWARD.getSequence(1000));
+        assertEquals("\033[H", ControlSequence.CURSOR_POSITION.getSequence(1, 1));
+        assertEquals("\033[5;10H", ControlSequence.CURSOR_POSITION.getSequence(5, 10));
+        assertEquals("\033[5H", ControlSequence.CURSOR_POSITION.getSequence(5, 1));
+        assertEquals("\033[;10H", ControlSequence.CURSOR_POSITION.getSequence(1, 10));
+        assertEquals("\033[J", ControlSequence.ERASE_DISPLAY.getSequence(0));
+        assertEquals("\033[2J", ControlSequence.ERASE_DISPLAY.getSequence(2));
+        assertEquals("\033[2K", ControlSequence.ERASE_LINE.getSequence(2));
+        assertEquals("\033[2;20r", ControlSequence.SCROLL_REGION.getSequence(2, 20));
+        assertEquals("\033[r", ControlSequence.SCROLL_REGION.getSequence());
+        assertEquals("\033[3S", ControlSequence.SCROLL_UP.appendTo(new StringBuilder(), 3).toString());
+        assertEquals("\033[7d", ControlSequence.LINE_POSITION.appendTo(new StringWriter(), 7).toString());
+    }
+
+    @Test
+    void testSmallParametersAreCached() {
+        for (ControlSequence sequence : ControlSequence.values()) {
+            for (int parameter = 0; parameter < 256; parameter++) {
+                String first = sequence.getSequence(parameter);
+                assertSame(first, sequence.getSequence(parameter));
+                assertEquals(first, sequence.appendTo(new StringBuilder(), parameter).toString());
+            }
+            assertNotSame(sequence.getSequence(256), sequence.getSequence(256));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScreenTest {
+    /**
+     * A minimal terminal that understands cursor positioning, cursor forward and SGR.
+     */
+    private static class Terminal implements AnsiParser.Handler {
+        private final CellBuffer cells;
+        private int x;
+        private int y;
+        private long state;
+
+        Terminal(int width, int height) {
+            cells = new CellBuffer(width, height);
+        }
+
+        @Override
+        public void text(CharSequence input, int start, int end) {
+            for (int index = start; index < end; index++) {
+                int codePoint = Character.codePointAt(input, index);
+                if (Character.charCount(codePoint) == 2) {
+                    index++;
+                }
+                x += cells.set(x, y, codePoint, state);
+            }
+        }
+
+        @Override
+        public void controlSequence(AnsiParser parser) {
+            switch (parser.getFinal()) {
+                case 'm':
+                    state = parser.applyTo(state);
+                    break;
+                case 'H':
+                    y = parser.getParameter(0, 1) - 1;
+                    x = parser.getParameter(1, 1) - 1;
+                    break;
+                case 'C':
+                    x += parser.getParameter(0, 1);
+                    break;
+                default:
+                    fail("Unexpected sequence " + parser.getFinal());
+            }
+        }
+    }
+
+    private static void assertSameCells(CellBuffer expected, CellBuffer actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getCodePoint(x, y), actual.getCodePoint(x, y), "Code point at " + x + "," + y);
+                assertEquals(expected.getState(x, y), actual.getState(x, y), "State at " + x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    void testFlushWritesOnlyChanges() throws IOException {
+        StringWriter out = new StringWriter();
+        Screen screen = new Screen(out, 20, 3);
+        screen.getBuffer().print(0, 0, "Status: OK", new Ansi().green());
+        screen.flush();
+        int firstFrame = out.getBuffer().length();
+        assertTrue(firstFrame > 60);
+
+        screen.flush();
+        assertEquals(firstFrame, out.getBuffer().length());
+
+        out.getBuffer().setLength(0);
+        screen.getBuffer().print(8, 0, "NO", new Ansi().red());
+        screen.flush();
+        assertEquals("\033[;9H\033[31mNO", out.toString());
+
+        out.getBuffer().setLength(0);
+        screen.getBuffer().set(12, 2, 'x', SgrState.DEFAULT);
+        screen.flush();
+        assertEquals("\033[3;13H\033[0mx", out.toString());
+    }
+
+    @Test
+    void testRandomFramesReplay() throws IOException {
+        Random random = new Random(11);
+        int width = 30;
+        int height = 8;
+        Terminal terminal = new Terminal(width, height);
+        AnsiParser parser = new AnsiParser(terminal);
+        StringWriter out = new StringWriter();
+        Screen screen = new Screen(out, width, height);
+        long[] states = {SgrState.DEFAULT, SgrState.BOLD, SgrState.of(0L, AnsiColor.basic(1), AnsiColor.NONE), SgrState.of(SgrState.UNDERLINE, AnsiColor.indexed(200), AnsiColor.rgb(0x102030))};
+        String[] texts = {"abc", "\u65e5\u672c\u8a9e", "x", "\ud83d\ude00!", "    "};
+        for (int frame = 0; frame < 200; frame++) {
+            for (int i = random.nextInt(5); i >= 0; i--) {
+                screen.getBuffer().print(random.nextInt(width + 2) - 2, random.nextInt(height), texts[random.nextInt(texts.length)], states[random.nextInt(states.length)]);
+            }
+            out.getBuffer().setLength(0);
+            screen.flush();
+            parser.parse(out.getBuffer());
+            assertSameCells(screen.getBuffer(), terminal.cells);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SequenceCacheTest {
+    @Test
+    void testHitsAndMisses() {
+        SequenceCache cache = new SequenceCache(4);
+        Ansi ansi = new Ansi().bold().colorIndex(42);
+
+        String first = cache.getSequence(ansi, true);
+        String second = cache.getSequence(new Ansi().colorIndex(42).bold(), true);
+
+        assertSame(first, second);
+        assertEquals(ansi.appendTo(new StringBuilder()).toString(), first);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testKeyIncludesArgumentsAndGrouping() {
+        SequenceCache cache = new SequenceCache(8);
+        Ansi ansi = new Ansi().colorIndex(1);
+
+        String grouped = cache.getSequence(ansi.bold(), true);
+        String ungrouped = cache.getSequence(ansi, false);
+        String otherIndex = cache.getSequence(ansi.colorIndex(2), true);
+
+        assertNotEquals(grouped, ungrouped);
+        assertNotEquals(grouped, otherIndex);
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    void testEviction() {
+        SequenceCache cache = new SequenceCache(2);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(new Ansi().colorIndex(i).appendTo(new StringBuilder()).toString(), cache.getSequence(new Ansi().colorIndex(i), true));
+        }
+        assertEquals(2, cache.size());
+        assertEquals(8, cache.getEvictionCount());
+    }
+
+    @Test
+    void testInstanceInvalidation() {
+        Ansi ansi = new Ansi().red();
+        String red = ansi.getSequence();
+        assertSame(red, ansi.getSequence());
+        assertEquals(new Ansi().red().bold().appendTo(new StringBuilder()).toString(), ansi.bold().getSequence());
+        assertEquals(new Ansi().bold().appendTo(new StringBuilder()).toString(), ansi.not(AnsiSequence.Style.RED).getSequence());
+        assertEquals(AnsiSequence.CSI_START + AnsiSequence.CSI_END, ansi.reset().getSequence());
+    }
+}
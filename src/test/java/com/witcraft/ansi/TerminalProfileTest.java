@@ -0,0 +1,191 @@
+package com.witcraft.ansi;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TerminalProfileTest {
+    private static Map<String, String> environment(String... entries) {
+        Map<String, String> environment = new HashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            environment.put(entries[i], entries[i + 1]);
+        }
+        return environment;
+    }
+
+    private interface Action {
+        void run() throws IOException;
+    }
+
+    private static void withDefault(TerminalProfile profile, Action action) throws IOException {
+        TerminalProfile previous = TerminalProfile.getDefault();
+        TerminalProfile.setDefault(profile);
+        try {
+            action.run();
+        } finally {
+            TerminalProfile.setDefault(previous);
+        }
+    }
+
+    @Test
+    void testDetect() {
+        assertSame(TerminalProfile.NONE, TerminalProfile.detect(environment("TERM", "xterm-256color"), false));
+        assertSame(TerminalProfile.NONE, TerminalProfile.detect(environment("TERM", "dumb"), true));
+        assertSame(TerminalProfile.BASIC_16, TerminalProfile.detect(environment("TERM", "xterm"), true));
+        assertSame(TerminalProfile.INDEXED_256, TerminalProfile.detect(environment("TERM", "screen-256color"), true));
+        assertSame(TerminalProfile.TRUECOLOR, TerminalProfile.detect(environment("TERM", "xterm-256color", "COLORTERM", "truecolor"), true));
+        assertSame(TerminalProfile.TRUECOLOR, TerminalProfile.detect(environment("COLORTERM", "24bit"), true));
+        assertSame(TerminalProfile.TRUECOLOR, TerminalProfile.detect(environment("WT_SESSION", "1"), true));
+        assertSame(TerminalProfile.INDEXED_256, TerminalProfile.detect(environment("FORCE_COLOR", "2"), false));
+        assertSame(TerminalProfile.NONE, TerminalProfile.detect(environment("FORCE_COLOR", "0", "COLORTERM", "truecolor"), true));
+
+        TerminalProfile noColor = TerminalProfile.detect(environment("TERM", "xterm-256color", "NO_COLOR", "1"), true);
+        assertEquals(AnsiColor.MODE_NONE, noColor.getColorMode());
+        assertTrue(noColor.isEnabled());
+        assertTrue(noColor.supports(SgrState.BOLD | SgrState.UNDERLINE));
+        assertSame(TerminalProfile.INDEXED_256, TerminalProfile.detect(environment("TERM", "xterm-256color", "NO_COLOR", ""), true));
+    }
+
+    @Test
+    void testDerivedProfiles() {
+        assertSame(TerminalProfile.BASIC_16, TerminalProfile.TRUECOLOR.withColorMode(AnsiColor.MODE_BASIC));
+        TerminalProfile noItalic = TerminalProfile.INDEXED_256.withoutAttributes(SgrState.ITALIC);
+        assertFalse(noItalic.supports(SgrState.ITALIC));
+        assertEquals(TerminalProfile.INDEXED_256, noItalic.withAttributes(SgrState.ITALIC));
+        assertFalse(TerminalProfile.NONE.isEnabled());
+    }
+
+    @Test
+    void testAdapt() {
+        long state = SgrState.of(SgrState.BOLD | SgrState.DOUBLE_UNDERLINE, AnsiColor.rgb(255, 0, 0), AnsiColor.indexed(21));
+        assertEquals(state, TerminalProfile.TRUECOLOR.adapt(state));
+        assertEquals(SgrState.of(SgrState.BOLD | SgrState.DOUBLE_UNDERLINE, AnsiColor.indexed(196), AnsiColor.indexed(21)), TerminalProfile.INDEXED_256.adapt(state));
+        assertEquals(SgrState.of(SgrState.BOLD | SgrState.DOUBLE_UNDERLINE, AnsiColor.basic(9), AnsiColor.basic(4)), TerminalProfile.BASIC_16.adapt(state));
+        assertEquals(SgrState.of(SgrState.BOLD | SgrState.UNDERLINE, AnsiColor.basic(9), AnsiColor.basic(4)), TerminalProfile.BASIC_16.withoutAttributes(SgrState.DOUBLE_UNDERLINE).adapt(state));
+        assertEquals(SgrState.DEFAULT, TerminalProfile.NONE.adapt(state));
+    }
+
+    @Test
+    void testGetSequence() {
+        Ansi ansi = new Ansi().bold().color(255, 0, 0);
+        assertEquals("\033[1;38;2;255;0;0m", ansi.getSequence(TerminalProfile.TRUECOLOR));
+        assertEquals("\033[1;38;5;196m", ansi.getSequence(TerminalProfile.INDEXED_256));
+        assertEquals("\033[1;91m", ansi.getSequence(TerminalProfile.BASIC_16));
+        assertEquals("", ansi.getSequence(TerminalProfile.NONE));
+        assertEquals("", new Ansi().italic().getSequence(TerminalProfile.BASIC_16.withoutAttributes(SgrState.ITALIC)));
+        assertEquals("\033[m", new Ansi().reset().getSequence(TerminalProfile.BASIC_16));
+        assertEquals("\033[22m", new Ansi().and(AnsiSequence.Style.NORMAL_INTENSITY).getSequence(TerminalProfile.BASIC_16));
+        assertEquals("", new Ansi().reset().getSequence(TerminalProfile.NONE));
+    }
+
+    @Test
+    void testDefaultProfile() throws IOException {
+        assertSame(TerminalProfile.TRUECOLOR, TerminalProfile.getDefault());
+        Ansi ansi = new Ansi().underline().colorIndex(196);
+        AnsiStyle style = ansi.toStyle();
+        String text = "text";
+        assertEquals("\033[4;38;5;196m", ansi.getSequence());
+
+        withDefault(TerminalProfile.BASIC_16, () -> {
+            assertEquals("\033[4;91m", ansi.getSequence());
+            assertEquals("\033[4;91m", style.getSequence());
+            assertEquals("\033[4;91mtext\033[0m", style.wrap(text));
+        });
+        withDefault(TerminalProfile.NONE, () -> {
+            assertEquals("", ansi.getSequence());
+            assertEquals("", style.toString());
+            assertSame(text, ansi.wrap(text));
+            assertSame(text, style.wrap(text));
+            assertEquals(text, style.appendWrapped(new StringBuilder(), text).toString());
+        });
+        assertEquals("\033[4;38;5;196m", ansi.getSequence());
+        assertEquals("\033[4;38;5;196mtext\033[0m", style.wrap(text));
+    }
+
+    @Test
+    void testWritersHonorDefaultProfile() throws IOException {
+        AnsiStyle style = AnsiStyle.DEFAULT.italic().color(0, 0, 238);
+        withDefault(TerminalProfile.BASIC_16.withoutAttributes(SgrState.ITALIC), () -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (AnsiEncoder encoder = new AnsiEncoder(bytes)) {
+                encoder.writeWrapped(style, "x");
+            }
+            assertEquals("\033[34mx\033[0m", bytes.toString(StandardCharsets.UTF_8));
+
+            StringWriter out = new StringWriter();
+            try (AnsiWriter writer = new AnsiWriter(out)) {
+                writer.writeStyled(style, "y");
+            }
+            assertEquals("\033[34my\033[0m", out.toString());
+        });
+        withDefault(TerminalProfile.NONE, () -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (AnsiEncoder encoder = new AnsiEncoder(bytes)) {
+                encoder.writeWrapped(style, "x");
+            }
+            assertEquals("x", bytes.toString(StandardCharsets.UTF_8));
+
+            StringWriter out = new StringWriter();
+            try (AnsiWriter writer = new AnsiWriter(out)) {
+                writer.writeStyled(style, "y");
+            }
+            assertEquals("y", out.toString());
+        });
+    }
+
+    @Test
+    void testProfilePerSink() throws IOException {
+        AnsiStyle style = AnsiStyle.DEFAULT.bold();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (AnsiEncoder encoder = new AnsiEncoder(bytes)) {
+            encoder.setProfile(TerminalProfile.NONE).writeWrapped(style, "x");
+            encoder.setProfile(null).writeWrapped(style, "y");
+        }
+        assertEquals("x\033[1my\033[0m", bytes.toString(StandardCharsets.UTF_8));
+
+        StringWriter out = new StringWriter();
+        try (AnsiWriter writer = new AnsiWriter(out).setProfile(TerminalProfile.NONE)) {
+            writer.writeStyled(style, "z");
+        }
+        assertEquals("z", out.toString());
+    }
+
+    @Test
+    void testDisabledProfileDoesNotAllocate() throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        long thread = Thread.currentThread().getId();
+        Ansi ansi = new Ansi().bold().color(255, 128, 64);
+        AnsiStyle style = ansi.toStyle();
+        String text = "text";
+        withDefault(TerminalProfile.NONE, () -> {
+            int sink = 0;
+            for (int round = 0; round < 3; round++) {
+                long before = threads.getThreadAllocatedBytes(thread);
+                for (int i = 0; i < 10_000; i++) {
+                    sink += ansi.wrap(text).length() + ansi.getSequence().length() + ansi.toString().length();
+                    sink += style.wrap(text).length() + style.getSequence().length() + style.toString().length();
+                }
+                long allocated = threads.getThreadAllocatedBytes(thread) - before;
+                if (round == 2) {
+                    assertEquals(0L, allocated, "bytes allocated with styling disabled");
+                }
+            }
+            assertEquals(3 * 10_000 * 2 * text.length(), sink);
+        });
+    }
+}